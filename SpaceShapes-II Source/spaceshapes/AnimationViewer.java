@@ -2,6 +2,7 @@ package spaceshapes;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
@@ -18,32 +19,72 @@ import javax.swing.Timer;
  * a special kind of GUI component (JPanel), and as such an instance of 
  * AnimationViewer can be added to a JFrame object. A JFrame object is a 
  * window that can be closed, minimised, and maximised. The state of an
- * AnimationViewer object comprises a list of Shapes and a Timer object. An
- * AnimationViewer instance subscribes to events that are published by a Timer.
- * In response to receiving an event from the Timer, the AnimationViewer iterates 
- * through a list of Shapes requesting that each Shape paints and moves itself.
+ * AnimationViewer object comprises a list of Shapes, a FixedTimestepLoop and
+ * a Timer object. The FixedTimestepLoop moves the Shapes on its own thread at
+ * a fixed rate, independently of painting. In response to receiving an event
+ * from the Timer, the AnimationViewer repaints itself; painting interpolates
+ * each Shape's position between the two most recent simulation steps.
  * 
  * @author Paramvir Singh (Original Author - Ian Warren)
  * 
  */
 @SuppressWarnings("serial")
 public class AnimationViewer extends JPanel implements ActionListener {
-	// Frequency in milliseconds for the Timer to generate events.
+	// Frequency in milliseconds for the Timer to generate repaint events.
 	private static final int DELAY = 20;
 
+	// Distance beyond the clip within which shapes are not culled, covering
+	// the offsets by which shapes are interpolated.
+	private static final int CLIP_MARGIN = 16;
+
+	// Default number of simulation steps per second.
+	public static final int DEFAULT_STEPS_PER_SECOND = 50;
+
 	// Collection of Shapes to animate.
 	private List<Shape> _shapes;
 
+	/*
+	 * Positions of the Shapes in _shapes after the previous and the most
+	 * recent simulation step, used to interpolate when painting. Guarded,
+	 * together with the Shapes themselves, by the _shapes lock.
+	 */
+	private int[] _previousX;
+	private int[] _previousY;
+
 	private Timer _timer = new Timer(DELAY, this);
 
+	private FixedTimestepLoop _loop;
+
+	private RateMeter _frameRate = new RateMeter();
+
+	// Queue that reorders drawing commands to reduce colour changes.
+	private RenderQueue _renderQueue = new RenderQueue();
+
+	// Rules culling and simplifying the Shapes painted.
+	private LevelOfDetail _levelOfDetail = new LevelOfDetail();
+
 	/**
 	 * Creates an AnimationViewer instance with a list of Shape objects and 
-	 * starts the animation.
+	 * starts the animation at the default simulation rate.
 	 */
 	public AnimationViewer() {
+		this(DEFAULT_STEPS_PER_SECOND);
+	}
+
+	/**
+	 * Creates an AnimationViewer instance with a list of Shape objects and 
+	 * starts the animation, moving the Shapes stepsPerSecond times per
+	 * second regardless of how often the AnimationViewer is painted.
+	 */
+	public AnimationViewer(int stepsPerSecond) {
 		this.setBackground(Color.BLACK);
 		_shapes = new ArrayList<Shape>();
 
+		// Stamp ovals and hexagons from cached images, and leave out Shapes
+		// that cannot be seen.
+		_renderQueue.setSpriteCache(new SpriteCache());
+		_renderQueue.setLevelOfDetail(_levelOfDetail);
+
 		// Populate the list of Shapes.
 
 		// Rectangles
@@ -79,10 +120,74 @@ public class AnimationViewer extends JPanel implements ActionListener {
 		_shapes.add(textShape1);
 		_shapes.add(textShape2);
 
+		_previousX = new int[_shapes.size()];
+		_previousY = new int[_shapes.size()];
+		recordPositions();
+
 		// Start the animation.
+		_loop = new FixedTimestepLoop(new Runnable() {
+			public void run() {
+				step();
+			}
+		}, stepsPerSecond);
+		_loop.start();
 		_timer.start();
 	}
 
+	/**
+	 * Returns the measured number of simulation steps per second.
+	 */
+	public double stepRate() {
+		return _loop.stepRate();
+	}
+
+	/**
+	 * Returns the measured number of frames painted per second.
+	 */
+	public double frameRate() {
+		return _frameRate.rate();
+	}
+
+	/**
+	 * Returns the LevelOfDetail applied when painting, whose counts are
+	 * those of the last frame painted.
+	 */
+	public LevelOfDetail levelOfDetail() {
+		return _levelOfDetail;
+	}
+
+	/*
+	 * Advances the animation by one step. Called on the simulation thread.
+	 */
+	private void step() {
+		// Calculate bounds of animation screen area.
+		int width = getWidth();
+		int height = getHeight();
+
+		// Nothing can move until this AnimationViewer has been laid out.
+		if(width == 0 || height == 0) {
+			return;
+		}
+
+		synchronized(_shapes) {
+			recordPositions();
+			for(Shape s : _shapes) {
+				s.move(width, height);
+			}
+		}
+	}
+
+	/*
+	 * Records the current position of each Shape as its previous position.
+	 */
+	private void recordPositions() {
+		for(int i = 0; i < _shapes.size(); i++) {
+			Shape s = _shapes.get(i);
+			_previousX[i] = s.x();
+			_previousY[i] = s.y();
+		}
+	}
+
 	/**
 	 * Called by the Swing framework whenever this AnimationViewer object
 	 * should be repainted. This can happen, for example, after an explicit 
@@ -94,26 +199,49 @@ public class AnimationViewer extends JPanel implements ActionListener {
 		// Call inherited implementation to handle background painting.
 		super.paintComponent(g);
 		
-		// Calculate bounds of animation screen area.
-		int width = getSize().width;
-		int height = getSize().height;
-		
-		// Create a GraphicsPainter that Shape objects will use for drawing.
-		// The GraphicsPainter delegates painting to a basic Graphics object.
-		Painter painter = new GraphicsPainter(g);
+		// Shapes paint into a RenderQueue, which issues their drawing commands
+		// grouped by colour to a GraphicsPainter. The GraphicsPainter delegates
+		// painting to a basic Graphics object.
+		RenderQueue painter = _renderQueue;
+		painter.setFontMetrics(g.getFontMetrics());
+
+		// Cull Shapes outside the area being repainted.
+		Rectangle clip = g.getClipBounds();
+		if(clip != null) {
+			clip.grow(CLIP_MARGIN, CLIP_MARGIN);
+		}
+		_levelOfDetail.setClip(clip);
+		_levelOfDetail.beginFrame();
 		
-		// Progress the animation.
-		for(Shape s : _shapes) {
-			// Using the template pattern to also paint text on the shape
-			// if the shape is associated with any text (See the Shape class)
-			s.doPaint(painter);
-			s.move(width, height);
+		// Paint a consistent state: the simulation thread cannot step while
+		// the Shapes are being painted.
+		synchronized(_shapes) {
+			double alpha = _loop.alpha();
+
+			for(int i = 0; i < _shapes.size(); i++) {
+				Shape s = _shapes.get(i);
+
+				// Offset the Shape from its current position to the position
+				// interpolated between the last two steps. A CarrierShape's
+				// children are offset along with it.
+				int offsetX = (int)Math.round((_previousX[i] - s.x()) * (1 - alpha));
+				int offsetY = (int)Math.round((_previousY[i] - s.y()) * (1 - alpha));
+
+				painter.translate(offsetX, offsetY);
+				// Using the template pattern to also paint text on the shape
+				// if the shape is associated with any text (See the Shape class)
+				s.doPaint(painter);
+				painter.translate(-offsetX, -offsetY);
+			}
 		}
+		painter.flush(new GraphicsPainter(g));
+		_levelOfDetail.endFrame();
+		_frameRate.mark();
 	}
 
 	/**
 	 * Notifies this AnimationViewer object of an ActionEvent. ActionEvents are
-	 * received by the Timer.
+	 * received by the Timer, which only drives painting.
 	 */
 	public void actionPerformed(ActionEvent e) {
 		// Request that the AnimationViewer repaints itself. The call to 
@@ -125,13 +253,16 @@ public class AnimationViewer extends JPanel implements ActionListener {
 	
 	/**
 	 * Main program method to create an AnimationViewer object and display this
-	 * within a JFrame window.
+	 * within a JFrame window. An optional argument specifies the number of
+	 * simulation steps per second.
 	 */
 	public static void main(String[] args) {
+		final int stepsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS_PER_SECOND;
+
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				JFrame frame = new JFrame("Animation viewer");
-				frame.add(new AnimationViewer());
+				frame.add(new AnimationViewer(stepsPerSecond));
 		
 				// Set window properties.
 				frame.setSize(500, 500);
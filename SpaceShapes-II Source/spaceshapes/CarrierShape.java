@@ -8,9 +8,15 @@ public class CarrierShape extends Shape{
     /** <IMPORTANT>
      * This list is used to create a two-way connection between the children and this CarrierShape
      * this shows use of general hierarchy pattern (composite pattern)
+     * Each child caches its own position in this list (Shape._index), so that
+     * contains() and indexOf() do not have to search it.
      */
     List<Shape> children = new ArrayList<>();
 
+    // Spatial index over the children, maintained by ShapeModel; null until
+    // the ShapeModel first needs it
+    SpatialGrid _grid;
+
     /**
      * Creates a CarrierShape object with default values for state.
      */
@@ -53,18 +59,47 @@ public class CarrierShape extends Shape{
 
     /**
      * Moves a CarrierShape object (including its children) within the bounds
-     * specified by arguments width and height
+     * specified by arguments width and height, by a time step of step/ONE
+     * ticks. Both move() methods of a CarrierShape come here.
      */
     @Override
-    public void move(int width, int height)
+    void advance(int width, int height, int step)
     {
         // First move the CarrierShape itself then its children
-        super.move(width,height);
+        moveShape(width,height,step);
 
         // Moving each child of the CarrierShape
         for(Shape child : children)
         {
-            child.move(_width,_height);
+            child.advance(width(),height(),step);
+        }
+    }
+
+    /*
+     * Recomputes the world position of this CarrierShape and of every Shape
+     * below it, top-down.
+     */
+    @Override
+    void updateAbsolute()
+    {
+        super.updateAbsolute();
+        for(Shape child : children)
+        {
+            child.updateAbsolute();
+        }
+    }
+
+    /*
+     * Brings the depth, path and world position of this CarrierShape and of
+     * every Shape below it up to date after a change of parent.
+     */
+    @Override
+    void reparented()
+    {
+        super.reparented();
+        for(Shape child : children)
+        {
+            child.reparented();
         }
     }
 
@@ -76,10 +111,10 @@ public class CarrierShape extends Shape{
     public void paint(Painter painter)
     {
         // Drawing the outline of the CarrierShape
-        painter.drawRect(_x,_y,_width,_height);
+        painter.drawRect(x(),y(),width(),height());
         // Translating the origin to x and y point to the top left corner
         // of the CarrierShape to be able to paint its children relative to that point
-        painter.translate(_x,_y);
+        painter.translate(x(),y());
 
         // Painting each child relative to the top left corner of the CarrierShape
         for(Shape child : children)
@@ -88,7 +123,7 @@ public class CarrierShape extends Shape{
         }
 
         // Translating the origin back to x = 0 y = 0
-        painter.translate(-_x,-_y);
+        painter.translate(-x(),-y());
     }
 
     /**
@@ -108,12 +143,13 @@ public class CarrierShape extends Shape{
 
         // If the shape to add is outside of the CarrierShape bounds
         // then throw an error
-        if(shape._width+shape._x>_width || shape._height+shape._x>_height)
+        if(shape.width()+shape.x()>width() || shape.height()+shape.x()>height())
         {
             throw new IllegalArgumentException();
         }
 
-        // Otherwise the shape is added to the children list
+        // Otherwise the shape is added to the end of the children list
+        shape._index = children.size();
         children.add(shape);
 
         // The parent of the shape is set to this CarrierShape
@@ -121,6 +157,18 @@ public class CarrierShape extends Shape{
         shape.setParent(this);
     }
 
+    /*
+     * Appends a shape without checking that it lies within this
+     * CarrierShape's bounds as it did when first added. Used by
+     * ShapeJournalReplayer to restore shapes that have since moved.
+     */
+    void restore(Shape shape)
+    {
+        shape._index = children.size();
+        children.add(shape);
+        shape.setParent(this);
+    }
+
     /**
      * Removes a particular Shape from a CarrierShape instance. Once removed,
      * the two-way link between the CarrierShape and its former child is destroyed.
@@ -132,7 +180,15 @@ public class CarrierShape extends Shape{
         // breaking the two-way connection
         if(contains(shape))
         {
-            children.remove(shape);
+            int index = shape._index;
+            children.remove(index);
+
+            // Renumbering the children that moved up to close the gap
+            for(int i = index; i < children.size(); i++)
+            {
+                children.get(i)._index = i;
+            }
+            shape._index = -1;
             shape.setParent(null);
         }
     }
@@ -164,8 +220,8 @@ public class CarrierShape extends Shape{
      */
     public int indexOf(Shape shape)
     {
-        // returns the index of the child
-        return children.indexOf(shape);
+        // returns the index cached by the child
+        return contains(shape) ? shape._index : -1;
     }
 
     /**
@@ -174,8 +230,13 @@ public class CarrierShape extends Shape{
      */
     public boolean contains(Shape shape)
     {
-        // checks if the child is in the children list
-        return children.contains(shape);
+        // checks if the child's cached index refers to it
+        if(shape == null)
+        {
+            return false;
+        }
+        int index = shape._index;
+        return index >= 0 && index < children.size() && children.get(index) == shape;
     }
 
 }
@@ -3,6 +3,9 @@ package spaceshapes;
 import java.awt.*;
 
 public class DynamicShape extends Shape{
+    // Colour of the outline drawn after hitting the top or the bottom wall.
+    private static final Color OUTLINE = new Color(212, 212, 212);
+
     private Color _color = Color.white;
 
     /**
@@ -84,6 +87,13 @@ public class DynamicShape extends Shape{
         _color = color;
     }
 
+    /*
+     * Returns the colour the shape is filled with after hitting a side wall.
+     */
+    Color color() {
+        return _color;
+    }
+
     @Override
     public void paint(Painter painter) {
         // Saving the current color to then set it back so that other shapes are not colored
@@ -93,15 +103,15 @@ public class DynamicShape extends Shape{
             // If the left or the right wall was the last wall hit then set the color of the shape
             // to the given color and paint it as a solid shape
             painter.setColor(_color);
-            painter.fillRect(_x,_y,_width,_height);
+            painter.fillRect(x(),y(),width(),height());
 
         }
         else
         {
             // If the top or the bottom wall was the last wall hit then set the outline to the default
             // outline and paint the shape with just an outline
-            painter.setColor(new Color(212, 212, 212));
-            painter.drawRect(_x,_y,_width,_height);
+            painter.setColor(OUTLINE);
+            painter.drawRect(x(),y(),width(),height());
         }
 
         // Set the color back to the original
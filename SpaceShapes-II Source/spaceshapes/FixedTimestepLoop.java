@@ -0,0 +1,175 @@
+package spaceshapes;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Game loop that runs a simulation step at a fixed rate on its own thread,
+ * independently of how often anything is painted. Real time elapsed since
+ * the previous iteration is accumulated and consumed in whole steps, so a
+ * late iteration is caught up by running several steps back to back rather
+ * than slowing the simulated world down.
+ *
+ * Renderers that paint between steps can call alpha() to find how far real
+ * time has progressed towards the next step and interpolate accordingly.
+ *
+ * Real time is read from a Clock, by default System.nanoTime().
+ */
+public class FixedTimestepLoop {
+	/**
+	 * Source of the real time against which steps are scheduled.
+	 */
+	public interface Clock {
+		/**
+		 * Returns the current time in nanoseconds, measured from an
+		 * arbitrary origin, as System.nanoTime() does.
+		 */
+		long nanoTime();
+	}
+
+	// Clock reading System.nanoTime().
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	// Longest stretch of real time caught up in one iteration, in steps.
+	// Beyond this the loop drops time instead of spiralling further behind.
+	private static final int MAX_CATCH_UP_STEPS = 10;
+
+	private final Runnable _step;
+
+	private final long _stepNanos;
+
+	private final Clock _clock;
+
+	private final RateMeter _stepRate = new RateMeter();
+
+	private volatile Thread _thread;
+
+	// Time at which the most recent step was due.
+	private volatile long _lastStepTime;
+
+	// Time at which the next step is due. Only used by the thread running
+	// the steps.
+	private long _nextStepTime;
+
+	/**
+	 * Creates a FixedTimestepLoop that calls step.run() stepsPerSecond times
+	 * per second once started.
+	 */
+	public FixedTimestepLoop(Runnable step, int stepsPerSecond) {
+		this(step, stepsPerSecond, SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Creates a FixedTimestepLoop that calls step.run() stepsPerSecond times
+	 * per second of the specified Clock's time once started.
+	 */
+	public FixedTimestepLoop(Runnable step, int stepsPerSecond, Clock clock) {
+		if(stepsPerSecond < 1) {
+			throw new IllegalArgumentException();
+		}
+		_step = step;
+		_stepNanos = 1000000000L / stepsPerSecond;
+		_clock = clock;
+		_nextStepTime = clock.nanoTime();
+		_lastStepTime = _nextStepTime;
+	}
+
+	/**
+	 * Starts running the simulation on a new daemon thread. Has no effect if
+	 * the loop is already running.
+	 */
+	public synchronized void start() {
+		if(_thread != null) {
+			return;
+		}
+		_nextStepTime = _clock.nanoTime();
+		_thread = new Thread(new Runnable() {
+			public void run() {
+				runLoop();
+			}
+		}, "Simulation");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Stops the simulation thread after its current step.
+	 */
+	public synchronized void stop() {
+		Thread thread = _thread;
+		_thread = null;
+
+		if(thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Returns true if the simulation thread is running.
+	 */
+	public boolean isRunning() {
+		return _thread != null;
+	}
+
+	/**
+	 * Returns the fraction, between 0 and 1, of a step's duration that has
+	 * elapsed since the most recent step was due.
+	 */
+	public double alpha() {
+		double alpha = (double)(_clock.nanoTime() - _lastStepTime) / _stepNanos;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	/**
+	 * Returns the measured number of steps per second.
+	 */
+	public double stepRate() {
+		return _stepRate.rate();
+	}
+
+	/**
+	 * Returns the number of steps run since the loop was created.
+	 */
+	public long steps() {
+		return _stepRate.total();
+	}
+
+	/*
+	 * Body of the simulation thread.
+	 */
+	private void runLoop() {
+		Thread self = Thread.currentThread();
+
+		while(_thread == self) {
+			runDueSteps(self);
+			LockSupport.parkNanos(this, _nextStepTime - _clock.nanoTime());
+		}
+	}
+
+	/*
+	 * Runs the steps that are due by the clock's current time, for as long
+	 * as owner is the thread running the loop (null if the loop has not been
+	 * started). Returns the number of steps run.
+	 */
+	int runDueSteps(Thread owner) {
+		long now = _clock.nanoTime();
+		int steps = 0;
+
+		// Drop time that cannot realistically be caught up.
+		if(now - _nextStepTime > MAX_CATCH_UP_STEPS * _stepNanos) {
+			_nextStepTime = now - MAX_CATCH_UP_STEPS * _stepNanos;
+		}
+
+		while(now - _nextStepTime >= 0 && _thread == owner) {
+			_step.run();
+			_stepRate.mark();
+			_lastStepTime = _nextStepTime;
+			_nextStepTime += _stepNanos;
+			steps++;
+		}
+		return steps;
+	}
+}
@@ -0,0 +1,432 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * Flat record of everything painted for one frame of a ShapeModel. A
+ * FrameSnapshot holds the painting primitives issued by the Shapes, in
+ * painting order, in parallel primitive arrays: a type id, four coordinates
+ * in world space (translations have already been applied), a colour and,
+ * for text and images, a reference to the text or Image. A polygon's
+ * coordinates are its bounding box; its vertices are held in per-primitive
+ * arrays that are reused from frame to frame.
+ *
+ * FrameSnapshots are created and recycled by a FrameSnapshotBuffer. To the
+ * reader a FrameSnapshot is immutable; it holds no references to Shapes, so
+ * painting one never touches the live composition.
+ */
+public class FrameSnapshot {
+
+	// === Primitive type ids.
+	public static final int RECTANGLE = 0;
+
+	public static final int OVAL = 1;
+
+	public static final int LINE = 2;
+
+	public static final int SOLID_RECTANGLE = 3;
+
+	public static final int TEXT = 4;
+
+	public static final int IMAGE = 5;
+
+	public static final int POLYGON = 6;
+
+	public static final int SOLID_POLYGON = 7;
+	// ===
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Number of primitives held.
+	private int _size;
+
+	// Number of the ShapeModel clock tick that produced this frame.
+	private long _frame;
+
+	// === Parallel arrays, one element (four for _coords) per primitive.
+	private int[] _types = new int[INITIAL_CAPACITY];
+
+	// x, y, width, height - or x1, y1, x2, y2 for lines.
+	private int[] _coords = new int[INITIAL_CAPACITY * 4];
+
+	// Index into _palette of the colour in effect for the primitive.
+	private int[] _colours = new int[INITIAL_CAPACITY];
+
+	// Text of TEXT primitives, null for others.
+	private String[] _texts = new String[INITIAL_CAPACITY];
+
+	// Image of IMAGE primitives, null for others.
+	private Image[] _images = new Image[INITIAL_CAPACITY];
+
+	// Number of vertices of POLYGON and SOLID_POLYGON primitives, 0 for
+	// others.
+	private int[] _pointCounts = new int[INITIAL_CAPACITY];
+	// ===
+
+	// Vertex coordinates of polygon primitives, allocated on first use of a
+	// slot and kept for reuse by later frames.
+	private int[][] _pointsX = new int[INITIAL_CAPACITY][];
+
+	private int[][] _pointsY = new int[INITIAL_CAPACITY][];
+
+	// Distinct colours used in this frame.
+	private Color[] _palette = new Color[8];
+
+	private int _paletteSize;
+
+	// Palette index of the most recently added primitive.
+	private int _lastColour;
+
+	/*
+	 * FrameSnapshots are created by FrameSnapshotBuffer.
+	 */
+	FrameSnapshot() {
+		clear(0);
+	}
+
+	/**
+	 * Returns the number of primitives in this frame.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns the number of the ShapeModel clock tick that produced this
+	 * frame.
+	 */
+	public long frame() {
+		return _frame;
+	}
+
+	/**
+	 * Returns the type id of the primitive at the specified index.
+	 */
+	public int type(int index) {
+		return _types[index];
+	}
+
+	/**
+	 * Returns the x position of the primitive at the specified index; for a
+	 * LINE the x position of its start point.
+	 */
+	public int x(int index) {
+		return _coords[index * 4];
+	}
+
+	/**
+	 * Returns the y position of the primitive at the specified index; for a
+	 * LINE the y position of its start point.
+	 */
+	public int y(int index) {
+		return _coords[index * 4 + 1];
+	}
+
+	/**
+	 * Returns the width of the primitive at the specified index; for a LINE
+	 * the x position of its end point.
+	 */
+	public int width(int index) {
+		return _coords[index * 4 + 2];
+	}
+
+	/**
+	 * Returns the height of the primitive at the specified index; for a LINE
+	 * the y position of its end point.
+	 */
+	public int height(int index) {
+		return _coords[index * 4 + 3];
+	}
+
+	/**
+	 * Returns the number of vertices of the POLYGON or SOLID_POLYGON
+	 * primitive at the specified index, 0 for other primitives.
+	 */
+	public int pointCount(int index) {
+		return _pointCounts[index];
+	}
+
+	/**
+	 * Returns the x position of a vertex of the polygon primitive at the
+	 * specified index.
+	 */
+	public int pointX(int index, int point) {
+		return _pointsX[index][point];
+	}
+
+	/**
+	 * Returns the y position of a vertex of the polygon primitive at the
+	 * specified index.
+	 */
+	public int pointY(int index, int point) {
+		return _pointsY[index][point];
+	}
+
+	/**
+	 * Returns the colour the primitive at the specified index is painted in.
+	 */
+	public Color colour(int index) {
+		return _palette[_colours[index]];
+	}
+
+	/**
+	 * Returns the text of the TEXT primitive at the specified index, null
+	 * for other primitives.
+	 */
+	public String text(int index) {
+		return _texts[index];
+	}
+
+	/**
+	 * Returns the Image of the IMAGE primitive at the specified index, null
+	 * for other primitives.
+	 */
+	public Image image(int index) {
+		return _images[index];
+	}
+
+	/**
+	 * Paints this frame using the supplied Painter object, setting the
+	 * Painter's colour only where it changes between primitives. Runs of
+	 * consecutive rectangles, ovals or lines of the same colour are passed to
+	 * the Painter as a single batch.
+	 */
+	public void paint(Painter painter) {
+		int colour = -1;
+
+		for(int i = 0; i < _size; i++) {
+			if(_colours[i] != colour) {
+				colour = _colours[i];
+				painter.setColor(_palette[colour]);
+			}
+
+			int c = i * 4;
+			int type = _types[i];
+			switch(type) {
+			case RECTANGLE:
+			case OVAL:
+			case LINE:
+				// The coordinates of a run are contiguous in _coords, in the
+				// layout the batched Painter methods take.
+				int end = i + 1;
+				while(end < _size && _types[end] == type && _colours[end] == colour) {
+					end++;
+				}
+				if(type == RECTANGLE) {
+					painter.drawRects(_coords, c, end - i);
+				} else if(type == OVAL) {
+					painter.drawOvals(_coords, c, end - i);
+				} else {
+					painter.drawLines(_coords, c, end - i);
+				}
+				i = end - 1;
+				break;
+			default:
+				paintPrimitive(i, painter);
+			}
+		}
+	}
+
+	/**
+	 * Paints a subset of this frame's primitives using the supplied Painter
+	 * object, e.g. those falling within one tile of a larger image.
+	 * @param indices indices of the primitives to paint, in increasing order.
+	 * @param count number of entries of indices to use.
+	 */
+	public void paint(Painter painter, int[] indices, int count) {
+		int colour = -1;
+
+		for(int k = 0; k < count; k++) {
+			int i = indices[k];
+			if(_colours[i] != colour) {
+				colour = _colours[i];
+				painter.setColor(_palette[colour]);
+			}
+
+			int type = _types[i];
+			if(type == RECTANGLE || type == OVAL || type == LINE) {
+				// Batch the run of listed primitives that are also consecutive
+				// in this frame.
+				int end = k + 1;
+				while(end < count && indices[end] == i + end - k
+						&& _types[indices[end]] == type && _colours[indices[end]] == colour) {
+					end++;
+				}
+				if(type == RECTANGLE) {
+					painter.drawRects(_coords, i * 4, end - k);
+				} else if(type == OVAL) {
+					painter.drawOvals(_coords, i * 4, end - k);
+				} else {
+					painter.drawLines(_coords, i * 4, end - k);
+				}
+				k = end - 1;
+			} else {
+				paintPrimitive(i, painter);
+			}
+		}
+	}
+
+	/*
+	 * Paints the primitive at the specified index on its own, without
+	 * setting the Painter's colour.
+	 */
+	void paintPrimitive(int index, Painter painter) {
+		int c = index * 4;
+		switch(_types[index]) {
+		case RECTANGLE:
+			painter.drawRect(_coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3]);
+			break;
+		case OVAL:
+			painter.drawOval(_coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3]);
+			break;
+		case LINE:
+			painter.drawLine(_coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3]);
+			break;
+		case SOLID_RECTANGLE:
+			painter.fillRect(_coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3]);
+			break;
+		case TEXT:
+			painter.drawCentredText(_coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3], _texts[index]);
+			break;
+		case IMAGE:
+			painter.drawImage(_images[index], _coords[c], _coords[c + 1], _coords[c + 2], _coords[c + 3]);
+			break;
+		case POLYGON:
+			painter.drawPolygon(_pointsX[index], _pointsY[index], _pointCounts[index]);
+			break;
+		case SOLID_POLYGON:
+			painter.fillPolygon(_pointsX[index], _pointsY[index], _pointCounts[index]);
+			break;
+		}
+	}
+
+	/*
+	 * Returns the palette index of the colour of the primitive at the
+	 * specified index.
+	 */
+	int colourIndex(int index) {
+		return _colours[index];
+	}
+
+	/*
+	 * Returns the number of distinct colours used in this frame.
+	 */
+	int paletteSize() {
+		return _paletteSize;
+	}
+
+	/*
+	 * Returns the array holding the coordinates of all primitives, four per
+	 * primitive.
+	 */
+	int[] coords() {
+		return _coords;
+	}
+
+	/*
+	 * Empties this FrameSnapshot for reuse, keeping its arrays.
+	 */
+	void clear(long frame) {
+		// Release text and image references held from the previous frame.
+		for(int i = 0; i < _size; i++) {
+			_texts[i] = null;
+			_images[i] = null;
+		}
+		_size = 0;
+		_paletteSize = 0;
+		_lastColour = -1;
+		_frame = frame;
+	}
+
+	/*
+	 * Appends a primitive to this FrameSnapshot.
+	 */
+	void add(int type, int a, int b, int c, int d, Color colour, String text, Image image) {
+		if(_size == _types.length) {
+			grow();
+		}
+		int i = _size++;
+		_types[i] = type;
+		_coords[i * 4] = a;
+		_coords[i * 4 + 1] = b;
+		_coords[i * 4 + 2] = c;
+		_coords[i * 4 + 3] = d;
+		_colours[i] = paletteIndex(colour);
+		_texts[i] = text;
+		_images[i] = image;
+		_pointCounts[i] = 0;
+	}
+
+	/*
+	 * Appends a POLYGON or SOLID_POLYGON primitive to this FrameSnapshot,
+	 * offsetting its vertices by the specified translation.
+	 */
+	void addPolygon(int type, int[] xPoints, int[] yPoints, int nPoints, int translateX, int translateY, Color colour) {
+		int left = Integer.MAX_VALUE;
+		int top = Integer.MAX_VALUE;
+		int right = Integer.MIN_VALUE;
+		int bottom = Integer.MIN_VALUE;
+
+		for(int p = 0; p < nPoints; p++) {
+			left = Math.min(left, xPoints[p]);
+			top = Math.min(top, yPoints[p]);
+			right = Math.max(right, xPoints[p]);
+			bottom = Math.max(bottom, yPoints[p]);
+		}
+		if(nPoints == 0) {
+			left = top = right = bottom = 0;
+		}
+		add(type, left + translateX, top + translateY, right - left, bottom - top, colour, null, null);
+
+		int i = _size - 1;
+		if(_pointsX[i] == null || _pointsX[i].length < nPoints) {
+			_pointsX[i] = new int[nPoints];
+			_pointsY[i] = new int[nPoints];
+		}
+		for(int p = 0; p < nPoints; p++) {
+			_pointsX[i][p] = xPoints[p] + translateX;
+			_pointsY[i][p] = yPoints[p] + translateY;
+		}
+		_pointCounts[i] = nPoints;
+	}
+
+	/*
+	 * Returns the palette index of a colour, adding it to the palette if it
+	 * is not yet present.
+	 */
+	private int paletteIndex(Color colour) {
+		// Consecutive primitives usually share a colour.
+		if(_lastColour >= 0 && _palette[_lastColour].equals(colour)) {
+			return _lastColour;
+		}
+		for(int i = 0; i < _paletteSize; i++) {
+			if(_palette[i].equals(colour)) {
+				_lastColour = i;
+				return i;
+			}
+		}
+		if(_paletteSize == _palette.length) {
+			_palette = Arrays.copyOf(_palette, _paletteSize * 2);
+		}
+		_palette[_paletteSize] = colour;
+		_lastColour = _paletteSize++;
+		return _lastColour;
+	}
+
+	/*
+	 * Doubles the capacity of the primitive arrays.
+	 */
+	private void grow() {
+		int capacity = _types.length * 2;
+		_types = Arrays.copyOf(_types, capacity);
+		_coords = Arrays.copyOf(_coords, capacity * 4);
+		_colours = Arrays.copyOf(_colours, capacity);
+		_texts = Arrays.copyOf(_texts, capacity);
+		_images = Arrays.copyOf(_images, capacity);
+		_pointCounts = Arrays.copyOf(_pointCounts, capacity);
+		_pointsX = Arrays.copyOf(_pointsX, capacity);
+		_pointsY = Arrays.copyOf(_pointsY, capacity);
+	}
+}
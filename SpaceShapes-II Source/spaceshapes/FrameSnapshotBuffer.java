@@ -0,0 +1,61 @@
+package spaceshapes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer through which a ShapeModel publishes a
+ * FrameSnapshot after each clock() call. The three FrameSnapshots are
+ * allocated once and reused: one is written by the ShapeModel, one holds
+ * the latest published frame and one is being painted by the reader. 
+ * Publishing never waits for the reader and the reader never waits for the
+ * ShapeModel; a reader that falls behind simply skips frames.
+ *
+ * There must be at most one reader, e.g. the Event Dispatch thread.
+ */
+public class FrameSnapshotBuffer {
+	// Bit set in _middle when it holds a frame the reader has not acquired.
+	private static final int FRESH = 4;
+
+	private static final int INDEX = 3;
+
+	private final FrameSnapshot[] _snapshots = {
+			new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot()};
+
+	// Index of the latest published FrameSnapshot, plus the FRESH bit.
+	private final AtomicInteger _middle = new AtomicInteger(1);
+
+	// Index of the FrameSnapshot owned by the writer.
+	private int _back = 0;
+
+	// Index of the FrameSnapshot owned by the reader.
+	private int _front = 2;
+
+	/*
+	 * Returns the writer's FrameSnapshot, emptied and ready to record the
+	 * specified frame.
+	 */
+	FrameSnapshot beginWrite(long frame) {
+		FrameSnapshot snapshot = _snapshots[_back];
+		snapshot.clear(frame);
+		return snapshot;
+	}
+
+	/*
+	 * Publishes the FrameSnapshot returned by the last beginWrite() call.
+	 */
+	void publish() {
+		_back = _middle.getAndSet(_back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Returns the most recently published FrameSnapshot. The returned
+	 * FrameSnapshot remains valid until the next acquire() call. Before
+	 * anything has been published an empty FrameSnapshot is returned.
+	 */
+	public FrameSnapshot acquire() {
+		if((_middle.get() & FRESH) != 0) {
+			_front = _middle.getAndSet(_front) & INDEX;
+		}
+		return _snapshots[_front];
+	}
+}
@@ -1,24 +1,50 @@
 package spaceshapes;
 
 import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
 
 /**
  * Implementation of the Painter interface that delegates drawing to a
- * java.awt.Graphics object.
+ * java.awt.Graphics object. Where the delegate is a Graphics2D, batched
+ * requests are combined into one path that is drawn with a single call.
  *
  * @author Paramvir Singh (Original Author - Ian Warren)
  *
  */
 public class GraphicsPainter implements Painter {
+	// Colour set on the delegate when the painter is created.
+	private static final Color DEFAULT_COLOUR = new Color(212, 212, 212);
+
 	// Delegate object.
 	private Graphics _g;
 
+	// Path reused to combine the primitives of a batch.
+	private Path2D.Float _batch;
+
+	// Cache of shape images, null if shapes are always painted.
+	private SpriteCache _sprites;
+
+	// Rules reducing the detail of shapes, null if they are painted in full.
+	private LevelOfDetail _levelOfDetail;
+
+	// Ellipse reused to append ovals to _batch.
+	private Ellipse2D.Float _ellipse;
+
 	/**
 	 * Creates a GraphicsPainter object and sets its Graphics delegate.
 	 */
 	public GraphicsPainter(Graphics g) {
 		this._g = g;
-		_g.setColor(new Color(212, 212, 212));
+		_g.setColor(DEFAULT_COLOUR);
+	}
+
+	/**
+	 * Sets the SpriteCache that shapes are drawn from, or null to always
+	 * paint them.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
 	}
 
 	/**
@@ -42,6 +68,82 @@ public class GraphicsPainter implements Painter {
 		_g.drawLine(x1, y1, x2, y2);
 	}
 
+	/**
+	 * see spaceshapes.Painter.drawPolygon.
+	 */
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_g.drawPolygon(xPoints, yPoints, nPoints);
+	}
+
+	/**
+	 * see spaceshapes.Painter.fillPolygon.
+	 */
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_g.fillPolygon(xPoints, yPoints, nPoints);
+	}
+
+	/**
+	 * see spaceshapes.Painter.drawRects.
+	 */
+	public void drawRects(int[] coords, int offset, int count) {
+		if(!(_g instanceof Graphics2D)) {
+			for(int i = offset; i < offset + count * 4; i += 4) {
+				_g.drawRect(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+			}
+			return;
+		}
+		Path2D.Float batch = batch();
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			int x = coords[i];
+			int y = coords[i + 1];
+			batch.moveTo(x, y);
+			batch.lineTo(x + coords[i + 2], y);
+			batch.lineTo(x + coords[i + 2], y + coords[i + 3]);
+			batch.lineTo(x, y + coords[i + 3]);
+			batch.closePath();
+		}
+		((Graphics2D)_g).draw(batch);
+	}
+
+	/**
+	 * see spaceshapes.Painter.drawOvals.
+	 */
+	public void drawOvals(int[] coords, int offset, int count) {
+		if(!(_g instanceof Graphics2D)) {
+			for(int i = offset; i < offset + count * 4; i += 4) {
+				_g.drawOval(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+			}
+			return;
+		}
+		Path2D.Float batch = batch();
+		if(_ellipse == null) {
+			_ellipse = new Ellipse2D.Float();
+		}
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			_ellipse.setFrame(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+			batch.append(_ellipse, false);
+		}
+		((Graphics2D)_g).draw(batch);
+	}
+
+	/**
+	 * see spaceshapes.Painter.drawLines.
+	 */
+	public void drawLines(int[] coords, int offset, int count) {
+		if(!(_g instanceof Graphics2D)) {
+			for(int i = offset; i < offset + count * 4; i += 4) {
+				_g.drawLine(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+			}
+			return;
+		}
+		Path2D.Float batch = batch();
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			batch.moveTo(coords[i], coords[i + 1]);
+			batch.lineTo(coords[i + 2], coords[i + 3]);
+		}
+		((Graphics2D)_g).draw(batch);
+	}
+
 	/**
 	 * Draws a solid rectangle of the painters color
 	 */
@@ -71,13 +173,16 @@ public class GraphicsPainter implements Painter {
 	}
 
 	/**
-	 * Draws text in the middle of the shape
+	 * Draws text in the middle of the shape. The text's measurements and
+	 * glyphs are looked up in the shared TextLayoutCache rather than worked
+	 * out on every call.
 	 */
 	public void drawCentredText(int x,int y,int width, int height,String text) {
 		// Finding the required metrics for the centre calculation
-		int fontWidth = _g.getFontMetrics().stringWidth(text);
-		int ascent = _g.getFontMetrics().getAscent();
-		int descent = _g.getFontMetrics().getDescent();
+		TextLayoutCache.Entry layout = TextLayoutCache.shared().get(text, _g.getFontMetrics());
+		int fontWidth = layout.width();
+		int ascent = layout.ascent();
+		int descent = layout.descent();
 
 		// Centering the x and y points depending on the font metrics
 		y = y+height/2;
@@ -93,11 +198,71 @@ public class GraphicsPainter implements Painter {
 		}
 
 		// Drawing the text at the centre point
-		_g.drawString(text,x,y);
+		if (_g instanceof Graphics2D)
+		{
+			synchronized (layout)
+			{
+				((Graphics2D)_g).drawGlyphVector(layout.glyphs(), x, y);
+			}
+		}
+		else
+		{
+			_g.drawString(text,x,y);
+		}
+	}
+
+	/**
+	 * Returns the bounds of the text drawn by drawCentredText for a shape
+	 * with the specified bounds, given the metrics of the font in use.
+	 */
+	public static Rectangle centredTextBounds(FontMetrics metrics, int x, int y, int width, int height, String text) {
+		TextLayoutCache.Entry layout = TextLayoutCache.shared().get(text, metrics);
+		int fontWidth = layout.width();
+		int ascent = layout.ascent();
+		int descent = layout.descent();
+
+		// The baseline as placed by drawCentredText
+		int baseline = y + height / 2 + Math.abs(ascent - descent) / 2;
+
+		return new Rectangle(x + width / 2 - fontWidth / 2, baseline - ascent, fontWidth, ascent + descent);
 	}
 
 	@Override
 	public void drawImage(Image img, int x, int y, int width, int height) {
 		_g.drawImage(img,x,y,width,height,null);
 	}
+
+	/**
+	 * Draws a shape from the SpriteCache, if one is set.
+	 */
+	public boolean drawSprite(Shape shape) {
+		return _sprites != null && _sprites.draw(shape, this);
+	}
+
+	/**
+	 * Sets the LevelOfDetail that shapes are drawn with, or null to
+	 * paint them in full.
+	 */
+	public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+		_levelOfDetail = levelOfDetail;
+	}
+
+	/**
+	 * Returns the LevelOfDetail set, or null.
+	 */
+	public LevelOfDetail levelOfDetail() {
+		return _levelOfDetail;
+	}
+
+	/*
+	 * Returns the empty path used to combine a batch of primitives.
+	 */
+	private Path2D.Float batch() {
+		if(_batch == null) {
+			_batch = new Path2D.Float();
+		} else {
+			_batch.reset();
+		}
+		return _batch;
+	}
 }
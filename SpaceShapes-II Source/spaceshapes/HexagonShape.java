@@ -1,6 +1,20 @@
 package spaceshapes;
 
 public class HexagonShape extends Shape{
+    // Number of vertices, including the doubled ones of narrow hexagons
+    private static final int VERTICES = 6;
+
+    // Vertex offsets from the top left corner, valid for a hexagon of size
+    // _cachedWidth x _cachedHeight
+    private int[] _xOffsets = new int[VERTICES];
+    private int[] _yOffsets = new int[VERTICES];
+    private int _cachedWidth = -1;
+    private int _cachedHeight = -1;
+
+    // Reusable buffers holding the translated vertices passed to the Painter
+    private int[] _xPoints = new int[VERTICES];
+    private int[] _yPoints = new int[VERTICES];
+
     /**
      * Default constructor that creates a HexagonShape instance whose instance
      * variables are set to default values.
@@ -42,36 +56,76 @@ public class HexagonShape extends Shape{
         super(x,y,deltaX,deltaY,width,height,text);
     }
 
+    /**
+     * Returns PLAIN_SPRITE. The vertices are computed from the hexagon's
+     * width and height alone, so a sprite cached for one size fits all
+     * hexagons of that size.
+     */
+    @Override
+    protected Object spriteState() {
+        return PLAIN_SPRITE;
+    }
+
     /**
      * Paints this HexagonShape object using the supplied Painter object.
      */
     @Override
     public void paint(Painter painter) {
-        // Creating a Point for all 6 edges in the hexagon
-        Point mostLeft = new Point(_x,_y+_height/2);
-        Point topLeft = new Point(_x+20,_y);
-        Point topRight = new Point(_x+_width-20,_y);
-        Point mostRight = new Point(_x+_width,_y+_height/2);
-        Point bottomRight = new Point(_x+_width-20,_y+_height);
-        Point bottomLeft = new Point(_x+20,_y+_height);
+        // Reading the state through the accessors, which also cover packed shapes
+        int x = x();
+        int y = y();
+        int width = width();
+        int height = height();
+
+        // The vertex offsets only change when the size of the hexagon does
+        if(width != _cachedWidth || height != _cachedHeight)
+        {
+            computeVertexOffsets(width, height);
+        }
+
+        // Translating the vertices to the hexagon's current position
+        for(int i = 0; i < VERTICES; i++)
+        {
+            _xPoints[i] = x + _xOffsets[i];
+            _yPoints[i] = y + _yOffsets[i];
+        }
+
+        // Drawing the hexagon starting from the most left edge going clock wise
+        painter.drawPolygon(_xPoints, _yPoints, VERTICES);
+    }
+
+    /**
+     * Computes the offsets of the six vertices from the top left corner of
+     * a hexagon of the given size, starting from the most left vertex and
+     * going clock wise.
+     */
+    private void computeVertexOffsets(int width, int height)
+    {
+        int topLeft = 20;
+        int topRight = width - 20;
 
         // If the width of the hexagon is less then 40 pixels then the hexagon is a 4 sided
         // figure therefore top left = top right and bottom left = bottom right
-        if(_width<40)
+        if(width < 40)
         {
-            topLeft = new Point(_x+_width/2,_y);
+            topLeft = width / 2;
             topRight = topLeft;
-
-            bottomLeft = new Point(_x+_width/2,_y+_height);
-            bottomRight = bottomLeft;
         }
 
-        // Drawing the hexagon starting from the most left edge going clock wise
-        painter.drawLine(mostLeft.get_x(), mostLeft.get_y(), topLeft.get_x(), topLeft.get_y());
-        painter.drawLine(topLeft.get_x(), topLeft.get_y(), topRight.get_x(), topRight.get_y());
-        painter.drawLine(topRight.get_x(), topRight.get_y(), mostRight.get_x(), mostRight.get_y());
-        painter.drawLine(mostRight.get_x(), mostRight.get_y(), bottomRight.get_x(), bottomRight.get_y());
-        painter.drawLine(bottomRight.get_x(), bottomRight.get_y(), bottomLeft.get_x(), bottomLeft.get_y());
-        painter.drawLine(bottomLeft.get_x(), bottomLeft.get_y(), mostLeft.get_x(), mostLeft.get_y());
+        setVertexOffset(0, 0, height / 2);
+        setVertexOffset(1, topLeft, 0);
+        setVertexOffset(2, topRight, 0);
+        setVertexOffset(3, width, height / 2);
+        setVertexOffset(4, topRight, height);
+        setVertexOffset(5, topLeft, height);
+
+        _cachedWidth = width;
+        _cachedHeight = height;
+    }
+
+    private void setVertexOffset(int vertex, int xOffset, int yOffset)
+    {
+        _xOffsets[vertex] = xOffset;
+        _yOffsets[vertex] = yOffset;
     }
 }
@@ -19,9 +19,18 @@ public class ImageRectangleShape extends RectangleShape {
 		_picture = image;
 	}
 	
+	/*
+	 * Returns the image this shape displays.
+	 */
+	Image image() {
+		return _picture;
+	}
+
 	@Override
 	public void doPaint(Painter painter) {
-		painter.drawImage(_picture,_x,_y,_width,_height);
+		if(!paintReduced(painter)) {
+			painter.drawImage(_picture,x(),y(),width(),height());
+		}
 	}
 }
 
@@ -0,0 +1,206 @@
+package spaceshapes;
+
+import java.awt.Rectangle;
+
+/**
+ * Rules that reduce the detail in which Shapes are painted where the detail
+ * would not be seen. A painter with a LevelOfDetail has Shape.doPaint():
+ * <ul>
+ * <li>cull Shapes whose bounds in the world miss the clip rectangle, along
+ * with, for a CarrierShape, all of its descendants;</li>
+ * <li>draw Shapes narrower and lower than the point size as a single pixel,
+ * again without their descendants;</li>
+ * <li>skip the text of Shapes lower than the minimum text height.</li>
+ * </ul>
+ * The numbers of Shapes culled, drawn as points and drawn in full, and of
+ * texts skipped, are counted for each frame painted between a beginFrame()
+ * and an endFrame() call.
+ *
+ * A LevelOfDetail is used by one painting thread at a time, but its clip
+ * may be set, and its counts read, from any thread.
+ */
+public class LevelOfDetail {
+
+	/**
+	 * Default width and height below which a Shape is drawn as a point.
+	 */
+	public static final int DEFAULT_POINT_SIZE = 2;
+
+	/**
+	 * Default height below which a Shape's text is skipped.
+	 */
+	public static final int DEFAULT_MIN_TEXT_HEIGHT = 8;
+
+	/**
+	 * Detail in which select() decides a Shape is painted: not at all, as a
+	 * single point or in full.
+	 */
+	public static final int CULLED = 0;
+
+	public static final int POINT = 1;
+
+	public static final int FULL = 2;
+
+	// Area in the world outside which Shapes are culled, null to cull none.
+	private volatile Rectangle _clip;
+
+	private volatile int _pointSize = DEFAULT_POINT_SIZE;
+
+	private volatile int _minTextHeight = DEFAULT_MIN_TEXT_HEIGHT;
+
+	// === Counts for the frame being painted.
+	private int _culled;
+
+	private int _points;
+
+	private int _drawn;
+
+	private int _textsSkipped;
+	// ===
+
+	// === Counts for the last frame completed.
+	private volatile int _lastCulled;
+
+	private volatile int _lastPoints;
+
+	private volatile int _lastDrawn;
+
+	private volatile int _lastTextsSkipped;
+	// ===
+
+	/**
+	 * Sets the area, in world coordinates, outside which Shapes are culled,
+	 * or null to cull no Shapes. The rectangle is copied.
+	 */
+	public void setClip(Rectangle clip) {
+		_clip = clip == null ? null : new Rectangle(clip);
+	}
+
+	/**
+	 * Returns the area outside which Shapes are culled, or null.
+	 */
+	public Rectangle clip() {
+		Rectangle clip = _clip;
+		return clip == null ? null : new Rectangle(clip);
+	}
+
+	/**
+	 * Sets the width and height below which a Shape is drawn as a point. A
+	 * point size of 0 draws every Shape in full.
+	 */
+	public void setPointSize(int pointSize) {
+		_pointSize = pointSize;
+	}
+
+	/**
+	 * Returns the width and height below which a Shape is drawn as a point.
+	 */
+	public int pointSize() {
+		return _pointSize;
+	}
+
+	/**
+	 * Sets the height below which a Shape's text is skipped. A height of 0
+	 * skips no text.
+	 */
+	public void setMinTextHeight(int minTextHeight) {
+		_minTextHeight = minTextHeight;
+	}
+
+	/**
+	 * Returns the height below which a Shape's text is skipped.
+	 */
+	public int minTextHeight() {
+		return _minTextHeight;
+	}
+
+	/**
+	 * Starts counting for a new frame.
+	 */
+	public void beginFrame() {
+		_culled = 0;
+		_points = 0;
+		_drawn = 0;
+		_textsSkipped = 0;
+	}
+
+	/**
+	 * Ends the frame being painted, making its counts those returned by
+	 * culled(), points(), drawn() and textsSkipped().
+	 */
+	public void endFrame() {
+		_lastCulled = _culled;
+		_lastPoints = _points;
+		_lastDrawn = _drawn;
+		_lastTextsSkipped = _textsSkipped;
+	}
+
+	/**
+	 * Returns the number of Shapes culled in the last frame. The descendants
+	 * of a culled CarrierShape are not visited, so are not counted.
+	 */
+	public int culled() {
+		return _lastCulled;
+	}
+
+	/**
+	 * Returns the number of Shapes drawn as a point in the last frame.
+	 */
+	public int points() {
+		return _lastPoints;
+	}
+
+	/**
+	 * Returns the number of Shapes drawn in full in the last frame.
+	 */
+	public int drawn() {
+		return _lastDrawn;
+	}
+
+	/**
+	 * Returns the number of texts skipped in the last frame.
+	 */
+	public int textsSkipped() {
+		return _lastTextsSkipped;
+	}
+
+	/**
+	 * Returns the detail in which a Shape is to be painted, CULLED, POINT or
+	 * FULL, and counts the Shape.
+	 */
+	public int select(Shape shape) {
+		int width = shape.width();
+		int height = shape.height();
+
+		// Outlines extend one pixel to the right of and below the bounds.
+		Rectangle clip = _clip;
+		if(clip != null) {
+			int x = shape.absoluteX();
+			int y = shape.absoluteY();
+			if(x > clip.x + clip.width || y > clip.y + clip.height
+					|| x + width + 1 < clip.x || y + height + 1 < clip.y) {
+				_culled++;
+				return CULLED;
+			}
+		}
+
+		if(width < _pointSize && height < _pointSize) {
+			_points++;
+			return POINT;
+		}
+		_drawn++;
+		return FULL;
+	}
+
+	/**
+	 * Returns whether the text of a Shape drawn in full is to be drawn, and
+	 * counts the text if not.
+	 */
+	public boolean showText(Shape shape) {
+		if(shape.height() < _minTextHeight) {
+			_textsSkipped++;
+			return false;
+		}
+		return true;
+	}
+}
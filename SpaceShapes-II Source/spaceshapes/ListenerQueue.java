@@ -0,0 +1,264 @@
+package spaceshapes;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ShapeModelListener that queues ShapeModelEvents for another listener and
+ * delivers them asynchronously using an Executor. A ShapeModel with
+ * asynchronous dispatch enabled registers one ListenerQueue per listener, so
+ * a slow listener no longer holds up the ShapeModel or the other listeners.
+ *
+ * Events are delivered one at a time, in the order they were queued. The
+ * queue is bounded; when it is full the OverflowPolicy decides what happens.
+ * ShapeAdded, ShapeRemoved and ShapesChanged events are never dropped or
+ * reordered.
+ */
+public class ListenerQueue implements ShapeModelListener {
+
+	/**
+	 * Policies for handling an event that arrives while the queue is full.
+	 * DropOldestMoved discards the oldest queued ShapeMoved event to make
+	 * room, or the arriving event if it is a ShapeMoved event and none is
+	 * queued. Coalesce discards a ShapeMoved event whenever it would directly
+	 * follow a queued ShapeMoved event for the same Shape, whether the queue
+	 * is full or not. Block makes the caller wait for room. Where an event
+	 * cannot be discarded, all policies make the caller wait.
+	 *
+	 * Waiting must be avoided when the ShapeModel fires events on the thread
+	 * that delivers them (e.g. the Event Dispatch thread), as the queue would
+	 * then never drain.
+	 */
+	public enum OverflowPolicy {DropOldestMoved, Coalesce, Block};
+
+	private final ShapeModelListener _listener;
+
+	private final int _capacity;
+
+	private final OverflowPolicy _policy;
+
+	private final Executor _executor;
+
+	private final ArrayDeque<ShapeModelEvent> _queue = new ArrayDeque<ShapeModelEvent>();
+
+	private final ReentrantLock _lock = new ReentrantLock();
+
+	private final Condition _notFull = _lock.newCondition();
+
+	// Whether a delivery task has been handed to the executor.
+	private boolean _scheduled;
+
+	// === Counters, guarded by _lock.
+	private int _maxDepth;
+
+	private long _dropped;
+
+	private long _coalesced;
+
+	private long _delivered;
+	// ===
+
+	// Task that delivers queued events until the queue is empty.
+	private final Runnable _deliveryTask = new Runnable() {
+		public void run() {
+			deliver();
+		}
+	};
+
+	/**
+	 * Creates a ListenerQueue that delivers events to listener.
+	 * @param listener the listener to which events are delivered.
+	 * @param capacity the maximum number of queued events.
+	 * @param policy what to do with an event that arrives when the queue is
+	 *        full.
+	 * @param executor runs the task that delivers queued events. The task is
+	 *        never submitted again while it is still running.
+	 */
+	public ListenerQueue(ShapeModelListener listener, int capacity, OverflowPolicy policy, Executor executor) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		_listener = listener;
+		_capacity = capacity;
+		_policy = policy;
+		_executor = executor;
+	}
+
+	/**
+	 * Queues a ShapeModelEvent for delivery to the listener.
+	 */
+	@Override
+	public void update(ShapeModelEvent event) {
+		boolean moved = event.eventType() == ShapeModelEvent.EventType.ShapeMoved;
+		boolean schedule = false;
+
+		_lock.lock();
+		try {
+			if(moved && _policy == OverflowPolicy.Coalesce) {
+				ShapeModelEvent last = _queue.peekLast();
+				if(last != null && last.eventType() == ShapeModelEvent.EventType.ShapeMoved
+						&& last.operand() == event.operand()) {
+					_coalesced++;
+					return;
+				}
+			}
+
+			while(_queue.size() >= _capacity) {
+				if(_policy == OverflowPolicy.DropOldestMoved) {
+					if(removeOldestMoved()) {
+						_dropped++;
+						break;
+					} else if(moved) {
+						_dropped++;
+						return;
+					}
+				}
+				_notFull.awaitUninterruptibly();
+			}
+
+			_queue.addLast(event);
+			_maxDepth = Math.max(_maxDepth, _queue.size());
+
+			if(!_scheduled) {
+				_scheduled = true;
+				schedule = true;
+			}
+		} finally {
+			_lock.unlock();
+		}
+
+		if(schedule) {
+			_executor.execute(_deliveryTask);
+		}
+	}
+
+	/**
+	 * Returns the listener to which this ListenerQueue delivers events.
+	 */
+	public ShapeModelListener listener() {
+		return _listener;
+	}
+
+	/*
+	 * Returns the Executor that delivers this ListenerQueue's events.
+	 */
+	Executor executor() {
+		return _executor;
+	}
+
+	/**
+	 * Returns the number of events waiting to be delivered.
+	 */
+	public int depth() {
+		_lock.lock();
+		try {
+			return _queue.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the largest number of events that have been waiting at once.
+	 */
+	public int maxDepth() {
+		_lock.lock();
+		try {
+			return _maxDepth;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of ShapeMoved events dropped because the queue was
+	 * full.
+	 */
+	public long dropped() {
+		_lock.lock();
+		try {
+			return _dropped;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of ShapeMoved events discarded by coalescing.
+	 */
+	public long coalesced() {
+		_lock.lock();
+		try {
+			return _coalesced;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of events delivered to the listener.
+	 */
+	public long delivered() {
+		_lock.lock();
+		try {
+			return _delivered;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/*
+	 * Removes the oldest queued ShapeMoved event. Returns false if there is
+	 * none. Called with _lock held.
+	 */
+	private boolean removeOldestMoved() {
+		Iterator<ShapeModelEvent> events = _queue.iterator();
+		while(events.hasNext()) {
+			if(events.next().eventType() == ShapeModelEvent.EventType.ShapeMoved) {
+				events.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Delivers queued events to the listener until the queue is empty.
+	 */
+	private void deliver() {
+		while(true) {
+			ShapeModelEvent event;
+
+			_lock.lock();
+			try {
+				event = _queue.pollFirst();
+				if(event == null) {
+					_scheduled = false;
+					return;
+				}
+				_notFull.signalAll();
+			} finally {
+				_lock.unlock();
+			}
+
+			try {
+				_listener.update(event);
+			} catch(RuntimeException e) {
+				// A failing listener must not stop delivery of later events,
+				// so its exception goes to the thread's handler instead.
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+
+			_lock.lock();
+			try {
+				_delivered++;
+			} finally {
+				_lock.unlock();
+			}
+		}
+	}
+}
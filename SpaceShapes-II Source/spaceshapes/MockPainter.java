@@ -46,6 +46,17 @@ public class MockPainter implements Painter {
 		_log.append("(line " + x1 + "," + y1 + "," + x2 + "," + y2 + ")");
 	}
 
+	/**
+	 * Logs the fillPolygon call.
+	 */
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_log.append("(solid polygon");
+		for(int i = 0; i < nPoints; i++) {
+			_log.append((i == 0 ? " " : ",") + xPoints[i] + "," + yPoints[i]);
+		}
+		_log.append(")");
+	}
+
 	/**
 	 * Draws a solid rectangle of the painters color
 	 */
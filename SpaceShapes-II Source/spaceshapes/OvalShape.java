@@ -42,11 +42,19 @@ public class OvalShape extends Shape{
         super(x,y,deltaX,deltaY,width,height,text);
     }
 
+    /**
+     * Returns PLAIN_SPRITE, as an oval is drawn the same way at any position.
+     */
+    @Override
+    protected Object spriteState() {
+        return PLAIN_SPRITE;
+    }
+
     /**
      * Paints this OvalShape object using the supplied Painter object.
      */
     @Override
     public void paint(Painter painter) {
-        painter.drawOval(_x,_y,_width,_height);
+        painter.drawOval(x(),y(),width(),height());
     }
 }
@@ -0,0 +1,241 @@
+package spaceshapes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alternative simulation engine used by a ShapeModel in ClockMode.Packed.
+ * Rather than walking the CarrierShape composition and calling move() on
+ * every Shape, a PackedShapeEngine copies the movement state of all shapes
+ * into parallel primitive arrays - one Block per CarrierShape level - and
+ * advances each Block in a tight loop.
+ *
+ * While packed, a Shape's accessors (x(), y(), deltaX() etc.) act as views
+ * over its Block. Unpacking copies the state back into the shapes, after
+ * which they behave exactly as before. The movement and bounce algorithm is
+ * identical to that of Shape.move(int, int, double).
+ */
+class PackedShapeEngine {
+
+	/*
+	 * Parallel arrays holding the state of the children of one CarrierShape
+	 * (or, for the first block, of the root CarrierShape alone).
+	 */
+	static class Block {
+		// CarrierShape whose size bounds this block, null for the root block.
+		final CarrierShape _carrier;
+
+		final Shape[] _shapes;
+		final int[] _x;
+		final int[] _y;
+		final int[] _subX;
+		final int[] _subY;
+		final int[] _deltaX;
+		final int[] _deltaY;
+		final int[] _width;
+		final int[] _height;
+		final int[] _lastBorderHit;
+
+		Block(CarrierShape carrier, int size) {
+			_carrier = carrier;
+			_shapes = new Shape[size];
+			_x = new int[size];
+			_y = new int[size];
+			_subX = new int[size];
+			_subY = new int[size];
+			_deltaX = new int[size];
+			_deltaY = new int[size];
+			_width = new int[size];
+			_height = new int[size];
+			_lastBorderHit = new int[size];
+		}
+
+		/*
+		 * Copies the state of a shape into the specified slot and binds the
+		 * shape to this block.
+		 */
+		void pack(Shape shape, int slot) {
+			_shapes[slot] = shape;
+			_x[slot] = shape.x();
+			_y[slot] = shape.y();
+			_subX[slot] = shape._subX;
+			_subY[slot] = shape._subY;
+			_deltaX[slot] = shape.deltaX();
+			_deltaY[slot] = shape.deltaY();
+			_width[slot] = shape.width();
+			_height[slot] = shape.height();
+			_lastBorderHit[slot] = shape.lastBorderHit();
+
+			shape._block = this;
+			shape._slot = slot;
+		}
+
+		/*
+		 * Moves the shape held in the specified slot within the given bounds
+		 * by a time step of step/Shape.ONE ticks.
+		 */
+		void move(int slot, int width, int height, int step) {
+			advance(slot, slot + 1, width, height, step);
+		}
+
+		/*
+		 * Moves the shapes held in slots from (inclusive) to to (exclusive)
+		 * within the given bounds by a time step of step/Shape.ONE ticks.
+		 * This is Shape.moveShape() expressed over the block's arrays.
+		 */
+		void advance(int from, int to, int width, int height, int step) {
+			final int[] x = _x;
+			final int[] y = _y;
+			final int[] subX = _subX;
+			final int[] subY = _subY;
+			final int[] deltaX = _deltaX;
+			final int[] deltaY = _deltaY;
+			final int[] w = _width;
+			final int[] h = _height;
+			final int[] border = _lastBorderHit;
+
+			for(int i = from; i < to; i++) {
+				long fixedX = ((long)x[i] << Shape.FRACTION_BITS) + subX[i] + (long)deltaX[i] * step;
+				long fixedY = ((long)y[i] << Shape.FRACTION_BITS) + subY[i] + (long)deltaY[i] * step;
+				int nextX = (int)(fixedX >> Shape.FRACTION_BITS);
+				int nextY = (int)(fixedY >> Shape.FRACTION_BITS);
+				int nextSubX = (int)fixedX & Shape.FRACTION_MASK;
+				int nextSubY = (int)fixedY & Shape.FRACTION_MASK;
+
+				if(nextX <= 0) {
+					nextX = 0;
+					nextSubX = 0;
+					deltaX[i] = -deltaX[i];
+					border[i] = Shape.LEFT_BORDER;
+				} else if(nextX + w[i] >= width) {
+					nextX = width - w[i];
+					nextSubX = 0;
+					deltaX[i] = -deltaX[i];
+					border[i] = Shape.RIGHT_BORDER;
+				}
+
+				if(nextY <= 0) {
+					nextY = 0;
+					nextSubY = 0;
+					deltaY[i] = -deltaY[i];
+					border[i] = Shape.TOP_BORDER;
+				} else if(nextY + h[i] >= height) {
+					nextY = height - h[i];
+					nextSubY = 0;
+					deltaY[i] = -deltaY[i];
+					border[i] = Shape.BOTTOM_BORDER;
+				}
+
+				x[i] = nextX;
+				y[i] = nextY;
+				subX[i] = nextSubX;
+				subY[i] = nextSubY;
+			}
+		}
+
+		/*
+		 * Recomputes the world positions of the shapes held by this block
+		 * from that of their CarrierShape, which must be up to date.
+		 */
+		void updateAbsolute() {
+			int originX = _carrier == null ? 0 : _carrier._absoluteX;
+			int originY = _carrier == null ? 0 : _carrier._absoluteY;
+			final Shape[] shapes = _shapes;
+
+			for(int i = 0; i < shapes.length; i++) {
+				shapes[i]._absoluteX = originX + _x[i];
+				shapes[i]._absoluteY = originY + _y[i];
+			}
+		}
+
+		/*
+		 * Returns the number of shapes held by this block.
+		 */
+		int size() {
+			return _shapes.length;
+		}
+	}
+
+	// Blocks in breadth-first order; the first block holds the root.
+	private List<Block> _blocks = new ArrayList<Block>();
+
+	// Whether the shapes of a composition are currently held in the blocks.
+	private boolean _packed;
+
+	/**
+	 * Copies the state of the composition rooted at root into parallel arrays.
+	 * Any previously packed composition is unpacked first.
+	 */
+	void pack(CarrierShape root) {
+		unpack();
+
+		Block rootBlock = new Block(null, 1);
+		rootBlock.pack(root, 0);
+		_blocks.add(rootBlock);
+
+		// Create one block per CarrierShape, breadth first.
+		List<CarrierShape> carriers = new ArrayList<CarrierShape>();
+		carriers.add(root);
+
+		for(int c = 0; c < carriers.size(); c++) {
+			CarrierShape carrier = carriers.get(c);
+			int count = carrier.shapeCount();
+
+			if(count > 0) {
+				Block block = new Block(carrier, count);
+				for(int i = 0; i < count; i++) {
+					Shape child = carrier.shapeAt(i);
+					block.pack(child, i);
+
+					if(child instanceof CarrierShape) {
+						carriers.add((CarrierShape)child);
+					}
+				}
+				_blocks.add(block);
+			}
+		}
+		_packed = true;
+	}
+
+	/**
+	 * Copies the state held in the parallel arrays back into the shapes and
+	 * releases the arrays. Has no effect if nothing is packed.
+	 */
+	void unpack() {
+		for(Block block : _blocks) {
+			for(Shape shape : block._shapes) {
+				// A shape may since have been packed by another engine.
+				if(shape._block == block) {
+					shape.unpack();
+				}
+			}
+		}
+		_blocks.clear();
+		_packed = false;
+	}
+
+	/**
+	 * Returns true if a composition is currently packed into this engine.
+	 */
+	boolean isPacked() {
+		return _packed;
+	}
+
+	/**
+	 * Moves every packed shape by a time step of step/Shape.ONE ticks. The
+	 * root block is bounded by width and height; every other block by the
+	 * size of its CarrierShape.
+	 */
+	void clock(int width, int height, int step) {
+		for(Block block : _blocks) {
+			if(block._carrier != null) {
+				block.advance(0, block.size(), block._carrier.width(), block._carrier.height(), step);
+			} else {
+				block.advance(0, block.size(), width, height, step);
+			}
+			// Blocks are breadth first, so the block's CarrierShape has
+			// already been updated.
+			block.updateAbsolute();
+		}
+	}
+}
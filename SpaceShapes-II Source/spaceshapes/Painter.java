@@ -3,6 +3,7 @@ package spaceshapes;
 //import java.awt.Color;
 
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * Interface to represent a type that offers primitive drawing methods.
@@ -29,6 +30,92 @@ public interface Painter {
 	 */
 	public void drawLine(int x1, int y1, int x2, int y2);
 
+	/**
+	 * Draws a closed polygon. Arrays xPoints and yPoints hold the coordinates
+	 * of its nPoints vertices; the last vertex is joined to the first. The
+	 * arrays may be reused by the caller once this method returns. This
+	 * implementation draws each edge with drawLine().
+	 */
+	public default void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		for(int i = 0; i < nPoints; i++) {
+			int next = (i + 1) % nPoints;
+			drawLine(xPoints[i], yPoints[i], xPoints[next], yPoints[next]);
+		}
+	}
+
+	/**
+	 * Draws a solid polygon of the painters color. Parameters are as for
+	 * drawPolygon. This implementation fills each row of pixels whose centre
+	 * lies inside the polygon, by the even-odd rule, with fillRect().
+	 */
+	public default void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		if(nPoints < 3) {
+			return;
+		}
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for(int i = 0; i < nPoints; i++) {
+			minY = Math.min(minY, yPoints[i]);
+			maxY = Math.max(maxY, yPoints[i]);
+		}
+
+		double[] crossings = new double[nPoints];
+		for(int y = minY; y < maxY; y++) {
+			double centre = y + 0.5;
+			int count = 0;
+			for(int i = 0; i < nPoints; i++) {
+				int next = (i + 1) % nPoints;
+				int y1 = yPoints[i];
+				int y2 = yPoints[next];
+				if((y1 <= centre) != (y2 <= centre)) {
+					crossings[count++] = xPoints[i]
+							+ (centre - y1) * (xPoints[next] - xPoints[i]) / (y2 - y1);
+				}
+			}
+			Arrays.sort(crossings, 0, count);
+			for(int i = 0; i + 1 < count; i += 2) {
+				int left = (int)Math.ceil(crossings[i] - 0.5);
+				int right = (int)Math.ceil(crossings[i + 1] - 0.5);
+				if(right > left) {
+					fillRect(left, y, right - left, 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws count rectangles in one call. Array coords holds x, y, width
+	 * and height of each rectangle in turn, starting at index offset. This
+	 * implementation calls drawRect() for each rectangle.
+	 */
+	public default void drawRects(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawRect(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
+	/**
+	 * Draws count ovals in one call. Array coords holds x, y, width and
+	 * height of each oval in turn, starting at index offset. This
+	 * implementation calls drawOval() for each oval.
+	 */
+	public default void drawOvals(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawOval(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
+	/**
+	 * Draws count lines in one call. Array coords holds x1, y1, x2 and y2 of
+	 * each line in turn, starting at index offset. This implementation calls
+	 * drawLine() for each line.
+	 */
+	public default void drawLines(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawLine(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
 	/**
 	 * Draws a solid rectangle of the painters color
 	 */
@@ -55,4 +142,23 @@ public interface Painter {
 	public void drawCentredText(int x, int y, int width, int height, String text);
 
 	public void drawImage(Image img,int x,int y,int width,int height);
+
+	/**
+	 * Draws a shape, less its text, from a cached image of it, if this painter
+	 * has a SpriteCache that can hold one. Returns false, having drawn nothing,
+	 * otherwise, in which case the caller paints the shape itself. This
+	 * implementation has no SpriteCache, so returns false.
+	 */
+	public default boolean drawSprite(Shape shape) {
+		return false;
+	}
+
+	/**
+	 * Returns the LevelOfDetail that shapes apply when painted by this
+	 * painter, or null if shapes are always painted in full. This
+	 * implementation returns null.
+	 */
+	public default LevelOfDetail levelOfDetail() {
+		return null;
+	}
 }
@@ -0,0 +1,130 @@
+package spaceshapes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves a CarrierShape composition using fork/join parallelism; used by a
+ * ShapeModel in ClockMode.Parallel. The subtree below each CarrierShape is
+ * moved by its own task, and a CarrierShape's list of children is split into
+ * ranges until a range holds no more children than the sequential
+ * threshold.
+ *
+ * A Shape's movement only depends on its own state and on the size of its
+ * parent, which never changes during a clock() call. Moving independent
+ * subtrees concurrently therefore gives exactly the same results as
+ * CarrierShape.move().
+ */
+class ParallelShapeMover {
+
+	// Default for the number of children moved sequentially by one task.
+	static final int DEFAULT_SEQUENTIAL_THRESHOLD = 512;
+
+	// Pool shared by all ParallelShapeMovers, created on first use.
+	private static ForkJoinPool _sharedPool;
+
+	private ForkJoinPool _pool;
+
+	private int _sequentialThreshold;
+
+	/**
+	 * Creates a ParallelShapeMover that runs its tasks in a pool shared
+	 * between all ShapeModels.
+	 */
+	ParallelShapeMover() {
+		_pool = sharedPool();
+		_sequentialThreshold = DEFAULT_SEQUENTIAL_THRESHOLD;
+	}
+
+	/**
+	 * Sets the largest number of children that a single task moves without
+	 * splitting them into further tasks.
+	 */
+	void setSequentialThreshold(int threshold) {
+		if(threshold < 1) {
+			throw new IllegalArgumentException();
+		}
+		_sequentialThreshold = threshold;
+	}
+
+	/**
+	 * Returns the largest number of children moved by a single task.
+	 */
+	int sequentialThreshold() {
+		return _sequentialThreshold;
+	}
+
+	/**
+	 * Moves root within the specified bounds and, in parallel, the whole
+	 * composition below it. Returns once every Shape has moved.
+	 */
+	void move(CarrierShape root, int width, int height, int step) {
+		root.moveShape(width, height, step);
+		_pool.invoke(new MoveChildrenTask(root, 0, root.shapeCount(), step));
+	}
+
+	private static synchronized ForkJoinPool sharedPool() {
+		if(_sharedPool == null) {
+			_sharedPool = new ForkJoinPool();
+		}
+		return _sharedPool;
+	}
+
+	/*
+	 * Task that moves a range of a CarrierShape's children, including the
+	 * subtrees of any children that are CarrierShapes.
+	 */
+	@SuppressWarnings("serial")
+	private class MoveChildrenTask extends RecursiveAction {
+		private CarrierShape _carrier;
+		private int _from;
+		private int _to;
+		private int _step;
+
+		MoveChildrenTask(CarrierShape carrier, int from, int to, int step) {
+			_carrier = carrier;
+			_from = from;
+			_to = to;
+			_step = step;
+		}
+
+		@Override
+		protected void compute() {
+			if(_to - _from > _sequentialThreshold) {
+				// Split the range in two and move both halves concurrently.
+				int middle = (_from + _to) >>> 1;
+				invokeAll(new MoveChildrenTask(_carrier, _from, middle, _step),
+						new MoveChildrenTask(_carrier, middle, _to, _step));
+				return;
+			}
+
+			int width = _carrier.width();
+			int height = _carrier.height();
+			List<MoveChildrenTask> subtrees = null;
+
+			for(int i = _from; i < _to; i++) {
+				Shape child = _carrier.shapeAt(i);
+
+				if(child instanceof CarrierShape && ((CarrierShape)child).shapeCount() > 0) {
+					// Move the CarrierShape itself now and its subtree as a
+					// separate task.
+					CarrierShape carrier = (CarrierShape)child;
+					carrier.moveShape(width, height, _step);
+
+					if(subtrees == null) {
+						subtrees = new ArrayList<MoveChildrenTask>();
+					}
+					subtrees.add(new MoveChildrenTask(carrier, 0, carrier.shapeCount(), _step));
+				} else {
+					child.advance(width, height, _step);
+				}
+			}
+
+			if(subtrees != null) {
+				invokeAll(subtrees);
+			}
+		}
+	}
+}
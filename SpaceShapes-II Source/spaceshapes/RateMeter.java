@@ -0,0 +1,69 @@
+package spaceshapes;
+
+/**
+ * Measures how often an event happens, e.g. simulation steps or painted
+ * frames. Events are reported by calling mark(); rate() returns the number
+ * of events per second measured over the most recent complete window.
+ * RateMeter objects may be shared between threads.
+ */
+public class RateMeter {
+	// Default length of the measurement window in nanoseconds (one second).
+	private static final long DEFAULT_WINDOW = 1000000000L;
+
+	private final long _window;
+
+	private long _windowStart;
+
+	private int _count;
+
+	private volatile double _rate;
+
+	private volatile long _total;
+
+	/**
+	 * Creates a RateMeter that measures over one second windows.
+	 */
+	public RateMeter() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Creates a RateMeter that measures over windows of the specified length
+	 * in nanoseconds.
+	 */
+	public RateMeter(long windowNanos) {
+		_window = windowNanos;
+		_windowStart = System.nanoTime();
+	}
+
+	/**
+	 * Records that one event has happened.
+	 */
+	public synchronized void mark() {
+		long now = System.nanoTime();
+		_count++;
+		_total++;
+
+		long elapsed = now - _windowStart;
+		if(elapsed >= _window) {
+			_rate = _count * 1e9 / elapsed;
+			_count = 0;
+			_windowStart = now;
+		}
+	}
+
+	/**
+	 * Returns the number of events per second during the last complete
+	 * window, or 0 if no window has completed yet.
+	 */
+	public double rate() {
+		return _rate;
+	}
+
+	/**
+	 * Returns the number of events recorded since this RateMeter was created.
+	 */
+	public long total() {
+		return _total;
+	}
+}
@@ -53,6 +53,6 @@ public class RectangleShape extends Shape {
 	 */
 	@Override
 	public void paint(Painter painter) {
-		painter.drawRect(_x,_y,_width,_height);
+		painter.drawRect(x(),y(),width(),height());
 	}
 }
@@ -0,0 +1,508 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Painter that queues the drawing commands of a frame instead of executing
+ * them, so that they can be reordered to minimise the number of colour
+ * changes made on the Painter that finally draws them. Shapes paint into a
+ * RenderQueue as into any Painter; flush() then issues the queued commands
+ * to the target Painter.
+ *
+ * Commands are recorded with translations already applied, so the nesting
+ * of translate() calls made by CarrierShapes does not constrain the order.
+ * Commands are grouped by (colour, primitive type), but a command is never
+ * moved before an earlier command whose bounding box it overlaps and whose
+ * colour or type differs: wherever painting order is observable, the result
+ * is the same as painting the commands in the order they were queued.
+ *
+ * Setting and querying the colour of a RenderQueue costs nothing; only the
+ * colour of each queued command matters.
+ */
+public class RenderQueue implements Painter {
+
+	// Initial colour, matching that of a GraphicsPainter.
+	private static final Color DEFAULT_COLOUR = new Color(212, 212, 212);
+
+	// Width of the cells of the grid used to find overlapping commands.
+	private static final int CELL_SIZE = 64;
+
+	// Largest number of grid cells along each axis.
+	private static final int MAX_CELLS = 128;
+
+	// === Bit layout of the sort keys: level, then group, then position.
+	private static final int INDEX_BITS = 24;
+
+	private static final int GROUP_BITS = 20;
+	// ===
+
+	// Number of primitive types distinguished when grouping.
+	private static final int TYPES = 8;
+
+	// Queued commands, in world coordinates.
+	private final FrameSnapshot _commands = new FrameSnapshot();
+
+	// Metrics used to work out the extent of text, null if unknown.
+	private FontMetrics _fontMetrics;
+
+	private Color _colour = DEFAULT_COLOUR;
+
+	// Cache of shape images, null if shapes are always painted.
+	private SpriteCache _sprites;
+
+	// Rules reducing the detail of shapes, null if they are painted in full.
+	private LevelOfDetail _levelOfDetail;
+
+	// Accumulated translation.
+	private int _translateX;
+	private int _translateY;
+
+	// === Scratch arrays reused by flush().
+	private long[] _keys = new long[64];
+
+	private int[] _bounds = new int[64 * 4];
+
+	private int[] _cellBest = new int[0];
+
+	private int[] _cellBestGroup = new int[0];
+
+	private int[] _cellSecond = new int[0];
+
+	private int[] _batch = new int[64 * 4];
+	// ===
+
+	// Number of colour changes made by the last flush().
+	private int _colourChanges;
+
+	/**
+	 * Creates an empty RenderQueue. Without FontMetrics the extent of text is
+	 * unknown, so text commands are kept in place relative to all others.
+	 */
+	public RenderQueue() {
+		this(null);
+	}
+
+	/**
+	 * Creates an empty RenderQueue that uses the specified FontMetrics to
+	 * work out the extent of text as GraphicsPainter draws it.
+	 */
+	public RenderQueue(FontMetrics fontMetrics) {
+		_fontMetrics = fontMetrics;
+	}
+
+	/**
+	 * Sets the FontMetrics used to work out the extent of text, or null if
+	 * unknown.
+	 */
+	public void setFontMetrics(FontMetrics fontMetrics) {
+		_fontMetrics = fontMetrics;
+	}
+
+	/**
+	 * Sets the SpriteCache that shapes are drawn from, or null to always
+	 * paint them. Sprites are queued as images.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
+	}
+
+	/**
+	 * Returns the number of queued commands.
+	 */
+	public int size() {
+		return _commands.size();
+	}
+
+	/**
+	 * Returns the number of colour changes the last flush() call made on its
+	 * target.
+	 */
+	public int colourChanges() {
+		return _colourChanges;
+	}
+
+	/**
+	 * Issues the queued commands to the target Painter, grouped by colour
+	 * and primitive type as far as overlaps allow, then empties this
+	 * RenderQueue. Consecutive rectangles, ovals or lines are issued as
+	 * batches. The target is left set to the colour last set on this
+	 * RenderQueue.
+	 */
+	public void flush(Painter target) {
+		int size = _commands.size();
+		sort(size);
+
+		int[] coords = _commands.coords();
+		int colour = -1;
+		_colourChanges = 0;
+
+		for(int k = 0; k < size; k++) {
+			int i = index(_keys[k]);
+			if(_commands.colourIndex(i) != colour) {
+				colour = _commands.colourIndex(i);
+				target.setColor(_commands.colour(i));
+				_colourChanges++;
+			}
+
+			int type = _commands.type(i);
+			if(type == FrameSnapshot.RECTANGLE || type == FrameSnapshot.OVAL || type == FrameSnapshot.LINE) {
+				// Gather the run of commands of the same type and colour.
+				int count = 0;
+				int end = k;
+				while(end < size) {
+					int j = index(_keys[end]);
+					if(_commands.type(j) != type || _commands.colourIndex(j) != colour) {
+						break;
+					}
+					if(count * 4 == _batch.length) {
+						_batch = Arrays.copyOf(_batch, _batch.length * 2);
+					}
+					System.arraycopy(coords, j * 4, _batch, count * 4, 4);
+					count++;
+					end++;
+				}
+
+				if(type == FrameSnapshot.RECTANGLE) {
+					target.drawRects(_batch, 0, count);
+				} else if(type == FrameSnapshot.OVAL) {
+					target.drawOvals(_batch, 0, count);
+				} else {
+					target.drawLines(_batch, 0, count);
+				}
+				k = end - 1;
+			} else {
+				_commands.paintPrimitive(i, target);
+			}
+		}
+
+		if(size > 0 && !_commands.colour(index(_keys[size - 1])).equals(_colour)) {
+			target.setColor(_colour);
+		}
+		reset();
+	}
+
+	/**
+	 * Discards the queued commands and resets the translation.
+	 */
+	public void reset() {
+		_commands.clear(0);
+		_translateX = 0;
+		_translateY = 0;
+	}
+
+	/**
+	 * Queues a rectangle.
+	 */
+	public void drawRect(int x, int y, int width, int height) {
+		_commands.add(FrameSnapshot.RECTANGLE, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Queues an oval.
+	 */
+	public void drawOval(int x, int y, int width, int height) {
+		_commands.add(FrameSnapshot.OVAL, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Queues a line.
+	 */
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		_commands.add(FrameSnapshot.LINE, x1 + _translateX, y1 + _translateY,
+				x2 + _translateX, y2 + _translateY, _colour, null, null);
+	}
+
+	/**
+	 * Queues a polygon.
+	 */
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_commands.addPolygon(FrameSnapshot.POLYGON, xPoints, yPoints, nPoints, _translateX, _translateY, _colour);
+	}
+
+	/**
+	 * Queues a solid polygon.
+	 */
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_commands.addPolygon(FrameSnapshot.SOLID_POLYGON, xPoints, yPoints, nPoints, _translateX, _translateY, _colour);
+	}
+
+	/**
+	 * Queues each rectangle of a batch.
+	 */
+	public void drawRects(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawRect(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
+	/**
+	 * Queues each oval of a batch.
+	 */
+	public void drawOvals(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawOval(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
+	/**
+	 * Queues each line of a batch.
+	 */
+	public void drawLines(int[] coords, int offset, int count) {
+		for(int i = offset; i < offset + count * 4; i += 4) {
+			drawLine(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+		}
+	}
+
+	/**
+	 * Queues a solid rectangle of the painters color
+	 */
+	public void fillRect(int x, int y, int width, int height) {
+		_commands.add(FrameSnapshot.SOLID_RECTANGLE, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Gives the current color of the painter
+	 */
+	public Color getColor() {
+		return _colour;
+	}
+
+	/**
+	 * Sets a new color for the painter
+	 */
+	public void setColor(Color color) {
+		_colour = color;
+	}
+
+	/**
+	 * Translates the origin of the canvas
+	 */
+	public void translate(int x, int y) {
+		_translateX += x;
+		_translateY += y;
+	}
+
+	/**
+	 * Queues text to be drawn in the middle of the shape
+	 */
+	public void drawCentredText(int x, int y, int width, int height, String text) {
+		_commands.add(FrameSnapshot.TEXT, x + _translateX, y + _translateY, width, height, _colour, text, null);
+	}
+
+	/**
+	 * Queues an image.
+	 */
+	public void drawImage(Image img, int x, int y, int width, int height) {
+		_commands.add(FrameSnapshot.IMAGE, x + _translateX, y + _translateY, width, height, _colour, null, img);
+	}
+
+	/**
+	 * Queues the image of a shape from the SpriteCache, if one is set.
+	 */
+	public boolean drawSprite(Shape shape) {
+		return _sprites != null && _sprites.draw(shape, this);
+	}
+
+	/**
+	 * Sets the LevelOfDetail that shapes are queued with, or null to
+	 * paint them in full.
+	 */
+	public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+		_levelOfDetail = levelOfDetail;
+	}
+
+	/**
+	 * Returns the LevelOfDetail set, or null.
+	 */
+	public LevelOfDetail levelOfDetail() {
+		return _levelOfDetail;
+	}
+
+	/*
+	 * Fills _keys with the sort keys of the queued commands, in the order
+	 * in which they are to be issued.
+	 *
+	 * Each command is given a level: the lowest level at which it follows
+	 * every earlier overlapping command, i.e. at least the level of each
+	 * earlier overlapping command in the same group (colour and type) and
+	 * above that of each in another group. Sorting by (level, group,
+	 * position) then keeps every overlapping pair in order while bringing
+	 * commands of the same group together. Overlaps are found per grid cell,
+	 * treating commands that share a cell as overlapping; this can only add
+	 * constraints, never lose one.
+	 */
+	private void sort(int size) {
+		if(_keys.length < size) {
+			_keys = new long[Math.max(size, _keys.length * 2)];
+			_bounds = new int[_keys.length * 4];
+		}
+
+		long groups = (long)_commands.paletteSize() * TYPES;
+		if(size >= (1 << INDEX_BITS) || groups >= (1 << GROUP_BITS)) {
+			// Too large to encode; keep the queued order.
+			keepQueuedOrder(size);
+			return;
+		}
+
+		// Work out each command's bounds and the area they span.
+		int left = Integer.MAX_VALUE;
+		int top = Integer.MAX_VALUE;
+		int right = Integer.MIN_VALUE;
+		int bottom = Integer.MIN_VALUE;
+		for(int i = 0; i < size; i++) {
+			bounds(i);
+			int b = i * 4;
+			left = Math.min(left, _bounds[b]);
+			top = Math.min(top, _bounds[b + 1]);
+			right = Math.max(right, _bounds[b] + _bounds[b + 2]);
+			bottom = Math.max(bottom, _bounds[b + 1] + _bounds[b + 3]);
+		}
+
+		int cellSize = CELL_SIZE;
+		while((long)(right - left) / cellSize >= MAX_CELLS || (long)(bottom - top) / cellSize >= MAX_CELLS) {
+			cellSize *= 2;
+		}
+		int columns = size == 0 ? 1 : (right - left) / cellSize + 1;
+		int rows = size == 0 ? 1 : (bottom - top) / cellSize + 1;
+		prepareCells(columns * rows);
+
+		// Level below which no command may be placed, raised by commands
+		// whose extent is unknown.
+		int floor = 0;
+		int maxLevel = 0;
+
+		for(int i = 0; i < size; i++) {
+			int group = _commands.colourIndex(i) * TYPES + _commands.type(i);
+			int level = floor;
+			int b = i * 4;
+			boolean unbounded = _bounds[b + 2] < 0;
+
+			if(unbounded) {
+				// Follows everything queued so far and precedes everything
+				// queued later.
+				level = maxLevel + 1;
+				floor = level + 1;
+			} else {
+				int c0 = (_bounds[b] - left) / cellSize;
+				int c1 = (_bounds[b] + _bounds[b + 2] - left) / cellSize;
+				int r0 = (_bounds[b + 1] - top) / cellSize;
+				int r1 = (_bounds[b + 1] + _bounds[b + 3] - top) / cellSize;
+
+				for(int r = r0; r <= r1; r++) {
+					for(int c = c0; c <= c1; c++) {
+						int cell = r * columns + c;
+						if(_cellBestGroup[cell] == group) {
+							level = Math.max(level, Math.max(_cellBest[cell], _cellSecond[cell] + 1));
+						} else {
+							level = Math.max(level, _cellBest[cell] + 1);
+						}
+					}
+				}
+				for(int r = r0; r <= r1; r++) {
+					for(int c = c0; c <= c1; c++) {
+						record(r * columns + c, group, level);
+					}
+				}
+			}
+			maxLevel = Math.max(maxLevel, level);
+			_keys[i] = ((long)level << (GROUP_BITS + INDEX_BITS)) | ((long)group << INDEX_BITS) | i;
+		}
+		if(maxLevel >= 1 << (63 - GROUP_BITS - INDEX_BITS)) {
+			// Too many levels to encode without overflowing the keys; keep
+			// the queued order.
+			keepQueuedOrder(size);
+			return;
+		}
+		Arrays.sort(_keys, 0, size);
+	}
+
+	/*
+	 * Fills _keys so that the queued commands are issued in the order in
+	 * which they were queued.
+	 */
+	private void keepQueuedOrder(int size) {
+		for(int i = 0; i < size; i++) {
+			_keys[i] = i;
+		}
+	}
+
+	/*
+	 * Records in a grid cell that a command of the specified group has been
+	 * placed at the specified level. Each cell tracks the highest level in
+	 * it, the group at that level and the highest level of any other group.
+	 */
+	private void record(int cell, int group, int level) {
+		if(_cellBestGroup[cell] == group) {
+			_cellBest[cell] = Math.max(_cellBest[cell], level);
+		} else if(level > _cellBest[cell]) {
+			_cellSecond[cell] = _cellBest[cell];
+			_cellBest[cell] = level;
+			_cellBestGroup[cell] = group;
+		} else {
+			_cellSecond[cell] = Math.max(_cellSecond[cell], level);
+		}
+	}
+
+	/*
+	 * Empties the grid cells, of which there are to be cells.
+	 */
+	private void prepareCells(int cells) {
+		if(_cellBest.length < cells) {
+			_cellBest = new int[cells];
+			_cellBestGroup = new int[cells];
+			_cellSecond = new int[cells];
+		}
+		// An empty cell constrains nothing: a level of -1 in no group.
+		Arrays.fill(_cellBest, 0, cells, -1);
+		Arrays.fill(_cellBestGroup, 0, cells, -1);
+		Arrays.fill(_cellSecond, 0, cells, -1);
+	}
+
+	/*
+	 * Stores into _bounds the extent of the pixels the command at the
+	 * specified index may touch, with a negative width if unknown.
+	 */
+	private void bounds(int index) {
+		int x = _commands.x(index);
+		int y = _commands.y(index);
+		int width = _commands.width(index);
+		int height = _commands.height(index);
+
+		switch(_commands.type(index)) {
+		case FrameSnapshot.LINE:
+			x = Math.min(_commands.x(index), _commands.width(index));
+			y = Math.min(_commands.y(index), _commands.height(index));
+			width = Math.abs(_commands.width(index) - _commands.x(index));
+			height = Math.abs(_commands.height(index) - _commands.y(index));
+			break;
+		case FrameSnapshot.TEXT:
+			if(_fontMetrics == null) {
+				width = -1;
+			} else {
+				Rectangle text = GraphicsPainter.centredTextBounds(_fontMetrics, x, y, width, height, _commands.text(index));
+				x = text.x;
+				y = text.y;
+				width = text.width;
+				height = text.height;
+			}
+			break;
+		}
+
+		int b = index * 4;
+		_bounds[b] = x;
+		_bounds[b + 1] = y;
+		_bounds[b + 2] = width;
+		_bounds[b + 3] = height;
+	}
+
+	/*
+	 * Returns the command index encoded in a sort key.
+	 */
+	private static int index(long key) {
+		return (int)(key & ((1 << INDEX_BITS) - 1));
+	}
+}
@@ -0,0 +1,453 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves the whole composition of a ShapeModel to a file and loads it back.
+ * The file is laid out in columns rather than shape by shape, so that both
+ * save() and load() memory-map it and move each column in bulk:
+ * <ul>
+ * <li>a header holding the format version, the model's bounds, clock and
+ * settings, and the size of each section;</li>
+ * <li>a type table, naming the class of each type of shape;</li>
+ * <li>a string pool, holding each distinct class name and text once;</li>
+ * <li>a column for each item of shape state, with the shapes in depth-first
+ * order from the root, among them the index of each shape's parent;</li>
+ * <li>an image table, holding the pixels of each distinct image shown by an
+ * ImageRectangleShape, which refers to it by index.</li>
+ * </ul>
+ * All integers are stored big-endian, and all int sections precede the byte
+ * sections so that they are aligned.
+ *
+ * A shape whose class has no public constructor taking (x, y, deltaX,
+ * deltaY, width, height, text) and that is not an ImageRectangleShape is
+ * saved as a RectangleShape of the same size and motion.
+ */
+public class SceneSnapshot {
+
+	// === File format.
+	static final int MAGIC = 0x53535331;
+
+	static final int VERSION = 1;
+
+	// Number of ints in the header.
+	private static final int HEADER_INTS = 16;
+
+	// Number of int columns describing each shape.
+	private static final int INT_COLUMNS = 12;
+
+	private static final int PARENT = 0;
+	private static final int X = 1;
+	private static final int Y = 2;
+	private static final int DELTA_X = 3;
+	private static final int DELTA_Y = 4;
+	private static final int WIDTH = 5;
+	private static final int HEIGHT = 6;
+	private static final int SUB_X = 7;
+	private static final int SUB_Y = 8;
+	private static final int COLOUR = 9;
+	private static final int TEXT = 10;
+	private static final int IMAGE = 11;
+	// ===
+
+	private SceneSnapshot() {
+	}
+
+	/**
+	 * Saves the composition of a ShapeModel, with its clock and settings,
+	 * to a file, replacing any existing contents. The model must not be
+	 * changed or clocked while it is saved.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void save(ShapeModel model, File file) throws IOException {
+		// Flatten the tree depth first, so that parents precede children.
+		List<Shape> shapes = new ArrayList<Shape>();
+		List<Integer> parents = new ArrayList<Integer>();
+		flatten(model.root(), -1, shapes, parents);
+		int count = shapes.size();
+
+		Pool<String> strings = new Pool<String>(new HashMap<String, Integer>());
+		Pool<Class<?>> types = new Pool<Class<?>>(new HashMap<Class<?>, Integer>());
+		Pool<Image> images = new Pool<Image>(new IdentityHashMap<Image, Integer>());
+
+		Map<Class<?>, Class<?>> savedClasses = new HashMap<Class<?>, Class<?>>();
+
+		int[][] columns = new int[INT_COLUMNS][count];
+		byte[] typeColumn = new byte[count];
+		byte[] borderColumn = new byte[count];
+		for(int i = 0; i < count; i++) {
+			Shape shape = shapes.get(i);
+			Class<?> savedClass = savedClasses.get(shape.getClass());
+			if(savedClass == null) {
+				savedClass = savedClass(shape.getClass());
+				savedClasses.put(shape.getClass(), savedClass);
+			}
+			int type = types.index(savedClass);
+			if(type > Byte.MAX_VALUE) {
+				throw new IOException("Too many shape classes");
+			}
+			typeColumn[i] = (byte)type;
+			borderColumn[i] = (byte)shape.lastBorderHit();
+			columns[PARENT][i] = parents.get(i);
+			columns[X][i] = shape.x();
+			columns[Y][i] = shape.y();
+			columns[DELTA_X][i] = shape.deltaX();
+			columns[DELTA_Y][i] = shape.deltaY();
+			columns[WIDTH][i] = shape.width();
+			columns[HEIGHT][i] = shape.height();
+			columns[SUB_X][i] = shape.subX();
+			columns[SUB_Y][i] = shape.subY();
+			columns[COLOUR][i] = shape instanceof DynamicShape ? ((DynamicShape)shape).color().getRGB() : 0;
+			columns[TEXT][i] = shape.getText() == null ? -1 : strings.index(shape.getText());
+			columns[IMAGE][i] = shape instanceof ImageRectangleShape
+					? images.index(((ImageRectangleShape)shape).image()) : -1;
+		}
+
+		// Type names go into the string pool too.
+		int[] typeNames = new int[types.size()];
+		for(int i = 0; i < typeNames.length; i++) {
+			typeNames[i] = strings.index(types.get(i).getName());
+		}
+
+		byte[][] stringBytes = new byte[strings.size()][];
+		int[] stringOffsets = new int[strings.size() + 1];
+		for(int i = 0; i < stringBytes.length; i++) {
+			stringBytes[i] = strings.get(i).getBytes(ShapeJournal.UTF_8);
+			stringOffsets[i + 1] = stringOffsets[i] + stringBytes[i].length;
+		}
+
+		int[][] pixels = new int[images.size()][];
+		long imageInts = 0;
+		for(int i = 0; i < pixels.length; i++) {
+			pixels[i] = pixels(images.get(i));
+			imageInts += pixels[i].length;
+		}
+
+		long size = 4L * (HEADER_INTS + typeNames.length + stringOffsets.length
+				+ (long)INT_COLUMNS * count + imageInts)
+				+ 2L * count + stringOffsets[stringBytes.length];
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("Scene too large to snapshot");
+		}
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.put(MAGIC);
+			ints.put(VERSION);
+			ints.put(model.root().width());
+			ints.put(model.root().height());
+			ints.put((int)(model.ticks() >>> 32));
+			ints.put((int)model.ticks());
+			ints.put((int)(model.fixedTime() >>> 32));
+			ints.put((int)model.fixedTime());
+			ints.put(model.siblingCollisions() ? 1 : 0);
+			ints.put(model.cellSize());
+			ints.put(count);
+			ints.put(typeNames.length);
+			ints.put(stringBytes.length);
+			ints.put(stringOffsets[stringBytes.length]);
+			ints.put(pixels.length);
+			ints.put((int)imageInts);
+
+			ints.put(typeNames);
+			ints.put(stringOffsets);
+			for(int[] column : columns) {
+				ints.put(column);
+			}
+			for(int[] image : pixels) {
+				ints.put(image);
+			}
+
+			buffer.position(4 * ints.position());
+			buffer.put(typeColumn);
+			buffer.put(borderColumn);
+			for(byte[] bytes : stringBytes) {
+				buffer.put(bytes);
+			}
+			buffer.force();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Loads a ShapeModel saved by save(). The model is new, with the saved
+	 * bounds, clock and settings, and has no listeners.
+	 * @throws IOException if the file cannot be read or is not a snapshot.
+	 */
+	public static ShapeModel load(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size < 4 * HEADER_INTS || size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is not a scene snapshot");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			IntBuffer ints = buffer.asIntBuffer();
+			if(ints.get() != MAGIC) {
+				throw new IOException(file + " is not a scene snapshot");
+			}
+			int version = ints.get();
+			if(version != VERSION) {
+				throw new IOException("Unsupported scene snapshot version " + version);
+			}
+			Dimension bounds = new Dimension(ints.get(), ints.get());
+			long ticks = (long)ints.get() << 32 | ints.get() & 0xFFFFFFFFL;
+			long time = (long)ints.get() << 32 | ints.get() & 0xFFFFFFFFL;
+			boolean collisions = ints.get() != 0;
+			int cellSize = ints.get();
+			int count = ints.get();
+			int typeCount = ints.get();
+			int stringCount = ints.get();
+			int stringLength = ints.get();
+			int imageCount = ints.get();
+			int imageInts = ints.get();
+
+			long expected = 4L * (HEADER_INTS + typeCount + stringCount + 1
+					+ (long)INT_COLUMNS * count + imageInts) + 2L * count + stringLength;
+			if(count < 1 || typeCount < 1 || stringCount < 0 || imageCount < 0 || expected != size) {
+				throw new IOException(file + " is damaged");
+			}
+
+			int[] typeNames = new int[typeCount];
+			ints.get(typeNames);
+			int[] stringOffsets = new int[stringCount + 1];
+			ints.get(stringOffsets);
+			int[][] columns = new int[INT_COLUMNS][count];
+			for(int[] column : columns) {
+				ints.get(column);
+			}
+			Image[] images = new Image[imageCount];
+			for(int i = 0; i < imageCount; i++) {
+				images[i] = image(ints);
+			}
+
+			buffer.position(4 * ints.position());
+			byte[] typeColumn = new byte[count];
+			buffer.get(typeColumn);
+			byte[] borderColumn = new byte[count];
+			buffer.get(borderColumn);
+			byte[] stringBytes = new byte[stringLength];
+			buffer.get(stringBytes);
+			String[] strings = new String[stringCount];
+			for(int i = 0; i < stringCount; i++) {
+				strings[i] = new String(stringBytes, stringOffsets[i],
+						stringOffsets[i + 1] - stringOffsets[i], ShapeJournal.UTF_8);
+			}
+
+			ShapeFactory factory = new ShapeFactory();
+			List<Class<? extends Shape>> types = new ArrayList<Class<? extends Shape>>();
+			for(int name : typeNames) {
+				types.add(shapeClass(factory, strings[name]));
+			}
+
+			ShapeModel model = new ShapeModel(bounds);
+			model.restoreClock(ticks, time);
+			model.setSiblingCollisions(collisions);
+			model.setCellSize(cellSize);
+			return build(model, columns, typeColumn, borderColumn, factory, types, strings, images);
+		} catch(IndexOutOfBoundsException e) {
+			throw new IOException(file + " is damaged", e);
+		} catch(BufferUnderflowException e) {
+			throw new IOException(file + " is damaged", e);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/*
+	 * Constructs every shape, in depth-first order, and attaches it to its
+	 * parent. The first shape is the root, whose position and size are fixed
+	 * by the model's bounds.
+	 */
+	private static ShapeModel build(ShapeModel model, int[][] columns, byte[] typeColumn,
+			byte[] borderColumn, ShapeFactory factory, List<Class<? extends Shape>> types,
+			String[] strings, Image[] images) throws IOException {
+		int count = typeColumn.length;
+		Shape[] shapes = new Shape[count];
+		CarrierShape root = model.root();
+		root.restoreMotion(columns[SUB_X][0], columns[SUB_Y][0], borderColumn[0]);
+		root.addText(text(strings, columns[TEXT][0]));
+		shapes[0] = root;
+
+		for(int i = 1; i < count; i++) {
+			int x = columns[X][i];
+			int y = columns[Y][i];
+			int deltaX = columns[DELTA_X][i];
+			int deltaY = columns[DELTA_Y][i];
+			int width = columns[WIDTH][i];
+			int height = columns[HEIGHT][i];
+			String text = text(strings, columns[TEXT][i]);
+
+			Class<? extends Shape> shapeClass = types.get(typeColumn[i]);
+			Shape shape;
+			if(shapeClass == ImageRectangleShape.class) {
+				// An ImageRectangleShape; its size is the image's.
+				shape = new ImageRectangleShape(deltaX, deltaY, images[columns[IMAGE][i]]);
+				shape._x = x;
+				shape._y = y;
+				shape.addText(text);
+			} else if(shapeClass == DynamicShape.class) {
+				shape = new DynamicShape(x, y, deltaX, deltaY, width, height, text,
+						new Color(columns[COLOUR][i], true));
+			} else {
+				try {
+					shape = factory.create(shapeClass, x, y, deltaX, deltaY, width, height, text);
+				} catch(RuntimeException e) {
+					throw new IOException("Cannot create a " + shapeClass.getName(), e);
+				}
+			}
+			shape.restoreMotion(columns[SUB_X][i], columns[SUB_Y][i], borderColumn[i]);
+
+			int parent = columns[PARENT][i];
+			if(parent < 0 || parent >= i || !(shapes[parent] instanceof CarrierShape)) {
+				throw new IOException("Shape " + i + " has no valid parent");
+			}
+			((CarrierShape)shapes[parent]).restore(shape);
+			shapes[i] = shape;
+		}
+		return model;
+	}
+
+	/*
+	 * Returns a saved class, registered with the factory unless it is
+	 * ImageRectangleShape, which is constructed from its image.
+	 */
+	private static Class<? extends Shape> shapeClass(ShapeFactory factory, String className)
+			throws IOException {
+		Class<? extends Shape> shapeClass;
+		try {
+			shapeClass = Class.forName(className).asSubclass(Shape.class);
+		} catch(ClassNotFoundException e) {
+			throw new IOException("Unknown shape class " + className, e);
+		} catch(ClassCastException e) {
+			throw new IOException(className + " is not a Shape", e);
+		}
+		if(shapeClass != ImageRectangleShape.class && !factory.register(shapeClass)) {
+			throw new IOException(className + " has no 7-argument constructor");
+		}
+		return shapeClass;
+	}
+
+	/*
+	 * Returns the class a shape of a class is saved as: its own if it can be
+	 * constructed again, otherwise RectangleShape.
+	 */
+	private static Class<?> savedClass(Class<?> shapeClass) {
+		if(shapeClass == ImageRectangleShape.class) {
+			return shapeClass;
+		}
+		try {
+			shapeClass.getConstructor(Integer.TYPE, Integer.TYPE, Integer.TYPE, Integer.TYPE,
+					Integer.TYPE, Integer.TYPE, String.class);
+			return shapeClass;
+		} catch(NoSuchMethodException e) {
+			return RectangleShape.class;
+		}
+	}
+
+	/*
+	 * Adds a shape and its descendants, depth first, to the shapes list,
+	 * with the index of each one's parent.
+	 */
+	private static void flatten(Shape shape, int parent, List<Shape> shapes, List<Integer> parents) {
+		int index = shapes.size();
+		shapes.add(shape);
+		parents.add(parent);
+		if(shape instanceof CarrierShape) {
+			CarrierShape carrier = (CarrierShape)shape;
+			for(int i = 0; i < carrier.shapeCount(); i++) {
+				flatten(carrier.shapeAt(i), index, shapes, parents);
+			}
+		}
+	}
+
+	private static String text(String[] strings, int index) {
+		return index < 0 ? null : strings[index];
+	}
+
+	/*
+	 * Returns an image's width, height and ARGB pixels, row by row.
+	 */
+	private static int[] pixels(Image image) {
+		int width = image.getWidth(null);
+		int height = image.getHeight(null);
+		BufferedImage argb;
+		if(image instanceof BufferedImage) {
+			argb = (BufferedImage)image;
+		} else {
+			argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = argb.createGraphics();
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+		}
+		int[] pixels = new int[2 + width * height];
+		pixels[0] = width;
+		pixels[1] = height;
+		argb.getRGB(0, 0, width, height, pixels, 2, width);
+		return pixels;
+	}
+
+	/*
+	 * Reads an image saved by pixels().
+	 */
+	private static Image image(IntBuffer ints) {
+		int width = ints.get();
+		int height = ints.get();
+		int[] pixels = new int[width * height];
+		ints.get(pixels);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	/*
+	 * Numbers distinct values in the order they are first met.
+	 */
+	private static class Pool<T> {
+		private final Map<T, Integer> _indices;
+
+		private final List<T> _values = new ArrayList<T>();
+
+		Pool(Map<T, Integer> indices) {
+			_indices = indices;
+		}
+
+		int index(T value) {
+			Integer index = _indices.get(value);
+			if(index == null) {
+				index = _values.size();
+				_indices.put(value, index);
+				_values.add(value);
+			}
+			return index;
+		}
+
+		T get(int index) {
+			return _values.get(index);
+		}
+
+		int size() {
+			return _values.size();
+		}
+	}
+}
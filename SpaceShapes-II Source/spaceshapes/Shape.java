@@ -1,6 +1,7 @@
 package spaceshapes;
 
-import java.util.ArrayList;
+import java.awt.Rectangle;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -35,7 +36,33 @@ public abstract class Shape {
 	protected static final int DEFAULT_WIDTH = 25;
 	// ===
 
-	// === Instance variables, accessible by subclasses.
+	// === Border indices used to record the last border hit.
+	static final int NO_BORDER = -1;
+
+	static final int LEFT_BORDER = 0;
+
+	static final int TOP_BORDER = 1;
+
+	static final int RIGHT_BORDER = 2;
+
+	static final int BOTTOM_BORDER = 3;
+	// ===
+
+	/**
+	 * Longest time step, in ticks, accepted by move(int, int, double).
+	 */
+	public static final double MAX_TIME_STEP = 1024;
+
+	// === 16.16 fixed-point arithmetic used for sub-pixel movement.
+	static final int FRACTION_BITS = 16;
+
+	// One whole pixel, or one whole tick.
+	static final int ONE = 1 << FRACTION_BITS;
+
+	static final int FRACTION_MASK = ONE - 1;
+	// ===
+	// === Instance variables, accessible by subclasses. Code that may run
+	// against a packed shape must read them through the accessors instead.
 	protected int _x;
 
 	protected int _y;
@@ -48,16 +75,59 @@ public abstract class Shape {
 
 	protected int _height;
 
-	// Boolean array used to find the last border hit by the shape
-	private boolean[] lastBorderHit = new boolean[4];
+	// Sub-pixel remainders of the position, in 1/ONE of a pixel, from 0 to
+	// ONE - 1. Only non-zero after moves with a fractional time step.
+	int _subX;
+
+	int _subY;
+
+	// Index of the last border hit by the shape, NO_BORDER if it has not hit
+	// one yet
+	private int lastBorderHit = NO_BORDER;
+
+	/*
+	 * Block of a PackedShapeEngine that holds this shape's state while the
+	 * shape is packed, and the shape's slot within it. While packed the
+	 * instance variables above are not maintained; the accessors read the
+	 * block instead.
+	 */
+	PackedShapeEngine.Block _block;
+
+	int _slot;
 
 	// Reference to the parent CarrierShape if one exists
 	private CarrierShape parent;
 
+	// Position of this shape within its parent's children, -1 if it has no
+	// parent. Maintained by CarrierShape.
+	int _index = -1;
+
+	// Position in the world, i.e. relative to the root of the composition,
+	// as of the last move or change of parent.
+	int _absoluteX;
+
+	int _absoluteY;
+
+	// Number of ancestors.
+	private int _depth;
+
+	// Unmodifiable path from the root to this shape, null until path() is
+	// called after a change of parent.
+	private List<Shape> _path;
+
 	// Text if text is associated with the shape
 	private String text;
+
+	// False if the shape has opted out of being drawn from a SpriteCache
+	private boolean _spriteCached = true;
 	// ===
 
+	/**
+	 * State returned by spriteState() by shapes whose appearance depends only
+	 * on their class, size and the painter's colour.
+	 */
+	protected static final Object PLAIN_SPRITE = new Object();
+
 	/**
 	 * Creates a Shape object with default values for instance variables.
 	 */
@@ -91,6 +161,8 @@ public abstract class Shape {
 		_deltaY = deltaY;
 		_width = width;
 		_height = height;
+		_absoluteX = x;
+		_absoluteY = y;
 	}
 
 	/**
@@ -103,6 +175,8 @@ public abstract class Shape {
 		_deltaY = deltaY;
 		_width = width;
 		_height = height;
+		_absoluteX = x;
+		_absoluteY = y;
 		this.text = text;
 	}
 
@@ -111,92 +185,262 @@ public abstract class Shape {
 	 * the list is the root CarrierShape of the containment hierarchy.
 	 * The last item within the list is the callee object. Any
 	 * intermediate items are CarrierShapes that connect the root CarrierShape
-	 * to the callee Shape.
+	 * to the callee Shape. The list is unmodifiable, and is built once each
+	 * time this Shape or one of its ancestors changes parent.
 	 */
 	public List<Shape> path()
 	{
-		// Output path list
-		List<Shape> path = new ArrayList<>();
-
-		// Add the callee to the list
-		path.add(this);
-
-		// Go up the full hierarchy and add the shapes to the
-		// path
-		Shape currentShape = parent;
-
-		while(currentShape!=null)
+		List<Shape> path = _path;
+		if(path == null)
 		{
-			path.add(currentShape);
-			currentShape = currentShape.parent;
+			// Fill the path from the callee up to the root
+			Shape[] shapes = new Shape[_depth + 1];
+			Shape currentShape = this;
+			for(int i = _depth; i >= 0; i--)
+			{
+				shapes[i] = currentShape;
+				currentShape = currentShape.parent;
+			}
+			path = Collections.unmodifiableList(Arrays.asList(shapes));
+			_path = path;
 		}
+		return path;
+	}
 
-		// Reverse the list to put it into the required order
-		Collections.reverse(path);
+	/**
+	 * Returns the number of CarrierShapes containing this Shape; 0 for a
+	 * Shape without a parent, such as the root of a ShapeModel.
+	 */
+	public int depth() {
+		return _depth;
+	}
 
-		return path;
+	/**
+	 * Returns this Shape's x position in the world, i.e. relative to the
+	 * root of its composition rather than to its parent. The position is
+	 * brought up to date whenever the Shape moves, within a ShapeModel
+	 * whenever the ShapeModel is clocked, and whenever the Shape or one of
+	 * its ancestors changes parent.
+	 */
+	public int absoluteX() {
+		return _absoluteX;
 	}
-	
+
+	/**
+	 * Returns this Shape's y position in the world. See absoluteX().
+	 */
+	public int absoluteY() {
+		return _absoluteY;
+	}
+
+	/**
+	 * Returns this Shape's bounding box in the world. See absoluteX().
+	 */
+	public Rectangle absoluteBounds() {
+		return new Rectangle(_absoluteX, _absoluteY, width(), height());
+	}
+
 	/**
 	 * Moves this Shape object within the specified bounds. On hitting a 
 	 * boundary the Shape instance bounces off and back into the two- 
-	 * dimensional world. 
+	 * dimensional world. A CarrierShape also moves its children within its
+	 * own bounds.
+	 *
+	 * This method is final: ShapeModel moves shapes directly, in every
+	 * ClockMode, so an override would not be called when the model is
+	 * clocked.
 	 * @param width - width of two-dimensional world.
 	 * @param height - height of two-dimensional world.
 	 */
-	public void move(int width, int height) {
-		int nextX = _x + _deltaX;
-		int nextY = _y + _deltaY;
+	public final void move(int width, int height) {
+		advance(width, height, ONE);
+	}
+
+	/**
+	 * Moves this Shape object within the specified bounds by the distance it
+	 * covers in dt ticks, i.e. by dt times its deltaX and deltaY, bouncing as
+	 * move(int, int) does. The position is kept to 1/65536 of a pixel; x()
+	 * and y() return its whole part. Time steps are rounded to 1/65536 of a
+	 * tick and the arithmetic is exact, so the same sequence of time steps
+	 * always produces the same movement, and a time step of 1 moves exactly
+	 * as move(int, int) does. Like move(int, int), this method is final.
+	 * @throws IllegalArgumentException if dt is negative, NaN or greater
+	 *         than MAX_TIME_STEP.
+	 */
+	public final void move(int width, int height, double dt) {
+		advance(width, height, timeStep(dt));
+	}
+
+	/*
+	 * Moves this Shape object by a time step of step/ONE ticks. Overridden
+	 * by CarrierShape to also move its children.
+	 */
+	void advance(int width, int height, int step) {
+		moveShape(width, height, step);
+	}
+
+	/*
+	 * Converts a time step in ticks into 16.16 fixed point.
+	 */
+	static int timeStep(double dt) {
+		if(!(dt >= 0 && dt <= MAX_TIME_STEP)) {
+			throw new IllegalArgumentException("Time step out of range: " + dt);
+		}
+		return (int)Math.round(dt * ONE);
+	}
+
+	/*
+	 * Moves this Shape object alone within the specified bounds by a time
+	 * step of step/ONE ticks. Unlike move(), this is never overridden, so it
+	 * does not move the children of a CarrierShape.
+	 */
+	final void moveShape(int width, int height, int step) {
+		// A packed shape is moved by its engine block using the same algorithm
+		if(_block != null) {
+			_block.move(_slot, width, height, step);
+			updateAbsolute();
+			return;
+		}
+
+		// Advancing the position in 16.16 fixed point
+		long fixedX = ((long)_x << FRACTION_BITS) + _subX + (long)_deltaX * step;
+		long fixedY = ((long)_y << FRACTION_BITS) + _subY + (long)_deltaY * step;
+		int nextX = (int)(fixedX >> FRACTION_BITS);
+		int nextY = (int)(fixedY >> FRACTION_BITS);
+		int subX = (int)fixedX & FRACTION_MASK;
+		int subY = (int)fixedY & FRACTION_MASK;
 
 		if (nextX <= 0) {
 			nextX = 0;
+			subX = 0;
 			_deltaX = -_deltaX;
 
 			// Set the left wall as the last wall hit
-			setLastBorderHit(0);
+			lastBorderHit = LEFT_BORDER;
 		} else if (nextX + _width >= width) {
 			nextX = width - _width;
+			subX = 0;
 			_deltaX = -_deltaX;
 
 			// Set the right wall as the last wall hit
-			setLastBorderHit(2);
+			lastBorderHit = RIGHT_BORDER;
 		}
 
 		if (nextY <= 0) {
 			nextY = 0;
+			subY = 0;
 			_deltaY = -_deltaY;
 
 			// Set the top wall as the last wall hit
-			setLastBorderHit(1);
+			lastBorderHit = TOP_BORDER;
 		} else if (nextY + _height >= height) {
 			nextY = height - _height;
+			subY = 0;
 			_deltaY = -_deltaY;
 
 			// Set the bottom wall as the last wall hit
-			setLastBorderHit(3);
+			lastBorderHit = BOTTOM_BORDER;
 		}
 
 		_x = nextX;
 		_y = nextY;
+		_subX = subX;
+		_subY = subY;
+
+		// The parent, if any, has already moved this tick
+		CarrierShape carrier = parent;
+		_absoluteX = carrier == null ? nextX : carrier._absoluteX + nextX;
+		_absoluteY = carrier == null ? nextY : carrier._absoluteY + nextY;
+	}
+
+	/*
+	 * Recomputes this shape's world position from its parent's. Overridden
+	 * by CarrierShape to also update its subtree.
+	 */
+	void updateAbsolute() {
+		CarrierShape carrier = parent;
+		_absoluteX = carrier == null ? x() : carrier._absoluteX + x();
+		_absoluteY = carrier == null ? y() : carrier._absoluteY + y();
+	}
+
+	/*
+	 * Brings this shape's depth, path and world position up to date after
+	 * it or one of its ancestors has changed parent. Overridden by
+	 * CarrierShape to also update its subtree.
+	 */
+	void reparented() {
+		_depth = parent == null ? 0 : parent.depth() + 1;
+		_path = null;
+		updateAbsolute();
+	}
+
+	/*
+	 * Returns the sub-pixel remainders of this shape's position, whether or
+	 * not the shape is packed.
+	 */
+	int subX() {
+		if(_block != null) {
+			return _block._subX[_slot];
+		}
+		return _subX;
+	}
+
+	int subY() {
+		if(_block != null) {
+			return _block._subY[_slot];
+		}
+		return _subY;
+	}
+
+	/*
+	 * Restores the movement state that the constructors do not set. Only
+	 * used on shapes that are not packed, e.g. by ShapeJournalReplayer.
+	 */
+	void restoreMotion(int subX, int subY, int lastBorderHit) {
+		_subX = subX;
+		_subY = subY;
+		this.lastBorderHit = lastBorderHit;
 	}
 
 	/**
-	 * Sets the index of the wall hit in the lastBorderHit array
-	 * to true and the rest to false in order to keep track of the last
-	 * wall hit
-	 * @param borderHit the index of the last boarder hit e.g. left = 0 top = 1
-	 * right = 2 and bottom = 3
+	 * Returns the index of the last border hit by this shape, one of
+	 * LEFT_BORDER, TOP_BORDER, RIGHT_BORDER, BOTTOM_BORDER or NO_BORDER.
 	 */
-	private void setLastBorderHit(int borderHit)
-	{
-		// Set every border to false
-		for(int i = 0;i<4;i++)
-		{
-			lastBorderHit[i] = false;
+	int lastBorderHit() {
+		if(_block != null) {
+			return _block._lastBorderHit[_slot];
 		}
+		return lastBorderHit;
+	}
 
-		// Set the borderHit index to true
-		lastBorderHit[borderHit] = true;
+	/*
+	 * Sets this shape's velocity, whether or not the shape is packed.
+	 */
+	void setDelta(int deltaX, int deltaY) {
+		if(_block != null) {
+			_block._deltaX[_slot] = deltaX;
+			_block._deltaY[_slot] = deltaY;
+			return;
+		}
+		_deltaX = deltaX;
+		_deltaY = deltaY;
+	}
+
+	/*
+	 * Copies the state held by a PackedShapeEngine block back into this
+	 * shape's instance variables and detaches the shape from the block.
+	 */
+	void unpack() {
+		_x = _block._x[_slot];
+		_y = _block._y[_slot];
+		_subX = _block._subX[_slot];
+		_subY = _block._subY[_slot];
+		_deltaX = _block._deltaX[_slot];
+		_deltaY = _block._deltaY[_slot];
+		_width = _block._width[_slot];
+		_height = _block._height[_slot];
+		lastBorderHit = _block._lastBorderHit[_slot];
+		_block = null;
 	}
 
 	/**
@@ -206,22 +450,22 @@ public abstract class Shape {
 	 */
 	public boolean lastHitLeft()
 	{
-		return lastBorderHit[0];
+		return lastBorderHit() == LEFT_BORDER;
 	}
 
 	public boolean lastHitTop()
 	{
-		return lastBorderHit[1];
+		return lastBorderHit() == TOP_BORDER;
 	}
 
 	public boolean lastHitRight()
 	{
-		return lastBorderHit[2];
+		return lastBorderHit() == RIGHT_BORDER;
 	}
 
 	public boolean lastHitBot()
 	{
-		return lastBorderHit[3];
+		return lastBorderHit() == BOTTOM_BORDER;
 	}
 
 	/**
@@ -244,6 +488,7 @@ public abstract class Shape {
 	public void setParent(CarrierShape parent)
 	{
 		this.parent = parent;
+		reparented();
 	}
 
 	/**
@@ -254,6 +499,33 @@ public abstract class Shape {
 		return parent;
 	}
 
+	/**
+	 * Sets whether this shape may be drawn from a painter's SpriteCache.
+	 * Shapes may be opted out where stamping a cached image is unwanted.
+	 */
+	public void setSpriteCached(boolean spriteCached) {
+		_spriteCached = spriteCached;
+	}
+
+	/**
+	 * Returns whether this shape may be drawn from a painter's SpriteCache.
+	 */
+	public boolean isSpriteCached() {
+		return _spriteCached;
+	}
+
+	/**
+	 * Returns the state, besides the class, size and painter's colour, that
+	 * determines how this shape is painted by paint(), or null if the shape
+	 * cannot be drawn from a SpriteCache. Two shapes of the same class, size,
+	 * colour and equal state must paint identical images, relative to their
+	 * position. This implementation returns null; subclasses that paint a
+	 * fixed figure return PLAIN_SPRITE.
+	 */
+	protected Object spriteState() {
+		return null;
+	}
+
 	/**
 	 * Method to be implemented by concrete subclasses to handle subclass
 	 * specific painting.
@@ -264,25 +536,65 @@ public abstract class Shape {
 	/**
 	 * Checks if there is any text associated with the shape object
 	 * and draws it in the middle of the shape. This makes use of the template
-	 * pattern in order to not have the developer implement this themselves for every shape
+	 * pattern in order to not have the developer implement this themselves for every shape.
+	 * If the painter has a LevelOfDetail, the shape may instead be culled, or
+	 * drawn as a point, and its text skipped.
 	 * @param painter the Painter object used for drawing.
 	 */
 	public void doPaint(Painter painter)
 	{
+		if(paintReduced(painter))
+		{
+			return;
+		}
+
 		// Checks if there is text associated with the Shape
-		if(text!=null)
+		LevelOfDetail detail = painter.levelOfDetail();
+		if(text!=null && (detail == null || detail.showText(this)))
 		{
 			// If there is then it paints the text in the middle of the shape
-			painter.drawCentredText(_x,_y,_width,_height,text);
+			painter.drawCentredText(x(),y(),width(),height(),text);
 		}
 
-		paint(painter);
+		// Stamps a cached image of the shape if the painter has one,
+		// otherwise paints the shape
+		if(!painter.drawSprite(this))
+		{
+			paint(painter);
+		}
+	}
+
+	/**
+	 * Applies the painter's LevelOfDetail, if it has one, to this shape:
+	 * paints nothing if the shape is culled, or a single point if it is too
+	 * small to show more. Returns true in either case, when the caller must
+	 * not paint the shape any further; false if it is to be painted in full.
+	 * Subclasses overriding doPaint() call this first.
+	 * @param painter the Painter object used for drawing.
+	 */
+	protected final boolean paintReduced(Painter painter)
+	{
+		LevelOfDetail detail = painter.levelOfDetail();
+		if(detail == null)
+		{
+			return false;
+		}
+		int level = detail.select(this);
+		if(level == LevelOfDetail.POINT)
+		{
+			// Too small to show more than one pixel, or any children
+			painter.drawLine(x(),y(),x(),y());
+		}
+		return level != LevelOfDetail.FULL;
 	}
 
 	/**
 	 * Returns this Shape object's x position.
 	 */
 	public int x() {
+		if(_block != null) {
+			return _block._x[_slot];
+		}
 		return _x;
 	}
 	
@@ -290,13 +602,41 @@ public abstract class Shape {
 	 * Returns this Shape object's y position.
 	 */
 	public int y() {
+		if(_block != null) {
+			return _block._y[_slot];
+		}
 		return _y;
 	}
 	
+	/**
+	 * Returns this Shape object's x position to sub-pixel precision, of
+	 * which x() is the whole part.
+	 */
+	public double exactX() {
+		if(_block != null) {
+			return _block._x[_slot] + _block._subX[_slot] / (double)ONE;
+		}
+		return _x + _subX / (double)ONE;
+	}
+
+	/**
+	 * Returns this Shape object's y position to sub-pixel precision, of
+	 * which y() is the whole part.
+	 */
+	public double exactY() {
+		if(_block != null) {
+			return _block._y[_slot] + _block._subY[_slot] / (double)ONE;
+		}
+		return _y + _subY / (double)ONE;
+	}
+
 	/**
 	 * Returns this Shape object's speed and direction.
 	 */
 	public int deltaX() {
+		if(_block != null) {
+			return _block._deltaX[_slot];
+		}
 		return _deltaX;
 	}
 	
@@ -304,6 +644,9 @@ public abstract class Shape {
 	 * Returns this Shape object's speed and direction.
 	 */
 	public int deltaY() {
+		if(_block != null) {
+			return _block._deltaY[_slot];
+		}
 		return _deltaY;
 	}
 	
@@ -311,6 +654,9 @@ public abstract class Shape {
 	 * Returns this Shape's width.
 	 */
 	public int width() {
+		if(_block != null) {
+			return _block._width[_slot];
+		}
 		return _width;
 	}
 	
@@ -318,6 +664,9 @@ public abstract class Shape {
 	 * Returns this Shape's height.
 	 */
 	public int height() {
+		if(_block != null) {
+			return _block._height[_slot];
+		}
 		return _height;
 	}
 	
@@ -0,0 +1,245 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the Shape subclasses that can be created from their
+ * constructor arguments, i.e. that have a public constructor taking (x, y,
+ * deltaX, deltaY, width, height, text). Each class's constructor is looked up
+ * once, when the class is registered, and bound to a MethodHandle, so
+ * creating a shape costs about as much as calling its constructor directly
+ * rather than a reflective lookup and Constructor.newInstance() call. A class
+ * that also has a constructor taking a Color after the text, such as
+ * DynamicShape, may be created with a colour too.
+ *
+ * Classes may be looked up by their full name or, if no other registered
+ * class shares it, by their name without the package; once a second class
+ * with the same simple name is registered, neither may be looked up by it.
+ * A ShapeFactory may be used from any thread.
+ */
+public class ShapeFactory {
+
+	// Types of the constructors, adapted to return Shape.
+	private static final MethodType PLAIN = MethodType.methodType(Shape.class,
+			Integer.TYPE, Integer.TYPE, Integer.TYPE, Integer.TYPE, Integer.TYPE, Integer.TYPE,
+			String.class);
+
+	private static final MethodType COLOURED = PLAIN.appendParameterTypes(Color.class);
+
+	private final Map<Class<? extends Shape>, Constructors> _constructors =
+			new ConcurrentHashMap<Class<? extends Shape>, Constructors>();
+
+	// Registered classes by full name and, where unambiguous, simple name.
+	private final Map<String, Class<? extends Shape>> _names =
+			new ConcurrentHashMap<String, Class<? extends Shape>>();
+
+	private final List<Class<? extends Shape>> _types = new ArrayList<Class<? extends Shape>>();
+
+	// Simple names shared by more than one registered class.
+	private final Set<String> _ambiguousNames = new HashSet<String>();
+
+	/**
+	 * Creates an empty ShapeFactory.
+	 */
+	public ShapeFactory() {
+	}
+
+	/**
+	 * Creates a ShapeFactory and registers each of the specified classes
+	 * that can be created.
+	 */
+	public ShapeFactory(Collection<Class<? extends Shape>> shapeClasses) {
+		for(Class<? extends Shape> shapeClass : shapeClasses) {
+			register(shapeClass);
+		}
+	}
+
+	/**
+	 * Registers a Shape subclass, looking up its constructors. Returns true
+	 * if the class is registered, false if it is abstract or has no public
+	 * 7-argument constructor and so cannot be.
+	 */
+	public synchronized boolean register(Class<? extends Shape> shapeClass) {
+		if(_constructors.containsKey(shapeClass)) {
+			return true;
+		}
+		if(Modifier.isAbstract(shapeClass.getModifiers())) {
+			return false;
+		}
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		MethodHandle plain = constructor(lookup, shapeClass, PLAIN);
+		if(plain == null) {
+			return false;
+		}
+		_constructors.put(shapeClass, new Constructors(plain, constructor(lookup, shapeClass, COLOURED)));
+		_types.add(shapeClass);
+		_names.put(shapeClass.getName(), shapeClass);
+		String simpleName = shapeClass.getSimpleName();
+		if(_names.containsKey(simpleName)) {
+			_names.remove(simpleName);
+			_ambiguousNames.add(simpleName);
+		} else if(!_ambiguousNames.contains(simpleName)) {
+			_names.put(simpleName, shapeClass);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the registered classes, in the order they were registered.
+	 */
+	public synchronized List<Class<? extends Shape>> types() {
+		return Collections.unmodifiableList(new ArrayList<Class<? extends Shape>>(_types));
+	}
+
+	/**
+	 * Returns true if the specified class is registered.
+	 */
+	public boolean supports(Class<? extends Shape> shapeClass) {
+		return _constructors.containsKey(shapeClass);
+	}
+
+	/**
+	 * Returns true if the specified registered class can be created with a
+	 * colour.
+	 */
+	public boolean takesColour(Class<? extends Shape> shapeClass) {
+		return constructors(shapeClass)._coloured != null;
+	}
+
+	/**
+	 * Returns the registered class with the specified full or simple name,
+	 * or null if there is none.
+	 */
+	public Class<? extends Shape> resolve(String name) {
+		return _names.get(name);
+	}
+
+	/**
+	 * Creates a shape of a registered class.
+	 * @throws IllegalArgumentException if the class is not registered.
+	 */
+	public Shape create(Class<? extends Shape> shapeClass, int x, int y, int deltaX, int deltaY,
+			int width, int height, String text) {
+		return create(constructors(shapeClass)._plain, x, y, deltaX, deltaY, width, height, text);
+	}
+
+	/**
+	 * Creates a shape of a registered class that takes a colour.
+	 * @throws IllegalArgumentException if the class is not registered or
+	 *         does not take a colour.
+	 */
+	public Shape create(Class<? extends Shape> shapeClass, int x, int y, int deltaX, int deltaY,
+			int width, int height, String text, Color colour) {
+		MethodHandle coloured = constructors(shapeClass)._coloured;
+		if(coloured == null) {
+			throw new IllegalArgumentException(shapeClass.getName() + " does not take a colour");
+		}
+		try {
+			return (Shape)coloured.invokeExact(x, y, deltaX, deltaY, width, height, text, colour);
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Error e) {
+			throw e;
+		} catch(Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Creates a shape of the registered class with the specified full or
+	 * simple name.
+	 * @throws IllegalArgumentException if no such class is registered.
+	 */
+	public Shape create(String name, int x, int y, int deltaX, int deltaY,
+			int width, int height, String text) {
+		Class<? extends Shape> shapeClass = resolve(name);
+		if(shapeClass == null) {
+			throw new IllegalArgumentException("Unknown shape type " + name);
+		}
+		return create(shapeClass, x, y, deltaX, deltaY, width, height, text);
+	}
+
+	/**
+	 * Creates one shape of a registered class for each index into the
+	 * argument arrays, which must all have the same length. The text array
+	 * may be null, for shapes without text.
+	 * @throws IllegalArgumentException if the class is not registered or the
+	 *         arrays' lengths differ.
+	 */
+	public Shape[] createBatch(Class<? extends Shape> shapeClass, int[] x, int[] y,
+			int[] deltaX, int[] deltaY, int[] width, int[] height, String[] text) {
+		int count = x.length;
+		if(y.length != count || deltaX.length != count || deltaY.length != count
+				|| width.length != count || height.length != count
+				|| (text != null && text.length != count)) {
+			throw new IllegalArgumentException("Argument arrays differ in length");
+		}
+		MethodHandle plain = constructors(shapeClass)._plain;
+		Shape[] shapes = new Shape[count];
+		for(int i = 0; i < count; i++) {
+			shapes[i] = create(plain, x[i], y[i], deltaX[i], deltaY[i], width[i], height[i],
+					text == null ? null : text[i]);
+		}
+		return shapes;
+	}
+
+	private Constructors constructors(Class<? extends Shape> shapeClass) {
+		Constructors constructors = _constructors.get(shapeClass);
+		if(constructors == null) {
+			throw new IllegalArgumentException(shapeClass.getName() + " is not registered");
+		}
+		return constructors;
+	}
+
+	private static Shape create(MethodHandle plain, int x, int y, int deltaX, int deltaY,
+			int width, int height, String text) {
+		try {
+			return (Shape)plain.invokeExact(x, y, deltaX, deltaY, width, height, text);
+		} catch(RuntimeException e) {
+			// Thrown by the constructor itself.
+			throw e;
+		} catch(Error e) {
+			throw e;
+		} catch(Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle constructor(MethodHandles.Lookup lookup,
+			Class<? extends Shape> shapeClass, MethodType type) {
+		try {
+			return lookup.findConstructor(shapeClass, type.changeReturnType(void.class)).asType(type);
+		} catch(NoSuchMethodException e) {
+			return null;
+		} catch(IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * MethodHandles of a class's constructors.
+	 */
+	private static class Constructors {
+		private final MethodHandle _plain;
+
+		// Null if the class has no constructor taking a Color.
+		private final MethodHandle _coloured;
+
+		Constructors(MethodHandle plain, MethodHandle coloured) {
+			_plain = plain;
+			_coloured = coloured;
+		}
+	}
+}
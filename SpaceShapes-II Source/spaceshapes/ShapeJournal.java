@@ -0,0 +1,420 @@
+package spaceshapes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary journal of the operations made on a ShapeModel, from which
+ * a ShapeJournalReplayer can rebuild the model as it was after any tick. A
+ * ShapeJournal is attached with ShapeModel.setJournal() and then records
+ * each shape added, with the arguments needed to construct it again and the
+ * path to its parent, each shape removed, each clock() call with its time
+ * step and each change to sibling collisions or to the cell size, which
+ * decides the order in which collisions are resolved. Because shapes move
+ * deterministically, that is enough to reproduce every tick.
+ *
+ * To save a replayer from running the whole journal to reach a late tick, a
+ * keyframe holding the complete state of the composition is written when
+ * the journal is attached and then every keyframeInterval ticks.
+ *
+ * Each shape's class is written as a type index; the first time a type is
+ * used, the class name follows it, so each name is written once.
+ *
+ * Records are assembled in a buffer and written to a FileChannel when the
+ * buffer fills, and on flush() and close(). Errors do not disrupt the
+ * ShapeModel: the first IOException stops the journal and is rethrown by
+ * flush() and close().
+ *
+ * Changes made to shapes other than through the ShapeModel, e.g. by calling
+ * move() directly, are not recorded. A shape whose class has no public
+ * constructor taking (x, y, deltaX, deltaY, width, height, text), such as an
+ * ImageRectangleShape, is recorded as a RectangleShape of the same size and
+ * motion.
+ */
+public class ShapeJournal implements Closeable {
+
+	/**
+	 * Default number of ticks between keyframes.
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 1000;
+
+	// === File format.
+	static final int MAGIC = 0x53534A31;
+
+	static final short VERSION = 2;
+
+	static final byte KEYFRAME = 1;
+
+	static final byte ADD = 2;
+
+	static final byte REMOVE = 3;
+
+	static final byte CLOCK = 4;
+
+	static final byte COLLISIONS = 5;
+
+	static final byte CELL_SIZE = 6;
+	// ===
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel _channel;
+
+	private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final int _keyframeInterval;
+
+	// Model being recorded, null until attached.
+	private ShapeModel _model;
+
+	private long _keyframes;
+
+	// Type index of each class of shape journalled, recorded under both the
+	// shape's class and the class it is journalled as.
+	private final Map<Class<?>, Integer> _types = new HashMap<Class<?>, Integer>();
+
+	private int _typeCount;
+
+	// First exception thrown by the channel.
+	private IOException _error;
+
+	private boolean _closed;
+
+	/**
+	 * Creates a ShapeJournal that writes to the specified file, replacing
+	 * any existing contents, with the default keyframe interval.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public ShapeJournal(File file) throws IOException {
+		this(file, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates a ShapeJournal that writes to the specified file, replacing
+	 * any existing contents, and writes a keyframe every keyframeInterval
+	 * ticks.
+	 * @throws IllegalArgumentException if keyframeInterval is less than 1.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public ShapeJournal(File file, int keyframeInterval) throws IOException {
+		if(keyframeInterval < 1) {
+			throw new IllegalArgumentException();
+		}
+		_keyframeInterval = keyframeInterval;
+		_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Returns the number of keyframes written.
+	 */
+	public synchronized long keyframes() {
+		return _keyframes;
+	}
+
+	/**
+	 * Writes any buffered records to the file.
+	 * @throws IOException if this or an earlier write has failed.
+	 */
+	public synchronized void flush() throws IOException {
+		drain();
+		if(_error != null) {
+			throw _error;
+		}
+	}
+
+	/**
+	 * Writes any buffered records and closes the file. A ShapeJournal that is
+	 * closed records nothing further.
+	 * @throws IOException if this or an earlier write has failed.
+	 */
+	public synchronized void close() throws IOException {
+		if(_closed) {
+			return;
+		}
+		drain();
+		_closed = true;
+		try {
+			_channel.close();
+		} catch(IOException e) {
+			fail(e);
+		}
+		if(_error != null) {
+			throw _error;
+		}
+	}
+
+	/*
+	 * Starts recording a ShapeModel: writes the header and a first keyframe.
+	 * Called by ShapeModel.setJournal().
+	 */
+	synchronized void attach(ShapeModel model) {
+		if(_model != null) {
+			throw new IllegalStateException("Journal already attached");
+		}
+		_model = model;
+		if(!ensure(18)) {
+			return;
+		}
+		_buffer.putInt(MAGIC);
+		_buffer.putShort(VERSION);
+		_buffer.putInt(model.root().width());
+		_buffer.putInt(model.root().height());
+		_buffer.putInt(_keyframeInterval);
+		keyframe();
+	}
+
+	/*
+	 * Records that a shape, with any children, has been added.
+	 */
+	synchronized void added(Shape shape) {
+		if(ensure(1)) {
+			_buffer.put(ADD);
+			putPath(shape.parent());
+			putTree(shape);
+		}
+	}
+
+	/*
+	 * Records that the shape at the specified index of a parent has been
+	 * removed.
+	 */
+	synchronized void removed(CarrierShape parent, int index) {
+		if(ensure(1)) {
+			_buffer.put(REMOVE);
+			putPath(parent);
+			if(ensure(4)) {
+				_buffer.putInt(index);
+			}
+		}
+	}
+
+	/*
+	 * Records a clock() call with a time step of step/Shape.ONE ticks, and
+	 * writes a keyframe if one is due.
+	 */
+	synchronized void clocked(int step) {
+		if(ensure(5)) {
+			_buffer.put(CLOCK);
+			_buffer.putInt(step);
+		}
+		if(_model.ticks() % _keyframeInterval == 0) {
+			keyframe();
+		}
+	}
+
+	/*
+	 * Records that sibling collisions have been enabled or disabled.
+	 */
+	synchronized void collisionsSet(boolean enabled) {
+		if(ensure(2)) {
+			_buffer.put(COLLISIONS);
+			_buffer.put(enabled ? (byte)1 : (byte)0);
+		}
+	}
+
+	/*
+	 * Records that the cell size of the SpatialGrids has been changed.
+	 */
+	synchronized void cellSizeSet(int cellSize) {
+		if(ensure(5)) {
+			_buffer.put(CELL_SIZE);
+			_buffer.putInt(cellSize);
+		}
+	}
+
+	/*
+	 * Writes a keyframe: the model's clock and settings, and the whole
+	 * composition.
+	 */
+	private void keyframe() {
+		if(!ensure(22)) {
+			return;
+		}
+		_buffer.put(KEYFRAME);
+		_buffer.putLong(_model.ticks());
+		_buffer.putLong(_model.fixedTime());
+		_buffer.put(_model.siblingCollisions() ? (byte)1 : (byte)0);
+		_buffer.putInt(_model.cellSize());
+		putTree(_model.root());
+		_keyframes++;
+	}
+
+	/*
+	 * Writes the path from the root to a CarrierShape: its depth, then the
+	 * index of each shape on the path below the root.
+	 */
+	private void putPath(CarrierShape carrier) {
+		int depth = carrier.depth();
+		if(!ensure(4 + depth * 4)) {
+			return;
+		}
+		_buffer.putInt(depth);
+		int start = _buffer.position();
+		// Indices are found leaf first, so are written from the end.
+		Shape shape = carrier;
+		for(int i = depth - 1; i >= 0; i--) {
+			_buffer.putInt(start + i * 4, shape._index);
+			shape = shape.parent();
+		}
+		_buffer.position(start + depth * 4);
+	}
+
+	/*
+	 * Writes a shape followed by the number of its children and each child,
+	 * recursively.
+	 */
+	private void putTree(Shape shape) {
+		putShape(shape);
+		int count = shape instanceof CarrierShape ? ((CarrierShape)shape).shapeCount() : 0;
+		if(ensure(4)) {
+			_buffer.putInt(count);
+		}
+		for(int i = 0; i < count; i++) {
+			putTree(((CarrierShape)shape).shapeAt(i));
+		}
+	}
+
+	/*
+	 * Writes the type, constructor arguments and movement state of a shape.
+	 */
+	private void putShape(Shape shape) {
+		putType(shape.getClass());
+		if(!ensure(37)) {
+			return;
+		}
+		_buffer.putInt(shape.x());
+		_buffer.putInt(shape.y());
+		_buffer.putInt(shape.deltaX());
+		_buffer.putInt(shape.deltaY());
+		_buffer.putInt(shape.width());
+		_buffer.putInt(shape.height());
+		_buffer.putInt(shape.subX());
+		_buffer.putInt(shape.subY());
+		_buffer.put((byte)shape.lastBorderHit());
+		_buffer.putInt(shape instanceof DynamicShape ? ((DynamicShape)shape).color().getRGB() : 0);
+		putString(shape.getText());
+	}
+
+	/*
+	 * Writes the type index of the class a shape of the specified class is
+	 * journalled as. The first time a type is written, its index is written
+	 * complemented, i.e. negative, and followed by the class name.
+	 */
+	private void putType(Class<?> shapeClass) {
+		Integer type = _types.get(shapeClass);
+		String definition = null;
+		if(type == null) {
+			Class<?> journalledClass = journalledClass(shapeClass);
+			type = _types.get(journalledClass);
+			if(type == null) {
+				if(_typeCount > Short.MAX_VALUE) {
+					fail(new IOException("Too many shape classes"));
+					return;
+				}
+				type = _typeCount++;
+				_types.put(journalledClass, type);
+				definition = journalledClass.getName();
+			}
+			_types.put(shapeClass, type);
+		}
+		if(!ensure(2)) {
+			return;
+		}
+		if(definition == null) {
+			_buffer.putShort(type.shortValue());
+		} else {
+			_buffer.putShort((short)~type);
+			putString(definition);
+		}
+	}
+
+	/*
+	 * Returns the class a shape of the specified class is recorded as: its
+	 * own if it can be constructed from the journalled arguments, otherwise
+	 * RectangleShape.
+	 */
+	private static Class<?> journalledClass(Class<?> shapeClass) {
+		try {
+			shapeClass.getConstructor(Integer.TYPE, Integer.TYPE, Integer.TYPE, Integer.TYPE,
+					Integer.TYPE, Integer.TYPE, String.class);
+			return shapeClass;
+		} catch(NoSuchMethodException e) {
+			return RectangleShape.class;
+		}
+	}
+
+	/*
+	 * Writes a string as its length in UTF-8 bytes, -1 for null, followed by
+	 * the bytes.
+	 */
+	private void putString(String text) {
+		byte[] bytes = text == null ? null : text.getBytes(UTF_8);
+		if(!ensure(4)) {
+			return;
+		}
+		_buffer.putInt(bytes == null ? -1 : bytes.length);
+		if(bytes == null) {
+			return;
+		}
+		if(bytes.length <= BUFFER_SIZE) {
+			if(ensure(bytes.length)) {
+				_buffer.put(bytes);
+			}
+		} else if(ensure(BUFFER_SIZE)) {
+			// Too long to buffer; the buffer is empty, so write it directly.
+			write(ByteBuffer.wrap(bytes));
+		}
+	}
+
+	/*
+	 * Makes room in the buffer for count bytes, writing it out if need be.
+	 * Returns false if nothing can be recorded any more.
+	 */
+	private boolean ensure(int count) {
+		if(_closed || _error != null) {
+			return false;
+		}
+		if(_buffer.remaining() < count) {
+			drain();
+		}
+		return _error == null;
+	}
+
+	/*
+	 * Writes the buffered records to the channel and empties the buffer.
+	 */
+	private void drain() {
+		if(_closed || _error != null || _buffer.position() == 0) {
+			return;
+		}
+		_buffer.flip();
+		write(_buffer);
+		_buffer.clear();
+	}
+
+	private void write(ByteBuffer bytes) {
+		try {
+			while(bytes.hasRemaining()) {
+				_channel.write(bytes);
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	private void fail(IOException e) {
+		if(_error == null) {
+			_error = e;
+		}
+	}
+}
@@ -0,0 +1,461 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the ShapeModels recorded in a ShapeJournal. A replayer indexes the
+ * journal's keyframes when it is opened; seek() then restores the keyframe
+ * nearest before the requested tick and replays the operations from there,
+ * clocking the model without rendering it, so the cost of seeking is bounded
+ * by the keyframe interval rather than by the length of the session.
+ *
+ * The model returned by seek() is new, has no listeners and is not connected
+ * to the journal; it may be clocked further or displayed like any other.
+ */
+public class ShapeJournalReplayer implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel _channel;
+
+	// Buffer of bytes read from the channel, starting at _bufferStart.
+	private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private long _bufferStart;
+
+	private final Dimension _bounds;
+
+	private final int _keyframeInterval;
+
+	// Tick and file position of each keyframe, in the order written.
+	private final List<long[]> _keyframes = new ArrayList<long[]>();
+
+	// Number of ticks recorded.
+	private long _ticks;
+
+	// Class name of each type index, in the order the types were defined.
+	private final List<String> _typeNames = new ArrayList<String>();
+
+	// Shape classes met so far, registered with the factory.
+	private final Map<String, Class<? extends Shape>> _classes =
+			new HashMap<String, Class<? extends Shape>>();
+
+	private final ShapeFactory _factory = new ShapeFactory();
+
+	/**
+	 * Opens a journal written by a ShapeJournal and indexes its keyframes.
+	 * @throws IOException if the file cannot be read or is not a journal.
+	 */
+	public ShapeJournalReplayer(File file) throws IOException {
+		_channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			seekFile(0);
+			if(getInt() != ShapeJournal.MAGIC || getShort() != ShapeJournal.VERSION) {
+				throw new IOException(file + " is not a shape journal");
+			}
+			_bounds = new Dimension(getInt(), getInt());
+			_keyframeInterval = getInt();
+			index();
+		} catch(IOException e) {
+			_channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the size of the world of the recorded ShapeModel.
+	 */
+	public Dimension bounds() {
+		return new Dimension(_bounds);
+	}
+
+	/**
+	 * Returns the number of ticks between keyframes.
+	 */
+	public int keyframeInterval() {
+		return _keyframeInterval;
+	}
+
+	/**
+	 * Returns the number of keyframes in the journal.
+	 */
+	public int keyframes() {
+		return _keyframes.size();
+	}
+
+	/**
+	 * Returns the tick at which recording started, i.e. that of the first
+	 * keyframe.
+	 */
+	public long firstTick() {
+		return _keyframes.get(0)[0];
+	}
+
+	/**
+	 * Returns the last tick recorded.
+	 */
+	public long lastTick() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns a new ShapeModel in the state the recorded ShapeModel was in
+	 * immediately after its tick-th clock() call, before any shapes were
+	 * added or removed. Settings changed before the next clock() call, such
+	 * as sibling collisions, are applied.
+	 * @throws IllegalArgumentException if tick is outside firstTick() to
+	 *         lastTick().
+	 * @throws IOException if the journal cannot be read.
+	 */
+	public ShapeModel seek(long tick) throws IOException {
+		if(tick < firstTick() || tick > _ticks) {
+			throw new IllegalArgumentException("Tick " + tick + " not recorded");
+		}
+		// Find the last keyframe at or before the tick.
+		long[] keyframe = _keyframes.get(0);
+		for(long[] candidate : _keyframes) {
+			if(candidate[0] > tick) {
+				break;
+			}
+			keyframe = candidate;
+		}
+
+		seekFile(keyframe[1]);
+		getByte();
+		ShapeModel model = readKeyframe();
+
+		long end = _channel.size();
+		while(position() < end) {
+			byte type = getByte();
+			if(model.ticks() == tick && (type == ShapeJournal.CLOCK
+					|| type == ShapeJournal.ADD || type == ShapeJournal.REMOVE)) {
+				break;
+			}
+			if(type == ShapeJournal.CLOCK) {
+				model.clock(getInt() / (double)Shape.ONE);
+			} else if(type == ShapeJournal.KEYFRAME) {
+				// The model is already in the state the keyframe holds.
+				skipKeyframe();
+			} else {
+				apply(type, model);
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Closes the journal.
+	 */
+	public void close() throws IOException {
+		_channel.close();
+	}
+
+	/*
+	 * Reads the whole journal, recording the position of each keyframe and
+	 * counting ticks.
+	 */
+	private void index() throws IOException {
+		long end = _channel.size();
+		while(position() < end) {
+			long start = position();
+			byte type = getByte();
+			switch(type) {
+			case ShapeJournal.KEYFRAME:
+				long tick = getLong();
+				_keyframes.add(new long[] {tick, start});
+				_ticks = tick;
+				getLong();
+				getByte();
+				getInt();
+				skipTree();
+				break;
+			case ShapeJournal.ADD:
+				skipPath();
+				skipTree();
+				break;
+			case ShapeJournal.REMOVE:
+				skipPath();
+				getInt();
+				break;
+			case ShapeJournal.CLOCK:
+				getInt();
+				_ticks++;
+				break;
+			case ShapeJournal.COLLISIONS:
+				getByte();
+				break;
+			case ShapeJournal.CELL_SIZE:
+				getInt();
+				break;
+			default:
+				throw new IOException("Unknown record type " + type + " at " + start);
+			}
+		}
+		if(_keyframes.isEmpty()) {
+			throw new IOException("Journal holds no keyframe");
+		}
+	}
+
+	/*
+	 * Applies a record other than a clock or a keyframe to a model.
+	 */
+	private void apply(byte type, ShapeModel model) throws IOException {
+		switch(type) {
+		case ShapeJournal.ADD:
+			CarrierShape parent = getPath(model);
+			model.add(getTree(), parent);
+			break;
+		case ShapeJournal.REMOVE:
+			CarrierShape carrier = getPath(model);
+			model.remove(carrier.shapeAt(getInt()));
+			break;
+		case ShapeJournal.COLLISIONS:
+			model.setSiblingCollisions(getByte() != 0);
+			break;
+		case ShapeJournal.CELL_SIZE:
+			model.setCellSize(getInt());
+			break;
+		default:
+			throw new IOException("Unexpected record type " + type);
+		}
+	}
+
+	/*
+	 * Reads a keyframe, less its type, into a new ShapeModel.
+	 */
+	private ShapeModel readKeyframe() throws IOException {
+		ShapeModel model = new ShapeModel(_bounds);
+		long ticks = getLong();
+		long time = getLong();
+		model.setSiblingCollisions(getByte() != 0);
+		model.setCellSize(getInt());
+		model.restoreClock(ticks, time);
+
+		// The root's state is restored into the model's own root.
+		CarrierShape root = model.root();
+		getType();
+		getRootState(root);
+		int count = getInt();
+		for(int i = 0; i < count; i++) {
+			root.restore(getTree());
+		}
+		return model;
+	}
+
+	/*
+	 * Reads a shape and its descendants.
+	 */
+	private Shape getTree() throws IOException {
+		Shape shape = getShape();
+		int count = getInt();
+		for(int i = 0; i < count; i++) {
+			((CarrierShape)shape).restore(getTree());
+		}
+		return shape;
+	}
+
+	/*
+	 * Reads a shape, constructing it as its class's 7-argument constructor
+	 * (8-argument, with a colour, for DynamicShape) would.
+	 */
+	private Shape getShape() throws IOException {
+		String className = getType();
+		int x = getInt();
+		int y = getInt();
+		int deltaX = getInt();
+		int deltaY = getInt();
+		int width = getInt();
+		int height = getInt();
+		int subX = getInt();
+		int subY = getInt();
+		int lastBorderHit = getByte();
+		int colour = getInt();
+		String text = getString();
+
+		Shape shape;
+		if(className.equals(DynamicShape.class.getName())) {
+			shape = new DynamicShape(x, y, deltaX, deltaY, width, height, text, new Color(colour, true));
+		} else {
+			Class<? extends Shape> shapeClass = shapeClass(className);
+			try {
+				shape = _factory.create(shapeClass, x, y, deltaX, deltaY, width, height, text);
+			} catch(RuntimeException e) {
+				throw new IOException("Cannot create a " + className, e);
+			}
+		}
+		shape.restoreMotion(subX, subY, lastBorderHit);
+		return shape;
+	}
+
+	/*
+	 * Reads the state of the root, less its class. The root's position and
+	 * size are those of the model's bounds and it does not move, so only its
+	 * text and the state moving it would leave are restored.
+	 */
+	private void getRootState(Shape root) throws IOException {
+		ensure(32);
+		_buffer.position(_buffer.position() + 24);
+		int subX = getInt();
+		int subY = getInt();
+		root.restoreMotion(subX, subY, getByte());
+		getInt();
+		root.addText(getString());
+	}
+
+	/*
+	 * Reads a shape's type and returns the name of its class. The first use
+	 * of a type, written complemented, defines it with the name that follows.
+	 */
+	private String getType() throws IOException {
+		int type = getShort();
+		if(type < 0) {
+			type = ~type;
+			String name = getString();
+			if(type == _typeNames.size()) {
+				_typeNames.add(name);
+			}
+		}
+		if(type >= _typeNames.size()) {
+			throw new IOException("Undefined shape type " + type);
+		}
+		return _typeNames.get(type);
+	}
+
+	private Class<? extends Shape> shapeClass(String className) throws IOException {
+		Class<? extends Shape> shapeClass = _classes.get(className);
+		if(shapeClass == null) {
+			try {
+				shapeClass = Class.forName(className).asSubclass(Shape.class);
+			} catch(ClassNotFoundException e) {
+				throw new IOException("Unknown shape class " + className, e);
+			} catch(ClassCastException e) {
+				throw new IOException(className + " is not a Shape", e);
+			}
+			if(!_factory.register(shapeClass)) {
+				throw new IOException(className + " has no 7-argument constructor");
+			}
+			_classes.put(className, shapeClass);
+		}
+		return shapeClass;
+	}
+
+	/*
+	 * Reads a path written by ShapeJournal and returns the CarrierShape it
+	 * leads to.
+	 */
+	private CarrierShape getPath(ShapeModel model) throws IOException {
+		Shape shape = model.root();
+		int depth = getInt();
+		for(int i = 0; i < depth; i++) {
+			shape = ((CarrierShape)shape).shapeAt(getInt());
+		}
+		return (CarrierShape)shape;
+	}
+
+	private void skipPath() throws IOException {
+		int depth = getInt();
+		for(int i = 0; i < depth; i++) {
+			getInt();
+		}
+	}
+
+	private void skipKeyframe() throws IOException {
+		getLong();
+		getLong();
+		getByte();
+		getInt();
+		skipTree();
+	}
+
+	private void skipTree() throws IOException {
+		getType();
+		ensure(37);
+		_buffer.position(_buffer.position() + 37);
+		getString();
+		int count = getInt();
+		for(int i = 0; i < count; i++) {
+			skipTree();
+		}
+	}
+
+	// === Reading from the channel through the buffer.
+
+	private long position() {
+		return _bufferStart + _buffer.position();
+	}
+
+	/*
+	 * Empties the buffer and positions it at the specified file position.
+	 */
+	private void seekFile(long position) {
+		_bufferStart = position;
+		_buffer.clear();
+		_buffer.limit(0);
+	}
+
+	/*
+	 * Ensures that count bytes, at most BUFFER_SIZE, are buffered.
+	 */
+	private void ensure(int count) throws IOException {
+		if(_buffer.remaining() >= count) {
+			return;
+		}
+		_bufferStart += _buffer.position();
+		_buffer.compact();
+		while(_buffer.position() < count) {
+			if(_channel.read(_buffer, _bufferStart + _buffer.position()) < 0) {
+				throw new EOFException("Journal ends within a record");
+			}
+		}
+		_buffer.flip();
+	}
+
+	private byte getByte() throws IOException {
+		ensure(1);
+		return _buffer.get();
+	}
+
+	private short getShort() throws IOException {
+		ensure(2);
+		return _buffer.getShort();
+	}
+
+	private int getInt() throws IOException {
+		ensure(4);
+		return _buffer.getInt();
+	}
+
+	private long getLong() throws IOException {
+		ensure(8);
+		return _buffer.getLong();
+	}
+
+	private String getString() throws IOException {
+		int length = getInt();
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		int read = 0;
+		while(read < length) {
+			ensure(1);
+			int chunk = Math.min(_buffer.remaining(), length - read);
+			_buffer.get(bytes, read, chunk);
+			read += chunk;
+		}
+		return new String(bytes, ShapeJournal.UTF_8);
+	}
+	// ===
+}
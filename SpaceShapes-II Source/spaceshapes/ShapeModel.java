@@ -3,6 +3,10 @@ package spaceshapes;
 import java.awt.Dimension;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Class to represent a shape composition. Classes whose instances are 
@@ -11,12 +15,34 @@ import java.util.List;
  * as listeners on a ShapeModel. Whenever a Shape is added to or removed from a
  * Shape Model, or whenever a Shape within the model changes (i.e. due to a 
  * move() request) the ShapeModel notifies all registered listeners by firing a
- * ShapeModelEvent.
+ * ShapeModelEvent. Changes made between beginBatch() and commitBatch() are
+ * notified by a single ShapesChanged ShapeModelEvent. By default listeners
+ * are notified synchronously; setAsyncDispatch() gives each listener its own
+ * ListenerQueue instead.
+ *
+ * Each CarrierShape's children are indexed by a uniform SpatialGrid, which
+ * answers the hit testing queries shapeAt() and shapesIn() and, when sibling
+ * collisions are enabled, lets clock() bounce overlapping siblings off each
+ * other without comparing every pair.
  * 
  * @author Paramvir Singh (Original Author - Ian Warren)
  *
  */
 public class ShapeModel {
+
+	/**
+	 * Strategies for progressing the animation in clock(). Sequential walks
+	 * the CarrierShape composition moving each Shape in turn; Packed moves
+	 * the shapes using a PackedShapeEngine; Parallel moves independent
+	 * subtrees of the composition concurrently using fork/join tasks. All
+	 * modes produce identical results.
+	 */
+	public enum ClockMode {Sequential, Packed, Parallel};
+
+	/**
+	 * Default width of the square cells of the SpatialGrids.
+	 */
+	public static final int DEFAULT_CELL_SIZE = 32;
 	
 	// Root of the shape composition.
 	private CarrierShape _root;
@@ -26,6 +52,68 @@ public class ShapeModel {
 	
 	// List of ShapeModelListeners.
 	private List<ShapeModelListener> _listeners;
+
+	// ListenerQueues for the listeners in _listeners, at the same indices,
+	// when asynchronous dispatch is enabled; empty otherwise.
+	private List<ListenerQueue> _queues = new ArrayList<ListenerQueue>();
+
+	// === Asynchronous dispatch settings.
+	private boolean _asyncDispatch;
+
+	private int _queueCapacity;
+
+	private ListenerQueue.OverflowPolicy _overflowPolicy;
+
+	// Executor shared by all queues, null to give each queue its own thread.
+	private Executor _deliveryExecutor;
+	// ===
+
+	// Strategy used by clock().
+	private ClockMode _clockMode = ClockMode.Sequential;
+
+	// Engine holding the shapes' state in ClockMode.Packed.
+	private PackedShapeEngine _engine = new PackedShapeEngine();
+
+	// Mover used in ClockMode.Parallel.
+	private ParallelShapeMover _mover = new ParallelShapeMover();
+
+	// Number of clock() calls made so far.
+	private long _ticks;
+
+	// Simulated time elapsed, in 16.16 fixed-point ticks.
+	private long _time;
+
+	// Buffer through which frames are published, null until requested.
+	private volatile FrameSnapshotBuffer _frames;
+
+	// Cache from which shapes are recorded into frames as images, null if
+	// they are recorded as primitives.
+	private volatile SpriteCache _sprites;
+
+	// Rules reducing the detail in which shapes are recorded into frames,
+	// null to record them in full.
+	private volatile LevelOfDetail _levelOfDetail;
+
+	// Journal recording the operations on this model, null if none.
+	private ShapeJournal _journal;
+
+	// Nesting depth of beginBatch() calls.
+	private int _batchDepth;
+
+	// Events held back until the outermost batch is committed.
+	private List<ShapeModelEvent> _batchedEvents = new ArrayList<ShapeModelEvent>();
+
+	// Width of the cells of the CarrierShapes' SpatialGrids.
+	private int _cellSize = DEFAULT_CELL_SIZE;
+
+	// Whether the SpatialGrids must be rebuilt before they are next used.
+	private boolean _gridsStale = true;
+
+	// Whether clock() bounces overlapping siblings off each other.
+	private boolean _siblingCollisions;
+
+	// Number of overlapping sibling pairs found by the last clock().
+	private int _collisions;
 	
 	
 	/**
@@ -60,6 +148,11 @@ public class ShapeModel {
 		
 		try {
 			parent.add(shape);
+			_engine.unpack();
+			_gridsStale = true;
+			if(_journal != null) {
+				_journal.added(shape);
+			}
 			
 			// Fire event.
 			fire(ShapeModelEvent.makeShapeAddedEvent(shape, this));
@@ -69,6 +162,31 @@ public class ShapeModel {
 		return success;
 	}
 	
+	/**
+	 * Attempts to add each of the specified shapes to a CarrierShape held
+	 * within the ShapeModel, as add() does, and returns the number of shapes
+	 * added. Registered listeners are notified of all additions by a single
+	 * ShapesChanged ShapeModelEvent (or by a ShapeAdded event if only one
+	 * shape was added).
+	 * @param shapes the new shapes to add to this ShapeModel.
+	 * @param parent the intended parent of the new shapes.
+	 */
+	public int addAll(List<? extends Shape> shapes, CarrierShape parent) {
+		int added = 0;
+
+		beginBatch();
+		try {
+			for(Shape shape : shapes) {
+				if(add(shape, parent)) {
+					added++;
+				}
+			}
+		} finally {
+			commitBatch();
+		}
+		return added;
+	}
+	
 	/**
 	 * Attempts to remove the specified Shape from this ShapeModel instance. If
 	 * the shape specified does not have a parent (i.e. it is not part of this
@@ -84,6 +202,11 @@ public class ShapeModel {
 		if(parent != null) {
 			int index = parent.indexOf(shape);
 			parent.remove(shape);
+			_engine.unpack();
+			_gridsStale = true;
+			if(_journal != null) {
+				_journal.removed(parent, index);
+			}
 		
 			// Fire event.
 			fire(ShapeModelEvent.makeShapeRemovedEvent(shape, parent, index, this));
@@ -97,33 +220,510 @@ public class ShapeModel {
 	 * being fired; the event identifies the root CarrierShape.
 	 */
 	public void clock() {
-		_root.move(_bounds.width, _bounds.height);
+		clock(1);
+	}
+
+	/**
+	 * Progresses the animation by dt ticks, moving each Shape by dt times
+	 * its velocity as Shape.move(int, int, double) does, then notifies the
+	 * listeners as clock() does. Driving the model with the real time elapsed
+	 * decouples the speed of the animation from the rate at which it is
+	 * clocked: a late caller catches up in a single call, and scaling dt
+	 * slows down or speeds up time. The movement depends only on the sequence
+	 * of time steps, whichever ClockMode is used.
+	 * @throws IllegalArgumentException if dt is negative, NaN or greater
+	 *         than Shape.MAX_TIME_STEP.
+	 */
+	public void clock(double dt) {
+		int step = Shape.timeStep(dt);
+		if(_clockMode == ClockMode.Packed) {
+			// (Re)pack the composition if it has changed since the last clock().
+			if(!_engine.isPacked()) {
+				_engine.pack(_root);
+			}
+			_engine.clock(_bounds.width, _bounds.height, step);
+		} else if(_clockMode == ClockMode.Parallel) {
+			_mover.move(_root, _bounds.width, _bounds.height, step);
+		} else {
+			_root.advance(_bounds.width, _bounds.height, step);
+		}
+		_ticks++;
+		_time += step;
+
+		if(_siblingCollisions) {
+			_collisions = updateGrids(_root, true);
+			_gridsStale = false;
+		} else {
+			_gridsStale = true;
+		}
+
+		if(_journal != null) {
+			_journal.clocked(step);
+		}
+
+		// Publish the new frame if anyone has asked for frames.
+		FrameSnapshotBuffer frames = _frames;
+		if(frames != null) {
+			SnapshotPainter painter = new SnapshotPainter(frames.beginWrite(_ticks), _sprites);
+			LevelOfDetail detail = _levelOfDetail;
+			if(detail != null) {
+				painter.setLevelOfDetail(detail);
+				detail.beginFrame();
+			}
+			_root.doPaint(painter);
+			if(detail != null) {
+				detail.endFrame();
+			}
+			frames.publish();
+		}
 		
 		// Fire event.
 		fire(ShapeModelEvent.makeShapeMovedEvent(_root, this));
 	}
 
+	/**
+	 * Starts a batch of changes. Until the matching commitBatch() call,
+	 * ShapeModelEvents are held back rather than fired. Batches may be nested;
+	 * only committing the outermost batch fires an event.
+	 */
+	public void beginBatch() {
+		_batchDepth++;
+	}
+
+	/**
+	 * Ends a batch of changes started by beginBatch(). Committing the
+	 * outermost batch fires the held back events as one ShapesChanged
+	 * ShapeModelEvent, or fires the only held back event as it is.
+	 * @throws IllegalStateException if no batch has been started.
+	 */
+	public void commitBatch() {
+		if(_batchDepth == 0) {
+			throw new IllegalStateException();
+		}
+		_batchDepth--;
+
+		if(_batchDepth == 0 && !_batchedEvents.isEmpty()) {
+			ShapeModelEvent event;
+			if(_batchedEvents.size() == 1) {
+				event = _batchedEvents.get(0);
+			} else {
+				event = ShapeModelEvent.makeShapesChangedEvent(
+						new ArrayList<ShapeModelEvent>(_batchedEvents), this);
+			}
+			_batchedEvents.clear();
+			fire(event);
+		}
+	}
+
+	/**
+	 * Returns the number of clock() calls made on this ShapeModel.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns the simulated time elapsed, in ticks: the sum of the time
+	 * steps of the clock() calls made on this ShapeModel.
+	 */
+	public double time() {
+		return _time / (double)Shape.ONE;
+	}
+
+	/*
+	 * Returns the simulated time elapsed in 16.16 fixed-point ticks.
+	 */
+	long fixedTime() {
+		return _time;
+	}
+
+	/*
+	 * Sets the number of clock() calls made and the simulated time elapsed,
+	 * e.g. when a ShapeJournalReplayer restores a keyframe.
+	 */
+	void restoreClock(long ticks, long fixedTime) {
+		_ticks = ticks;
+		_time = fixedTime;
+	}
+
+	/**
+	 * Starts recording every subsequent operation on this ShapeModel into a
+	 * ShapeJournal, beginning with a keyframe of the current composition, so
+	 * that a ShapeJournalReplayer can reproduce the session. The journal
+	 * should be closed once recording is finished.
+	 * @throws IllegalStateException if the journal is already recording
+	 *         this or another ShapeModel.
+	 */
+	public void setJournal(ShapeJournal journal) {
+		journal.attach(this);
+		_journal = journal;
+	}
+
+	/**
+	 * Returns the FrameSnapshotBuffer through which this ShapeModel publishes
+	 * an immutable FrameSnapshot of the whole composition after each clock()
+	 * call. Frames are only recorded once this method has been called.
+	 */
+	public FrameSnapshotBuffer frames() {
+		if(_frames == null) {
+			synchronized(this) {
+				if(_frames == null) {
+					_frames = new FrameSnapshotBuffer();
+				}
+			}
+		}
+		return _frames;
+	}
+
+	/**
+	 * Sets the SpriteCache from which shapes are recorded into published
+	 * frames, as images, or null to record their primitives. No SpriteCache
+	 * is used by default.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
+	}
+
+	/**
+	 * Sets the LevelOfDetail applied to shapes as they are recorded into
+	 * published frames, or null to record them in full. A view showing part
+	 * of the world can cull the rest by setting the LevelOfDetail's clip.
+	 * Shapes are recorded in full by default.
+	 */
+	public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+		_levelOfDetail = levelOfDetail;
+	}
+
+	/**
+	 * Enables or disables collisions between siblings. When enabled, each
+	 * clock() call ends by bouncing off each other any two Shapes with the
+	 * same parent whose bounding boxes overlap, as an elastic collision
+	 * between equal masses. Collisions are disabled by default.
+	 */
+	public void setSiblingCollisions(boolean enabled) {
+		_siblingCollisions = enabled;
+		if(_journal != null) {
+			_journal.collisionsSet(enabled);
+		}
+	}
+
+	/**
+	 * Returns true if collisions between siblings are enabled.
+	 */
+	public boolean siblingCollisions() {
+		return _siblingCollisions;
+	}
+
+	/**
+	 * Returns the number of overlapping pairs of siblings found by the last
+	 * clock() call, 0 if sibling collisions are disabled.
+	 */
+	public int collisions() {
+		return _siblingCollisions ? _collisions : 0;
+	}
+
+	/**
+	 * Sets the width of the square cells of the SpatialGrids. Cells should be
+	 * roughly as large as a typical Shape.
+	 * @throws IllegalArgumentException if cellSize is less than one.
+	 */
+	public void setCellSize(int cellSize) {
+		if(cellSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_cellSize = cellSize;
+		_gridsStale = true;
+		if(_journal != null) {
+			_journal.cellSizeSet(cellSize);
+		}
+	}
+
+	/**
+	 * Returns the width of the square cells of the SpatialGrids.
+	 */
+	public int cellSize() {
+		return _cellSize;
+	}
+
+	/**
+	 * Returns the Shape painted topmost at the specified point of the
+	 * animation area, or null if there is none. Where the point falls within
+	 * a CarrierShape, the search continues among its children, so the
+	 * deepest Shape at the point is returned.
+	 */
+	public Shape shapeAt(int x, int y) {
+		ensureGrids();
+		return shapeAt(_root, x, y);
+	}
+
+	/**
+	 * Returns, in painting order, every Shape in this ShapeModel, at any
+	 * depth, whose bounding box intersects the specified rectangle of the
+	 * animation area. The root CarrierShape is not included.
+	 */
+	public List<Shape> shapesIn(int x, int y, int width, int height) {
+		List<Shape> result = new ArrayList<Shape>();
+
+		ensureGrids();
+		shapesIn(_root, x, y, width, height, result);
+		return result;
+	}
+
+	/**
+	 * Returns, in painting order, the siblings of the specified Shape whose
+	 * bounding boxes overlap its own. Returns an empty list if the Shape has
+	 * no parent.
+	 */
+	public List<Shape> overlapping(Shape shape) {
+		List<Shape> result = new ArrayList<Shape>();
+		CarrierShape parent = shape.parent();
+
+		if(parent != null) {
+			ensureGrids();
+			parent._grid.query(shape.x(), shape.y(), shape.width(), shape.height(), result);
+			result.remove(shape);
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the strategy used by clock() to move the shapes. Leaving
+	 * ClockMode.Packed copies the shapes' state back into the Shape objects.
+	 */
+	public void setClockMode(ClockMode mode) {
+		if(mode != ClockMode.Packed) {
+			_engine.unpack();
+		}
+		_clockMode = mode;
+	}
+
+	/**
+	 * Returns the strategy used by clock() to move the shapes.
+	 */
+	public ClockMode clockMode() {
+		return _clockMode;
+	}
+
+	/**
+	 * Sets the largest number of children of a CarrierShape that are moved
+	 * by a single task in ClockMode.Parallel. Larger child lists are split
+	 * into ranges that are moved concurrently.
+	 * @throws IllegalArgumentException if threshold is less than one.
+	 */
+	public void setSequentialThreshold(int threshold) {
+		_mover.setSequentialThreshold(threshold);
+	}
+
+	/**
+	 * Returns the largest number of children moved by a single task in
+	 * ClockMode.Parallel.
+	 */
+	public int sequentialThreshold() {
+		return _mover.sequentialThreshold();
+	}
+
 	/**
 	 * Registers a ShapeModelListener on this ShapeModel object.
 	 */
 	public void addShapeModelListener(ShapeModelListener listener) {
 		_listeners.add(listener);
+		if(_asyncDispatch) {
+			_queues.add(createQueue(listener));
+		}
 	}
 	
 	/**
 	 * Deregisters a ShapeModelListener from this ShapeModel object.
 	 */
 	public void removeShapeModelListener(ShapeModelListener listener) {
-		_listeners.remove(listener);
+		int index = _listeners.indexOf(listener);
+		if(index >= 0) {
+			_listeners.remove(index);
+			if(_asyncDispatch) {
+				releaseQueue(_queues.remove(index));
+			}
+		}
+	}
+
+	/**
+	 * Enables asynchronous dispatch. Each registered listener, and each
+	 * listener registered later, is given its own ListenerQueue and events
+	 * are delivered to it on a dedicated daemon thread. Firing an event then
+	 * only waits for a listener if that listener's queue is full and the
+	 * overflow policy cannot make room.
+	 * @param capacity the maximum number of events queued per listener.
+	 * @param policy what to do with an event that arrives at a full queue.
+	 */
+	public void setAsyncDispatch(int capacity, ListenerQueue.OverflowPolicy policy) {
+		setAsyncDispatch(capacity, policy, null);
+	}
+
+	/**
+	 * Enables asynchronous dispatch as setAsyncDispatch(int, OverflowPolicy)
+	 * does, but delivers events using the specified Executor, e.g. one that
+	 * runs tasks on the Event Dispatch thread. Each listener still has its
+	 * own queue and receives its events one at a time, in order.
+	 */
+	public void setAsyncDispatch(int capacity, ListenerQueue.OverflowPolicy policy, Executor executor) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		setSynchronousDispatch();
+
+		_asyncDispatch = true;
+		_queueCapacity = capacity;
+		_overflowPolicy = policy;
+		_deliveryExecutor = executor;
+
+		for(ShapeModelListener listener : _listeners) {
+			_queues.add(createQueue(listener));
+		}
+	}
+
+	/**
+	 * Disables asynchronous dispatch, so that events are again delivered to
+	 * each listener before fire returns. Events that are still queued are
+	 * delivered by the queues' threads.
+	 */
+	public void setSynchronousDispatch() {
+		for(ListenerQueue queue : _queues) {
+			releaseQueue(queue);
+		}
+		_queues.clear();
+		_asyncDispatch = false;
+	}
+
+	/**
+	 * Returns the ListenerQueue through which events are dispatched to the
+	 * specified listener, or null if dispatch is synchronous or the listener
+	 * is not registered. The ListenerQueue reports its depth and the number
+	 * of events it has dropped.
+	 */
+	public ListenerQueue listenerQueue(ShapeModelListener listener) {
+		int index = _listeners.indexOf(listener);
+		if(!_asyncDispatch || index < 0) {
+			return null;
+		}
+		return _queues.get(index);
 	}
 	
 	/*
 	 * Iterates through registered ShapeModelListeners and fires a 
-	 * ShapeModelEvent to each in turn.
+	 * ShapeModelEvent to each in turn. During a batch the event is held back
+	 * instead.
 	 */
 	private void fire(ShapeModelEvent event) {
-		for(ShapeModelListener listener : _listeners) {
-			listener.update(event);
+		if(_batchDepth > 0) {
+			_batchedEvents.add(event);
+			return;
+		}
+		if(_asyncDispatch) {
+			for(ListenerQueue queue : _queues) {
+				queue.update(event);
+			}
+		} else {
+			for(ShapeModelListener listener : _listeners) {
+				listener.update(event);
+			}
+		}
+	}
+
+	/*
+	 * Rebuilds the SpatialGrids if shapes have moved or the composition has
+	 * changed since they were last built.
+	 */
+	private void ensureGrids() {
+		if(_gridsStale) {
+			updateGrids(_root, false);
+			_gridsStale = false;
+		}
+	}
+
+	/*
+	 * Rebuilds the SpatialGrids of a CarrierShape and of the CarrierShapes
+	 * below it, optionally resolving collisions between siblings. Returns the
+	 * number of overlapping pairs of siblings found.
+	 */
+	private int updateGrids(CarrierShape carrier, boolean collide) {
+		int collisions = 0;
+
+		if(carrier._grid == null) {
+			carrier._grid = new SpatialGrid(carrier, _cellSize);
+		} else {
+			carrier._grid.setCellSize(_cellSize);
+		}
+		carrier._grid.rebuild();
+		if(collide) {
+			collisions = carrier._grid.resolveCollisions();
+		}
+
+		for(int i = 0; i < carrier.shapeCount(); i++) {
+			Shape child = carrier.shapeAt(i);
+			if(child instanceof CarrierShape) {
+				collisions += updateGrids((CarrierShape)child, collide);
+			}
+		}
+		return collisions;
+	}
+
+	/*
+	 * Returns the deepest Shape within a CarrierShape at a point given
+	 * relative to the CarrierShape.
+	 */
+	private Shape shapeAt(CarrierShape carrier, int x, int y) {
+		Shape shape = carrier._grid.shapeAt(x, y);
+
+		if(shape instanceof CarrierShape) {
+			Shape child = shapeAt((CarrierShape)shape, x - shape.x(), y - shape.y());
+			if(child != null) {
+				return child;
+			}
+		}
+		return shape;
+	}
+
+	/*
+	 * Adds the Shapes within a CarrierShape that intersect a rectangle given
+	 * relative to the CarrierShape.
+	 */
+	private void shapesIn(CarrierShape carrier, int x, int y, int width, int height, List<Shape> result) {
+		List<Shape> children = new ArrayList<Shape>();
+		carrier._grid.query(x, y, width, height, children);
+
+		for(Shape shape : children) {
+			result.add(shape);
+			if(shape instanceof CarrierShape) {
+				shapesIn((CarrierShape)shape, x - shape.x(), y - shape.y(), width, height, result);
+			}
+		}
+	}
+
+	/*
+	 * Creates a ListenerQueue for a listener using the current asynchronous
+	 * dispatch settings.
+	 */
+	private ListenerQueue createQueue(ShapeModelListener listener) {
+		Executor executor = _deliveryExecutor;
+
+		if(executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "ShapeModelListener delivery");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return new ListenerQueue(listener, _queueCapacity, _overflowPolicy, executor);
+	}
+
+	/*
+	 * Stops the thread of a ListenerQueue created by createQueue() once it
+	 * has delivered any events still queued.
+	 */
+	private void releaseQueue(ListenerQueue queue) {
+		if(_deliveryExecutor == null) {
+			((ExecutorService)queue.executor()).shutdown();
 		}
 	}
 }
@@ -1,5 +1,8 @@
 package spaceshapes;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class to describe a change to the state of a ShapeModel object. An instance
  * of ShapeModelEvent is sent in a notification message (an update() call) by a
@@ -10,8 +13,9 @@ package spaceshapes;
  */
 public class ShapeModelEvent {
 
-	// Set of event types.
-	public enum EventType {ShapeAdded, ShapeRemoved, ShapeMoved};
+	// Set of event types. A ShapesChanged event is a compound event that
+	// carries the events of a batch of changes, see changes().
+	public enum EventType {ShapeAdded, ShapeRemoved, ShapeMoved, ShapesChanged};
 	
 	private EventType _type;      // Type of event.
 	private Shape _operand;       // Shape to which the event relates.
@@ -21,6 +25,8 @@ public class ShapeModelEvent {
 	private CarrierShape _parent; // Parent CarrierShape of fOperand; for 
 	                              // ShapeRemoved events this is the former 
 	                              // parent of fOperand.
+	private List<ShapeModelEvent> _changes; // Events combined by a
+	                              // ShapesChanged event, empty otherwise.
 	                    
 	/**
 	 * Creates a ShapeAdded ShapeModelEvent.
@@ -69,6 +75,19 @@ public class ShapeModelEvent {
 		return new ShapeModelEvent(EventType.ShapeMoved, shapeMoved, parent, index, source);
 	}
 	
+	/**
+	 * Creates a ShapesChanged ShapeModelEvent that combines a batch of
+	 * ShapeAdded, ShapeRemoved and ShapeMoved events.
+	 * @param changes the combined events, in the order the changes were made.
+	 * @param source the ShapeModel object that fires the event.
+	 */
+	public static ShapeModelEvent makeShapesChangedEvent(
+			List<ShapeModelEvent> changes, ShapeModel source) {
+		ShapeModelEvent event = new ShapeModelEvent(EventType.ShapesChanged, null, null, -1, source);
+		event._changes = Collections.unmodifiableList(changes);
+		return event;
+	}
+	
 	/*
 	 * Hidden constructor used by the static factory methods. 
 	 */
@@ -78,18 +97,20 @@ public class ShapeModelEvent {
 		_parent = parent;
 		_index = index;
 		_source = source;
+		_changes = Collections.emptyList();
 	}
 	
 	/**
 	 * Returns the type of the event, one of ShapeAdded, ShapeRemoved, 
-	 * ShapeMoved.
+	 * ShapeMoved, ShapesChanged.
 	 */
 	public EventType eventType() {
 		return _type;
 	}
 	
 	/**
-	 * Returns the Shape object to which this ShapeModelEvent applies.
+	 * Returns the Shape object to which this ShapeModelEvent applies, null
+	 * for a ShapesChanged event.
 	 */
 	public Shape operand() {
 		return _operand;
@@ -123,4 +144,13 @@ public class ShapeModelEvent {
 	public int index() {
 		return _index;
 	}
+
+	/**
+	 * Returns the ShapeAdded, ShapeRemoved and ShapeMoved events combined by
+	 * a ShapesChanged event, in the order the changes were made. For other
+	 * types of event this method returns an empty list.
+	 */
+	public List<ShapeModelEvent> changes() {
+		return _changes;
+	}
 }
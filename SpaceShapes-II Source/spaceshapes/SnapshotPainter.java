@@ -0,0 +1,147 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.Image;
+
+/**
+ * Implementation of the Painter interface that records painting requests
+ * into a FrameSnapshot instead of painting. Translations are applied as the
+ * requests are recorded, so the FrameSnapshot holds world coordinates.
+ */
+class SnapshotPainter implements Painter {
+
+	// Initial colour, matching that of a GraphicsPainter.
+	private static final Color DEFAULT_COLOUR = new Color(212, 212, 212);
+
+	private FrameSnapshot _snapshot;
+
+	private Color _colour = DEFAULT_COLOUR;
+
+	// Cache of shape images, null if shapes are always painted.
+	private SpriteCache _sprites;
+
+	// Rules reducing the detail of shapes, null if they are painted in full.
+	private LevelOfDetail _levelOfDetail;
+
+	// Accumulated translation.
+	private int _translateX;
+	private int _translateY;
+
+	/**
+	 * Creates a SnapshotPainter that records into the specified FrameSnapshot.
+	 */
+	SnapshotPainter(FrameSnapshot snapshot) {
+		this(snapshot, null);
+	}
+
+	/**
+	 * Creates a SnapshotPainter that records into the specified FrameSnapshot,
+	 * recording shapes held by a SpriteCache as images. The SpriteCache may
+	 * be null.
+	 */
+	SnapshotPainter(FrameSnapshot snapshot, SpriteCache sprites) {
+		_snapshot = snapshot;
+		_sprites = sprites;
+	}
+
+	/**
+	 * Records a rectangle.
+	 */
+	public void drawRect(int x, int y, int width, int height) {
+		_snapshot.add(FrameSnapshot.RECTANGLE, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Records an oval.
+	 */
+	public void drawOval(int x, int y, int width, int height) {
+		_snapshot.add(FrameSnapshot.OVAL, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Records a line.
+	 */
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		_snapshot.add(FrameSnapshot.LINE, x1 + _translateX, y1 + _translateY,
+				x2 + _translateX, y2 + _translateY, _colour, null, null);
+	}
+
+	/**
+	 * Records a polygon.
+	 */
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_snapshot.addPolygon(FrameSnapshot.POLYGON, xPoints, yPoints, nPoints, _translateX, _translateY, _colour);
+	}
+
+	/**
+	 * Records a solid polygon.
+	 */
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		_snapshot.addPolygon(FrameSnapshot.SOLID_POLYGON, xPoints, yPoints, nPoints, _translateX, _translateY, _colour);
+	}
+
+	/**
+	 * Records a solid rectangle of the painters color
+	 */
+	public void fillRect(int x, int y, int width, int height) {
+		_snapshot.add(FrameSnapshot.SOLID_RECTANGLE, x + _translateX, y + _translateY, width, height, _colour, null, null);
+	}
+
+	/**
+	 * Gives the current color of the painter
+	 */
+	public Color getColor() {
+		return _colour;
+	}
+
+	/**
+	 * Sets a new color for the painter
+	 */
+	public void setColor(Color color) {
+		_colour = color;
+	}
+
+	/**
+	 * Translates the origin of the canvas
+	 */
+	public void translate(int x, int y) {
+		_translateX += x;
+		_translateY += y;
+	}
+
+	/**
+	 * Records text to be drawn in the middle of the shape
+	 */
+	public void drawCentredText(int x, int y, int width, int height, String text) {
+		_snapshot.add(FrameSnapshot.TEXT, x + _translateX, y + _translateY, width, height, _colour, text, null);
+	}
+
+	/**
+	 * Records an image.
+	 */
+	public void drawImage(Image img, int x, int y, int width, int height) {
+		_snapshot.add(FrameSnapshot.IMAGE, x + _translateX, y + _translateY, width, height, _colour, null, img);
+	}
+
+	/**
+	 * Records the image of a shape from the SpriteCache, if there is one.
+	 */
+	public boolean drawSprite(Shape shape) {
+		return _sprites != null && _sprites.draw(shape, this);
+	}
+
+	/**
+	 * Sets the LevelOfDetail that shapes are recorded with, or null to
+	 * paint them in full.
+	 */
+	public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+		_levelOfDetail = levelOfDetail;
+	}
+
+	/**
+	 * Returns the LevelOfDetail set, or null.
+	 */
+	public LevelOfDetail levelOfDetail() {
+		return _levelOfDetail;
+	}
+}
@@ -0,0 +1,284 @@
+package spaceshapes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over the area of one CarrierShape, indexing the CarrierShape's
+ * children by the cells their bounding boxes cover. Coordinates are those in
+ * which the children move, i.e. relative to the CarrierShape's top left
+ * corner.
+ *
+ * The grid is rebuilt from scratch with a counting sort, in time linear in
+ * the number of children and cells. Rectangle and point queries then only
+ * examine the children registered in the cells the query covers, and
+ * overlapping pairs of children are found by comparing children that share a
+ * cell rather than every pair.
+ */
+class SpatialGrid {
+
+	private final CarrierShape _carrier;
+
+	private int _cellSize;
+
+	private int _columns;
+
+	private int _rows;
+
+	private int _shapeCount;
+
+	/*
+	 * Children indices registered in cell c occupy _entries[_cellStart[c]]
+	 * to _entries[_cellStart[c + 1] - 1], in ascending order.
+	 */
+	private int[] _cellStart = new int[2];
+
+	private int[] _entries = new int[16];
+
+	// Scratch array used to fill the cells while rebuilding.
+	private int[] _cellFill = new int[1];
+
+	// === Query state, used to report each child once per query.
+	private int[] _marks = new int[16];
+
+	private int _stamp;
+
+	private int[] _hits = new int[16];
+	// ===
+
+	/**
+	 * Creates an empty SpatialGrid for the children of carrier, with square
+	 * cells cellSize wide.
+	 */
+	SpatialGrid(CarrierShape carrier, int cellSize) {
+		if(cellSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_carrier = carrier;
+		_cellSize = cellSize;
+	}
+
+	/**
+	 * Sets the width of the cells. Takes effect at the next rebuild().
+	 */
+	void setCellSize(int cellSize) {
+		if(cellSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_cellSize = cellSize;
+	}
+
+	/**
+	 * Reindexes the CarrierShape's children at their current positions.
+	 */
+	void rebuild() {
+		_shapeCount = _carrier.shapeCount();
+		_columns = Math.max(1, (_carrier.width() + _cellSize - 1) / _cellSize);
+		_rows = Math.max(1, (_carrier.height() + _cellSize - 1) / _cellSize);
+
+		int cells = _columns * _rows;
+		if(_cellStart.length < cells + 1) {
+			_cellStart = new int[cells + 1];
+			_cellFill = new int[cells];
+		} else {
+			Arrays.fill(_cellStart, 0, cells + 1, 0);
+		}
+		if(_marks.length < _shapeCount) {
+			_marks = new int[_shapeCount];
+			_stamp = 0;
+		}
+
+		// Count the children covering each cell.
+		for(int i = 0; i < _shapeCount; i++) {
+			Shape shape = _carrier.shapeAt(i);
+			int left = column(shape.x());
+			int right = column(shape.x() + Math.max(1, shape.width()) - 1);
+			int top = row(shape.y());
+			int bottom = row(shape.y() + Math.max(1, shape.height()) - 1);
+
+			for(int r = top; r <= bottom; r++) {
+				for(int c = left; c <= right; c++) {
+					_cellStart[r * _columns + c + 1]++;
+				}
+			}
+		}
+
+		for(int c = 0; c < cells; c++) {
+			_cellStart[c + 1] += _cellStart[c];
+		}
+		if(_entries.length < _cellStart[cells]) {
+			_entries = new int[_cellStart[cells]];
+		}
+		System.arraycopy(_cellStart, 0, _cellFill, 0, cells);
+
+		// Register the children, in order, in each cell they cover.
+		for(int i = 0; i < _shapeCount; i++) {
+			Shape shape = _carrier.shapeAt(i);
+			int left = column(shape.x());
+			int right = column(shape.x() + Math.max(1, shape.width()) - 1);
+			int top = row(shape.y());
+			int bottom = row(shape.y() + Math.max(1, shape.height()) - 1);
+
+			for(int r = top; r <= bottom; r++) {
+				for(int c = left; c <= right; c++) {
+					_entries[_cellFill[r * _columns + c]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds to result, in painting order, the children whose bounding boxes
+	 * intersect the specified rectangle.
+	 */
+	void query(int x, int y, int width, int height, List<Shape> result) {
+		int count = 0;
+		int stamp = nextStamp();
+
+		int left = column(x);
+		int right = column(x + Math.max(1, width) - 1);
+		int top = row(y);
+		int bottom = row(y + Math.max(1, height) - 1);
+
+		for(int r = top; r <= bottom; r++) {
+			for(int c = left; c <= right; c++) {
+				int cell = r * _columns + c;
+				for(int e = _cellStart[cell]; e < _cellStart[cell + 1]; e++) {
+					int index = _entries[e];
+					if(_marks[index] != stamp) {
+						_marks[index] = stamp;
+						if(intersects(_carrier.shapeAt(index), x, y, width, height)) {
+							if(count == _hits.length) {
+								_hits = Arrays.copyOf(_hits, count * 2);
+							}
+							_hits[count++] = index;
+						}
+					}
+				}
+			}
+		}
+
+		Arrays.sort(_hits, 0, count);
+		for(int i = 0; i < count; i++) {
+			result.add(_carrier.shapeAt(_hits[i]));
+		}
+	}
+
+	/**
+	 * Returns the topmost (i.e. last painted) child whose bounding box
+	 * contains the specified point, or null if there is none.
+	 */
+	Shape shapeAt(int x, int y) {
+		int cell = row(y) * _columns + column(x);
+
+		// Entries are in ascending order, so search from the end.
+		for(int e = _cellStart[cell + 1] - 1; e >= _cellStart[cell]; e--) {
+			Shape shape = _carrier.shapeAt(_entries[e]);
+			if(intersects(shape, x, y, 1, 1)) {
+				return shape;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds each pair of children whose bounding boxes overlap and bounces
+	 * them off each other as an elastic collision between equal masses:
+	 * along the axis on which they overlap least, the two children exchange
+	 * their velocities, provided they are approaching each other along it.
+	 * Returns the number of overlapping pairs found.
+	 */
+	int resolveCollisions() {
+		int pairs = 0;
+
+		for(int r = 0; r < _rows; r++) {
+			for(int c = 0; c < _columns; c++) {
+				int cell = r * _columns + c;
+				int end = _cellStart[cell + 1];
+
+				for(int i = _cellStart[cell]; i < end; i++) {
+					Shape a = _carrier.shapeAt(_entries[i]);
+
+					for(int j = i + 1; j < end; j++) {
+						Shape b = _carrier.shapeAt(_entries[j]);
+						if(!intersects(a, b.x(), b.y(), b.width(), b.height())) {
+							continue;
+						}
+
+						// A pair sharing several cells is handled only in the
+						// cell holding the top left corner of their overlap.
+						int overlapLeft = Math.max(a.x(), b.x());
+						int overlapTop = Math.max(a.y(), b.y());
+						if(column(overlapLeft) == c && row(overlapTop) == r) {
+							pairs++;
+							bounce(a, b);
+						}
+					}
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/*
+	 * Exchanges the velocities of two overlapping shapes along the axis of
+	 * least overlap if they are approaching each other along that axis.
+	 */
+	private static void bounce(Shape a, Shape b) {
+		int overlapX = Math.min(a.x() + a.width(), b.x() + b.width()) - Math.max(a.x(), b.x());
+		int overlapY = Math.min(a.y() + a.height(), b.y() + b.height()) - Math.max(a.y(), b.y());
+
+		if(overlapX <= overlapY) {
+			// Twice the distance between the centres, to stay in integers.
+			int separation = (2 * b.x() + b.width()) - (2 * a.x() + a.width());
+			if(separation * (b.deltaX() - a.deltaX()) < 0) {
+				int deltaX = a.deltaX();
+				a.setDelta(b.deltaX(), a.deltaY());
+				b.setDelta(deltaX, b.deltaY());
+			}
+		} else {
+			int separation = (2 * b.y() + b.height()) - (2 * a.y() + a.height());
+			if(separation * (b.deltaY() - a.deltaY()) < 0) {
+				int deltaY = a.deltaY();
+				a.setDelta(a.deltaX(), b.deltaY());
+				b.setDelta(b.deltaX(), deltaY);
+			}
+		}
+	}
+
+	/*
+	 * Returns true if the bounding box of shape intersects the specified
+	 * rectangle.
+	 */
+	private static boolean intersects(Shape shape, int x, int y, int width, int height) {
+		return shape.x() < x + width && x < shape.x() + shape.width()
+				&& shape.y() < y + height && y < shape.y() + shape.height();
+	}
+
+	/*
+	 * Returns the column holding the specified x position, clamped to the
+	 * grid.
+	 */
+	private int column(int x) {
+		return Math.max(0, Math.min(_columns - 1, x / _cellSize));
+	}
+
+	/*
+	 * Returns the row holding the specified y position, clamped to the grid.
+	 */
+	private int row(int y) {
+		return Math.max(0, Math.min(_rows - 1, y / _cellSize));
+	}
+
+	/*
+	 * Returns a stamp not yet used in _marks, clearing _marks when the
+	 * stamps wrap around.
+	 */
+	private int nextStamp() {
+		if(++_stamp == 0) {
+			Arrays.fill(_marks, 0);
+			_stamp = 1;
+		}
+		return _stamp;
+	}
+}
@@ -0,0 +1,237 @@
+package spaceshapes;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache of raster images, or sprites, of Shapes whose appearance depends on
+ * little more than their size and colour. A Shape offered to a SpriteCache
+ * is rasterised once per distinct appearance - its class, width, height,
+ * the painter's colour and the state returned by Shape.spriteState() - and
+ * thereafter drawn by stamping the sprite with Painter.drawImage(), so
+ * curves and polygons are not rasterised again every frame.
+ *
+ * The sprites held are bounded by a memory budget; when it is exceeded the
+ * least recently used sprites are evicted. A Shape's text is not part of its
+ * sprite: it is drawn as usual, with the glyphs cached by TextLayoutCache.
+ *
+ * A SpriteCache may be used by several threads at once.
+ */
+public class SpriteCache {
+
+	/**
+	 * Default memory budget of a SpriteCache, in bytes.
+	 */
+	public static final long DEFAULT_BUDGET = 8L << 20;
+
+	// Bytes per pixel of a sprite.
+	private static final int PIXEL_BYTES = 4;
+
+	/*
+	 * Key of a sprite: the appearance of a Shape.
+	 */
+	private static final class Key {
+		private final Class<?> _class;
+		private final int _width;
+		private final int _height;
+		private final Color _colour;
+		private final Object _state;
+
+		Key(Class<?> shapeClass, int width, int height, Color colour, Object state) {
+			_class = shapeClass;
+			_width = width;
+			_height = height;
+			_colour = colour;
+			_state = state;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key)other;
+			return _class == key._class && _width == key._width && _height == key._height
+					&& _colour.equals(key._colour) && _state.equals(key._state);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = _class.hashCode();
+			hash = hash * 31 + _width;
+			hash = hash * 31 + _height;
+			hash = hash * 31 + _colour.hashCode();
+			return hash * 31 + _state.hashCode();
+		}
+	}
+
+	// Sprites in least to most recently used order; guarded by this.
+	private final LinkedHashMap<Key, BufferedImage> _sprites = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+
+	private final long _budget;
+
+	// Bytes held by the sprites.
+	private long _bytes;
+
+	private long _hits;
+
+	private long _misses;
+
+	private long _evictions;
+
+	/**
+	 * Creates an empty SpriteCache with the default memory budget.
+	 */
+	public SpriteCache() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Creates an empty SpriteCache that holds sprites of at most budget bytes
+	 * in total. A Shape whose sprite alone would exceed the budget is never
+	 * drawn as a sprite.
+	 * @throws IllegalArgumentException if budget is negative.
+	 */
+	public SpriteCache(long budget) {
+		if(budget < 0) {
+			throw new IllegalArgumentException();
+		}
+		_budget = budget;
+	}
+
+	/**
+	 * Draws a Shape with the specified Painter by stamping its sprite,
+	 * rasterising the sprite first if it is not cached. The Shape's text is
+	 * not drawn. Returns false, having drawn nothing, if the Shape has opted
+	 * out of sprite caching, has no sprite state or is too large; the caller
+	 * should then paint the Shape itself.
+	 */
+	public boolean draw(Shape shape, Painter painter) {
+		if(!shape.isSpriteCached()) {
+			return false;
+		}
+		Object state = shape.spriteState();
+		int width = shape.width();
+		int height = shape.height();
+		if(state == null || width < 0 || height < 0) {
+			return false;
+		}
+
+		BufferedImage sprite = sprite(shape, width, height, painter.getColor(), state);
+		if(sprite == null) {
+			return false;
+		}
+		painter.drawImage(sprite, shape.x(), shape.y(), sprite.getWidth(), sprite.getHeight());
+		return true;
+	}
+
+	/*
+	 * Returns the sprite of a Shape, rasterising and caching it if it is not
+	 * cached, or null if it would exceed the budget.
+	 */
+	private synchronized BufferedImage sprite(Shape shape, int width, int height, Color colour, Object state) {
+		Key key = new Key(shape.getClass(), width, height, colour, state);
+		BufferedImage sprite = _sprites.get(key);
+		if(sprite != null) {
+			_hits++;
+			return sprite;
+		}
+
+		// Outlines extend one pixel to the right of and below the bounds.
+		long bytes = (long)(width + 1) * (height + 1) * PIXEL_BYTES;
+		if(bytes > _budget) {
+			return null;
+		}
+		_misses++;
+		sprite = rasterise(shape, width + 1, height + 1, colour);
+		_sprites.put(key, sprite);
+		_bytes += bytes;
+
+		Iterator<BufferedImage> eldest = _sprites.values().iterator();
+		while(_bytes > _budget) {
+			BufferedImage evicted = eldest.next();
+			eldest.remove();
+			_bytes -= bytes(evicted);
+			_evictions++;
+		}
+		return sprite;
+	}
+
+	/*
+	 * Paints a Shape, less its text, into a new transparent image with its
+	 * top left corner at the image's origin.
+	 */
+	private static BufferedImage rasterise(Shape shape, int width, int height, Color colour) {
+		BufferedImage sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = sprite.createGraphics();
+		try {
+			GraphicsPainter painter = new GraphicsPainter(g);
+			painter.setColor(colour);
+			painter.translate(-shape.x(), -shape.y());
+			shape.paint(painter);
+		} finally {
+			g.dispose();
+		}
+		return sprite;
+	}
+
+	private static long bytes(BufferedImage sprite) {
+		return (long)sprite.getWidth() * sprite.getHeight() * PIXEL_BYTES;
+	}
+
+	/**
+	 * Returns the number of Shapes drawn from a cached sprite.
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Returns the number of sprites rasterised.
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Returns the number of sprites evicted to keep within the budget.
+	 */
+	public synchronized long evictions() {
+		return _evictions;
+	}
+
+	/**
+	 * Returns the number of sprites held.
+	 */
+	public synchronized int size() {
+		return _sprites.size();
+	}
+
+	/**
+	 * Returns the number of bytes held by the sprites.
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Returns the largest number of bytes the sprites may hold.
+	 */
+	public long budget() {
+		return _budget;
+	}
+
+	/**
+	 * Discards every sprite and resets the counters.
+	 */
+	public synchronized void clear() {
+		_sprites.clear();
+		_bytes = 0;
+		_hits = 0;
+		_misses = 0;
+		_evictions = 0;
+	}
+}
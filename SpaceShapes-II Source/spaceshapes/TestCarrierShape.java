@@ -188,6 +188,28 @@ public class TestCarrierShape {
 		assertEquals(-1, _topLevelNest.indexOf(_bottomLevelNest));
 	}
 
+	/**
+	 * Check that removing a Shape closes the gap it leaves, so that the
+	 * Shapes after it report their new index positions.
+	 */
+	@Test
+	public void testIndexOfAfterRemove() {
+		Shape last = new DynamicShape(1, 1, 1, 1, 5, 5);
+		_midLevelNest.add(last);
+
+		_midLevelNest.remove(_bottomLevelNest);
+
+		assertEquals(-1, _midLevelNest.indexOf(_bottomLevelNest));
+		assertFalse(_midLevelNest.contains(_bottomLevelNest));
+		assertEquals(0, _midLevelNest.indexOf(_simpleShape));
+		assertEquals(1, _midLevelNest.indexOf(last));
+		assertSame(last, _midLevelNest.shapeAt(1));
+
+		_midLevelNest.add(_bottomLevelNest);
+		assertEquals(2, _midLevelNest.indexOf(_bottomLevelNest));
+		assertTrue(_midLevelNest.contains(_bottomLevelNest));
+	}
+
 	/**
 	 * Check that Shape's path method correctly returns the path from the root
 	 * CarrierShape object through to the Shape object that path is called on.
@@ -214,6 +236,49 @@ public class TestCarrierShape {
 		assertSame(_topLevelNest, path.get(0));
 	}
 
+	/**
+	 * Check that the path returned by Shape's path method is built once, and
+	 * rebuilt once the Shape or one of its ancestors changes parent.
+	 */
+	@Test
+	public void testPathIsCachedUntilReparented() {
+		List<Shape> path = _simpleShape.path();
+		assertSame(path, _simpleShape.path());
+
+		try {
+			path.remove(0);
+			fail();
+		} catch(UnsupportedOperationException e) {
+			// Expected.
+		}
+
+		_topLevelNest.remove(_midLevelNest);
+		path = _simpleShape.path();
+		assertEquals(2, path.size());
+		assertSame(_midLevelNest, path.get(0));
+		assertEquals(1, _simpleShape.depth());
+	}
+
+	/**
+	 * Check that a Shape's world position and depth account for all of its
+	 * ancestors, and are brought up to date as it moves and changes parent.
+	 */
+	@Test
+	public void testAbsolutePosition() {
+		CarrierShape carrier = new CarrierShape(20, 30, 2, 2, 40, 40);
+		_topLevelNest.add(carrier);
+		_midLevelNest.remove(_bottomLevelNest);
+		carrier.add(_bottomLevelNest);
+
+		assertEquals(2, _bottomLevelNest.depth());
+		assertEquals(25, _bottomLevelNest.absoluteX());
+		assertEquals(35, _bottomLevelNest.absoluteY());
+
+		_topLevelNest.move(500, 500);
+		assertEquals(new java.awt.Rectangle(31, 41, 10, 10), _bottomLevelNest.absoluteBounds());
+		assertEquals(7, _bottomLevelNest.x());
+	}
+
 	/**
 	 * Test to add text to a shape and make sure that it prints it in the middle.
 	 * This is done through the use of paintTechnique method which uses the template pattern (see more in the Shape class)
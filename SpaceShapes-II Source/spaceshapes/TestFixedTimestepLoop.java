@@ -0,0 +1,124 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that FixedTimestepLoop runs its simulation step at the
+ * requested rate, on its own thread once started.
+ */
+public class TestFixedTimestepLoop {
+
+	// Duration of a step at 200 steps per second.
+	private static final long STEP = 5000000L;
+
+	private ManualClock _clock;
+	private AtomicInteger _steps;
+	private FixedTimestepLoop _loop;
+
+	/**
+	 * Creates a loop running 200 steps per second of a ManualClock's time,
+	 * counting its steps.
+	 */
+	@Before
+	public void setUpLoop() {
+		_clock = new ManualClock();
+		_steps = new AtomicInteger();
+		_loop = new FixedTimestepLoop(new Runnable() {
+			public void run() {
+				_steps.incrementAndGet();
+			}
+		}, 200, _clock);
+	}
+
+	/**
+	 * Checks that a step is run each time one is due, that late steps are
+	 * caught up and that time beyond the catch-up limit is dropped.
+	 */
+	@Test
+	public void testStepRate() {
+		assertEquals(1, _loop.runDueSteps(null));
+		_clock._now = STEP - 1;
+		assertEquals(0, _loop.runDueSteps(null));
+		_clock._now = STEP;
+		assertEquals(1, _loop.runDueSteps(null));
+
+		// Four steps late.
+		_clock._now = 5 * STEP + STEP / 2;
+		assertEquals(4, _loop.runDueSteps(null));
+
+		// A second late: only the last 10 steps' time is caught up.
+		_clock._now += 1000000000L;
+		assertEquals(11, _loop.runDueSteps(null));
+		_clock._now += STEP;
+		assertEquals(1, _loop.runDueSteps(null));
+
+		assertEquals(18, _steps.get());
+		assertEquals(18, _loop.steps());
+	}
+
+	/**
+	 * Checks that the interpolation factor is the fraction of a step elapsed
+	 * since the most recent step was due, clamped to 1.
+	 */
+	@Test
+	public void testAlpha() {
+		assertEquals(0, _loop.alpha(), 0);
+
+		_clock._now = 2 * STEP + STEP / 4;
+		_loop.runDueSteps(null);
+		// The most recent step was due at 2 * STEP.
+		assertEquals(0.25, _loop.alpha(), 1e-9);
+		_clock._now = 2 * STEP + 3 * STEP / 4;
+		assertEquals(0.75, _loop.alpha(), 1e-9);
+
+		// No step has run for longer than a step.
+		_clock._now = 4 * STEP;
+		assertEquals(1, _loop.alpha(), 0);
+	}
+
+	/**
+	 * Checks that a started loop runs its steps off the calling thread, and
+	 * that stopping it stops the thread.
+	 */
+	@Test
+	public void testRunsOnItsOwnThread() throws InterruptedException {
+		final Thread testThread = Thread.currentThread();
+		final boolean[] stepOnTestThread = new boolean[1];
+		final CountDownLatch stepped = new CountDownLatch(3);
+
+		FixedTimestepLoop loop = new FixedTimestepLoop(new Runnable() {
+			public void run() {
+				stepOnTestThread[0] |= Thread.currentThread() == testThread;
+				stepped.countDown();
+			}
+		}, 200);
+
+		loop.start();
+		assertTrue(loop.isRunning());
+		assertTrue(stepped.await(10, TimeUnit.SECONDS));
+		loop.stop();
+
+		assertFalse(stepOnTestThread[0]);
+		assertFalse(loop.isRunning());
+	}
+
+	/*
+	 * Clock whose time is set by the test.
+	 */
+	private static class ManualClock implements FixedTimestepLoop.Clock {
+		private long _now;
+
+		public long nanoTime() {
+			return _now;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the FrameSnapshots published by a ShapeModel through its
+ * FrameSnapshotBuffer.
+ */
+public class TestFrameSnapshot {
+
+	private ShapeModel _model;
+	private CarrierShape _carrier;
+	private FrameSnapshotBuffer _frames;
+
+	/**
+	 * Creates a ShapeModel holding a DynamicShape and a CarrierShape that
+	 * holds a labelled RectangleShape.
+	 */
+	@Before
+	public void setUpModel() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_carrier = new CarrierShape(100, 100, 2, 2, 100, 100);
+
+		_model.add(new DynamicShape(10, 10, 1, 1, 20, 20, Color.RED), _model.root());
+		_model.add(_carrier, _model.root());
+		_model.add(new RectangleShape(10, 20, 1, 1, 30, 30, "label"), _carrier);
+
+		_frames = _model.frames();
+	}
+
+	/**
+	 * Checks that a published frame holds every primitive in world
+	 * coordinates, in painting order.
+	 */
+	@Test
+	public void testFrameContents() {
+		_model.clock();
+		FrameSnapshot frame = _frames.acquire();
+
+		assertEquals(1, frame.frame());
+		MockPainter painter = new MockPainter();
+		frame.paint(painter);
+		assertEquals("Set color to RGB: [212:212:212](rectangle 0,0,500,500)"
+				+ "(rectangle 11,11,20,20)"
+				+ "(rectangle 102,102,100,100)"
+				+ "Drawing text: label at x:128 y:138"
+				+ "(rectangle 113,123,30,30)", painter.toString());
+	}
+
+	/**
+	 * Checks that a polygon is recorded with its vertices in world
+	 * coordinates and its bounding box as its coordinates.
+	 */
+	@Test
+	public void testPolygonContents() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		CarrierShape carrier = new CarrierShape(100, 100, 0, 0, 200, 200);
+		model.add(carrier, model.root());
+		model.add(new HexagonShape(10, 10, 0, 0, 100, 50), carrier);
+		FrameSnapshotBuffer frames = model.frames();
+
+		model.clock();
+		FrameSnapshot frame = frames.acquire();
+
+		assertEquals(3, frame.size());
+		assertEquals(FrameSnapshot.POLYGON, frame.type(2));
+		assertEquals(110, frame.x(2));
+		assertEquals(110, frame.y(2));
+		assertEquals(100, frame.width(2));
+		assertEquals(50, frame.height(2));
+		assertEquals(6, frame.pointCount(2));
+		assertEquals(130, frame.pointX(2, 1));
+		assertEquals(110, frame.pointY(2, 1));
+
+		MockPainter painter = new MockPainter();
+		frame.paint(painter);
+		assertTrue(painter.toString().endsWith("(line 110,135,130,110)(line 130,110,190,110)"
+				+ "(line 190,110,210,135)(line 210,135,190,160)"
+				+ "(line 190,160,130,160)(line 130,160,110,135)"));
+	}
+
+	/**
+	 * Checks that consecutive rectangles of the same colour are painted by
+	 * a single drawRects call.
+	 */
+	@Test
+	public void testRunsArePaintedAsBatches() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		for(int i = 0; i < 5; i++) {
+			model.add(new RectangleShape(i * 50, 0, 0, 0, 20, 20), model.root());
+		}
+		FrameSnapshotBuffer frames = model.frames();
+		model.clock();
+
+		final int[] batches = new int[2];
+		MockPainter painter = new MockPainter() {
+			@Override
+			public void drawRects(int[] coords, int offset, int count) {
+				batches[0]++;
+				batches[1] += count;
+				super.drawRects(coords, offset, count);
+			}
+		};
+		frames.acquire().paint(painter);
+
+		// The root's outline and the five rectangles form one run.
+		assertEquals(1, batches[0]);
+		assertEquals(6, batches[1]);
+		assertTrue(painter.toString().endsWith("(rectangle 150,0,20,20)(rectangle 200,0,20,20)"));
+	}
+
+	/**
+	 * Checks that the frame being read is unaffected by further clock()
+	 * calls until it is acquired again.
+	 */
+	@Test
+	public void testAcquiredFrameIsStable() {
+		_model.clock();
+		FrameSnapshot frame = _frames.acquire();
+		int x = frame.x(1);
+
+		_model.clock();
+		_model.clock();
+		assertEquals(x, frame.x(1));
+
+		FrameSnapshot latest = _frames.acquire();
+		assertEquals(3, latest.frame());
+		assertSame(latest, _frames.acquire());
+	}
+
+	/**
+	 * Checks that FrameSnapshots are reused rather than allocated per frame.
+	 */
+	@Test
+	public void testFramesArePooled() {
+		Map<FrameSnapshot, Boolean> distinct = new IdentityHashMap<FrameSnapshot, Boolean>();
+
+		for(int i = 0; i < 100; i++) {
+			_model.clock();
+			distinct.put(_frames.acquire(), Boolean.TRUE);
+		}
+		assertTrue(distinct.size() <= 3);
+	}
+}
@@ -0,0 +1,146 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that Shapes painted with a LevelOfDetail are culled,
+ * simplified and counted.
+ */
+public class TestLevelOfDetail {
+
+	private LevelOfDetail _detail;
+	private FrameSnapshot _frame;
+	private SnapshotPainter _painter;
+
+	/**
+	 * Creates a LevelOfDetail and a SnapshotPainter that records with it.
+	 */
+	@Before
+	public void setUpPainter() {
+		_detail = new LevelOfDetail();
+		_frame = new FrameSnapshot();
+		_painter = new SnapshotPainter(_frame);
+		_painter.setLevelOfDetail(_detail);
+	}
+
+	/**
+	 * Checks that a Shape outside the clip is culled along with its
+	 * descendants, and that Shapes overlapping the clip are drawn.
+	 */
+	@Test
+	public void testShapesOutsideClipAreCulled() {
+		CarrierShape carrier = new CarrierShape(300, 300, 0, 0, 100, 100);
+		carrier.add(new RectangleShape(10, 10, 0, 0, 20, 20));
+		carrier.add(new OvalShape(30, 30, 0, 0, 20, 20));
+		Shape straddling = new RectangleShape(90, 90, 0, 0, 20, 20);
+		_detail.setClip(new Rectangle(0, 0, 100, 100));
+
+		paint(carrier, straddling);
+
+		assertEquals(1, _frame.size());
+		assertEquals(90, _frame.x(0));
+		assertEquals(1, _detail.culled());
+		assertEquals(1, _detail.drawn());
+	}
+
+	/**
+	 * Checks that ImageRectangleShapes, which paint themselves in their own
+	 * doPaint(), are culled outside the clip and counted.
+	 */
+	@Test
+	public void testImageShapesAreCulled() {
+		BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+		Shape outside = new ImageRectangleShape(200, 0, image);
+		// Moves the shape from (2, 2) to (202, 2).
+		outside.move(500, 500);
+		Shape inside = new ImageRectangleShape(0, 0, image);
+		_detail.setClip(new Rectangle(0, 0, 100, 100));
+
+		paint(outside, inside);
+
+		assertEquals(1, _frame.size());
+		assertEquals(FrameSnapshot.IMAGE, _frame.type(0));
+		assertEquals(1, _detail.culled());
+		assertEquals(1, _detail.drawn());
+	}
+
+	/**
+	 * Checks that a Shape narrower and lower than the point size is drawn as
+	 * a single point, without its descendants.
+	 */
+	@Test
+	public void testTinyShapesAreDrawnAsPoints() {
+		CarrierShape carrier = new CarrierShape(40, 50, 0, 0, 1, 1);
+		carrier.add(new RectangleShape(0, 0, 0, 0, 1, 1));
+		Shape thin = new OvalShape(10, 10, 0, 0, 1, 30);
+
+		paint(carrier, thin);
+
+		assertEquals(2, _frame.size());
+		assertEquals(FrameSnapshot.LINE, _frame.type(0));
+		assertEquals(40, _frame.x(0));
+		assertEquals(50, _frame.y(0));
+		assertEquals(40, _frame.width(0));
+		assertEquals(50, _frame.height(0));
+		assertEquals(FrameSnapshot.OVAL, _frame.type(1));
+		assertEquals(1, _detail.points());
+		assertEquals(1, _detail.drawn());
+	}
+
+	/**
+	 * Checks that the text of Shapes lower than the minimum text height is
+	 * skipped.
+	 */
+	@Test
+	public void testSmallTextIsSkipped() {
+		paint(new RectangleShape(0, 0, 0, 0, 50, 5, "Small"),
+				new RectangleShape(0, 50, 0, 0, 50, 20, "Large"));
+
+		assertEquals(3, _frame.size());
+		assertEquals(FrameSnapshot.TEXT, _frame.type(1));
+		assertEquals("Large", _frame.text(1));
+		assertEquals(1, _detail.textsSkipped());
+	}
+
+	/**
+	 * Checks that a ShapeModel records its frames with its LevelOfDetail,
+	 * whose counts are those of the last frame.
+	 */
+	@Test
+	public void testShapeModelCountsEachFrame() {
+		ShapeModel model = new ShapeModel(new Dimension(400, 400));
+		model.add(new RectangleShape(10, 10, 0, 0, 20, 20), model.root());
+		model.add(new RectangleShape(300, 300, 0, 0, 20, 20), model.root());
+		model.setLevelOfDetail(_detail);
+		FrameSnapshotBuffer frames = model.frames();
+
+		model.clock();
+		assertEquals(3, frames.acquire().size());
+		assertEquals(3, _detail.drawn());
+
+		_detail.setClip(new Rectangle(0, 0, 100, 100));
+		model.clock();
+		// The root overlaps the clip, so is drawn.
+		assertEquals(2, frames.acquire().size());
+		assertEquals(2, _detail.drawn());
+		assertEquals(1, _detail.culled());
+	}
+
+	/*
+	 * Paints Shapes as one frame.
+	 */
+	private void paint(Shape... shapes) {
+		_detail.beginFrame();
+		for(Shape shape : shapes) {
+			shape.doPaint(_painter);
+		}
+		_detail.endFrame();
+	}
+}
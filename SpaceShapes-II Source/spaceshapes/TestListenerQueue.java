@@ -0,0 +1,207 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test ListenerQueue's overflow policies and ShapeModel's
+ * asynchronous dispatch.
+ */
+public class TestListenerQueue {
+
+	private ShapeModel _model;
+	private RectangleShape _first;
+	private RectangleShape _second;
+	private List<ShapeModelEvent> _received;
+	private ShapeModelListener _recorder;
+	private List<Runnable> _tasks;
+	private Executor _manualExecutor;
+
+	/**
+	 * Creates a ShapeModel with two Shapes, a listener that records what it
+	 * receives and an Executor that only runs tasks when told to.
+	 */
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_first = new RectangleShape(10, 10, 1, 1, 20, 20);
+		_second = new RectangleShape(50, 50, 1, 1, 20, 20);
+		_model.add(_first, _model.root());
+		_model.add(_second, _model.root());
+
+		_received = new ArrayList<ShapeModelEvent>();
+		_recorder = new ShapeModelListener() {
+			public void update(ShapeModelEvent event) {
+				_received.add(event);
+			}
+		};
+
+		_tasks = new ArrayList<Runnable>();
+		_manualExecutor = new Executor() {
+			public void execute(Runnable task) {
+				_tasks.add(task);
+			}
+		};
+	}
+
+	/**
+	 * Checks that a full DropOldestMoved queue drops the oldest ShapeMoved
+	 * event and keeps a queued ShapeAdded event in order.
+	 */
+	@Test
+	public void testDropOldestMoved() {
+		ListenerQueue queue = new ListenerQueue(_recorder, 3,
+				ListenerQueue.OverflowPolicy.DropOldestMoved, _manualExecutor);
+
+		ShapeModelEvent added = ShapeModelEvent.makeShapeAddedEvent(_first, _model);
+		ShapeModelEvent moved1 = ShapeModelEvent.makeShapeMovedEvent(_first, _model);
+		ShapeModelEvent moved2 = ShapeModelEvent.makeShapeMovedEvent(_second, _model);
+		ShapeModelEvent moved3 = ShapeModelEvent.makeShapeMovedEvent(_first, _model);
+
+		queue.update(added);
+		queue.update(moved1);
+		queue.update(moved2);
+		queue.update(moved3);
+
+		assertEquals(3, queue.depth());
+		assertEquals(1, queue.dropped());
+		assertEquals(1, _tasks.size());
+
+		_tasks.get(0).run();
+		assertEquals(3, _received.size());
+		assertTrue(_received.get(0) == added);
+		assertTrue(_received.get(1) == moved2);
+		assertTrue(_received.get(2) == moved3);
+		assertEquals(0, queue.depth());
+		assertEquals(3, queue.maxDepth());
+		assertEquals(3, queue.delivered());
+	}
+
+	/**
+	 * Checks that an exception thrown by the listener is passed to the
+	 * delivering thread's UncaughtExceptionHandler, and that later events
+	 * are still delivered.
+	 */
+	@Test
+	public void testFailingListener() {
+		final RuntimeException failure = new IllegalStateException();
+		ListenerQueue queue = new ListenerQueue(new ShapeModelListener() {
+			public void update(ShapeModelEvent event) {
+				_received.add(event);
+				if(_received.size() == 1) {
+					throw failure;
+				}
+			}
+		}, 3, ListenerQueue.OverflowPolicy.Block, _manualExecutor);
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_first, _model));
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_second, _model));
+
+		final List<Throwable> handled = new ArrayList<Throwable>();
+		Thread thread = Thread.currentThread();
+		Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread t, Throwable e) {
+				handled.add(e);
+			}
+		});
+		try {
+			_tasks.get(0).run();
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+
+		assertEquals(1, handled.size());
+		assertTrue(handled.get(0) == failure);
+		assertEquals(2, _received.size());
+		assertEquals(2, queue.delivered());
+	}
+
+	/**
+	 * Checks that consecutive ShapeMoved events for the same Shape are
+	 * coalesced, but not across an intervening event.
+	 */
+	@Test
+	public void testCoalesce() {
+		ListenerQueue queue = new ListenerQueue(_recorder, 10,
+				ListenerQueue.OverflowPolicy.Coalesce, _manualExecutor);
+
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_first, _model));
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_first, _model));
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_second, _model));
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_first, _model));
+
+		assertEquals(3, queue.depth());
+		assertEquals(1, queue.coalesced());
+		assertEquals(0, queue.dropped());
+	}
+
+	/**
+	 * Checks that a full Block queue holds up the caller until the listener
+	 * has taken an event.
+	 */
+	@Test
+	public void testBlock() throws InterruptedException {
+		final ListenerQueue queue = new ListenerQueue(_recorder, 1,
+				ListenerQueue.OverflowPolicy.Block, _manualExecutor);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		queue.update(ShapeModelEvent.makeShapeMovedEvent(_first, _model));
+
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				queue.update(ShapeModelEvent.makeShapeMovedEvent(_second, _model));
+				done.countDown();
+			}
+		});
+		producer.start();
+
+		assertTrue(!done.await(100, TimeUnit.MILLISECONDS));
+
+		_tasks.get(0).run();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		producer.join();
+		// The second event is either delivered by the running task or queued.
+		assertEquals(2, queue.delivered() + queue.depth());
+		assertEquals(0, queue.dropped());
+	}
+
+	/**
+	 * Checks that with asynchronous dispatch enabled ShapeModel delivers
+	 * events through each listener's queue, in order.
+	 */
+	@Test
+	public void testAsyncDispatch() {
+		_model.setAsyncDispatch(100, ListenerQueue.OverflowPolicy.Block, _manualExecutor);
+		_model.addShapeModelListener(_recorder);
+
+		_model.clock();
+		RectangleShape third = new RectangleShape();
+		_model.add(third, _model.root());
+		_model.remove(third);
+
+		assertEquals(0, _received.size());
+		ListenerQueue queue = _model.listenerQueue(_recorder);
+		assertEquals(3, queue.depth());
+
+		_tasks.get(0).run();
+		assertEquals(3, _received.size());
+		assertEquals(ShapeModelEvent.EventType.ShapeMoved, _received.get(0).eventType());
+		assertEquals(ShapeModelEvent.EventType.ShapeAdded, _received.get(1).eventType());
+		assertEquals(ShapeModelEvent.EventType.ShapeRemoved, _received.get(2).eventType());
+
+		_model.setSynchronousDispatch();
+		_model.clock();
+		assertEquals(4, _received.size());
+		assertTrue(_model.listenerQueue(_recorder) == null);
+	}
+}
@@ -0,0 +1,113 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Class to test the default implementations of Painter's polygon and batch
+ * drawing methods.
+ */
+public class TestPainter {
+
+	/**
+	 * Checks that the default fillPolygon() fills the same pixels as
+	 * Graphics.fillPolygon() for a hexagon, a self-intersecting polygon and
+	 * a triangle. Each sloping edge spans an even width and an odd height,
+	 * so none passes exactly through a pixel centre, where rasterisers may
+	 * break ties differently.
+	 */
+	@Test
+	public void testFillPolygonMatchesGraphics() {
+		checkFill(new int[] {10, 30, 40, 30, 10, 0}, new int[] {0, 0, 17, 34, 34, 17});
+		checkFill(new int[] {0, 40, 0, 40}, new int[] {1, 32, 29, 4});
+		checkFill(new int[] {6, 38, 22}, new int[] {2, 2, 35});
+	}
+
+	/**
+	 * Checks that the batch methods default to one call per primitive and
+	 * that drawPolygon() defaults to one line per edge.
+	 */
+	@Test
+	public void testBatchesDrawEachPrimitive() {
+		PixelPainter painter = new PixelPainter();
+		int[] coords = {-1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+		painter.drawRects(coords, 1, 2);
+		painter.drawOvals(coords, 5, 1);
+		painter.drawLines(coords, 1, 3);
+		painter.drawPolygon(new int[] {0, 10, 5}, new int[] {0, 0, 8}, 3);
+		assertEquals("(rect 1,2,3,4)(rect 5,6,7,8)(oval 5,6,7,8)(line 1,2,3,4)(line 5,6,7,8)"
+				+ "(line 9,10,11,12)(line 0,0,10,0)(line 10,0,5,8)(line 5,8,0,0)", painter._log.toString());
+	}
+
+	private static void checkFill(int[] xPoints, int[] yPoints) {
+		BufferedImage expected = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+		// Without normalisation, Java2D fills the pixels whose centres lie
+		// inside the polygon.
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g.setColor(Color.WHITE);
+		g.fillPolygon(xPoints, yPoints, xPoints.length);
+		g.dispose();
+
+		PixelPainter painter = new PixelPainter();
+		painter.fillPolygon(xPoints, yPoints, xPoints.length);
+
+		for(int y = 0; y < 50; y++) {
+			for(int x = 0; x < 50; x++) {
+				assertEquals(x + "," + y, expected.getRGB(x, y), painter._image.getRGB(x, y));
+			}
+		}
+	}
+
+	/*
+	 * Painter that implements only the primitive methods, filling rectangles
+	 * in white on an image and logging the other primitives.
+	 */
+	private static class PixelPainter implements Painter {
+		private final BufferedImage _image = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+		private final StringBuilder _log = new StringBuilder();
+
+		public void drawRect(int x, int y, int width, int height) {
+			_log.append("(rect " + x + "," + y + "," + width + "," + height + ")");
+		}
+
+		public void drawOval(int x, int y, int width, int height) {
+			_log.append("(oval " + x + "," + y + "," + width + "," + height + ")");
+		}
+
+		public void drawLine(int x1, int y1, int x2, int y2) {
+			_log.append("(line " + x1 + "," + y1 + "," + x2 + "," + y2 + ")");
+		}
+
+		public void fillRect(int x, int y, int width, int height) {
+			for(int row = y; row < y + height; row++) {
+				for(int column = x; column < x + width; column++) {
+					_image.setRGB(column, row, 0xFFFFFF);
+				}
+			}
+		}
+
+		public Color getColor() {
+			return Color.WHITE;
+		}
+
+		public void setColor(Color color) {
+		}
+
+		public void translate(int x, int y) {
+		}
+
+		public void drawCentredText(int x, int y, int width, int height, String text) {
+		}
+
+		public void drawImage(Image img, int x, int y, int width, int height) {
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a RenderQueue groups drawing commands by colour without
+ * changing the order of commands that overlap.
+ */
+public class TestRenderQueue {
+
+	private static final String RED = "Set color to RGB: [255:0:0]";
+	private static final String BLUE = "Set color to RGB: [0:0:255]";
+	private static final String DEFAULT = "Set color to RGB: [212:212:212]";
+
+	private RenderQueue _queue;
+	private MockPainter _painter;
+
+	/**
+	 * Creates an empty RenderQueue and a MockPainter to flush it to.
+	 */
+	@Before
+	public void setUpQueue() {
+		_queue = new RenderQueue();
+		_painter = new MockPainter();
+	}
+
+	/**
+	 * Checks that commands that do not overlap are grouped by colour, so
+	 * that each colour is set once.
+	 */
+	@Test
+	public void testSeparateCommandsAreGrouped() {
+		for(int i = 0; i < 3; i++) {
+			_queue.setColor(Color.RED);
+			_queue.drawRect(i * 100, 0, 10, 10);
+			_queue.setColor(Color.BLUE);
+			_queue.drawRect(i * 100, 200, 10, 10);
+		}
+		_queue.setColor(new Color(212, 212, 212));
+		_queue.flush(_painter);
+
+		assertEquals(2, _queue.colourChanges());
+		assertEquals(RED + "(rectangle 0,0,10,10)(rectangle 100,0,10,10)(rectangle 200,0,10,10)"
+				+ BLUE + "(rectangle 0,200,10,10)(rectangle 100,200,10,10)(rectangle 200,200,10,10)"
+				+ DEFAULT, _painter.toString());
+	}
+
+	/**
+	 * Checks that a command is never drawn before an earlier command it
+	 * overlaps.
+	 */
+	@Test
+	public void testOverlappingCommandsKeepTheirOrder() {
+		_queue.setColor(Color.RED);
+		_queue.drawRect(0, 0, 50, 50);
+		_queue.setColor(Color.BLUE);
+		_queue.fillRect(10, 10, 50, 50);
+		_queue.setColor(Color.RED);
+		_queue.drawRect(20, 20, 50, 50);
+		_queue.drawRect(300, 300, 10, 10);
+		_queue.flush(_painter);
+
+		assertEquals(RED + "(rectangle 0,0,50,50)(rectangle 300,300,10,10)"
+				+ BLUE + "(solid rectangle 10,10,50,50)"
+				+ RED + "(rectangle 20,20,50,50)", _painter.toString());
+	}
+
+	/**
+	 * Checks that overlapping commands keep their order when they alternate
+	 * colours so often that their levels no longer fit in the sort keys.
+	 */
+	@Test
+	public void testTooManyLevelsKeepTheirOrder() {
+		// One more level than the 19 bits left for levels in a sort key.
+		int count = (1 << 19) + 2;
+		for(int i = 0; i < count; i++) {
+			_queue.setColor(i % 2 == 0 ? Color.RED : Color.BLUE);
+			_queue.fillRect(i % 50, 0, 10, 10);
+		}
+		FrameSnapshot frame = new FrameSnapshot();
+		_queue.flush(new SnapshotPainter(frame));
+
+		assertEquals(count, frame.size());
+		for(int i = 0; i < count; i++) {
+			assertEquals(i % 50, frame.x(i));
+		}
+	}
+
+	/**
+	 * Checks that commands are queued with translations applied, and that
+	 * text, whose extent is unknown without FontMetrics, stays in place.
+	 */
+	@Test
+	public void testTranslationAndText() {
+		_queue.translate(100, 100);
+		_queue.setColor(Color.RED);
+		_queue.drawOval(0, 0, 10, 10);
+		_queue.translate(-100, -100);
+		_queue.drawCentredText(0, 0, 20, 20, "label");
+		_queue.drawOval(300, 300, 10, 10);
+		_queue.flush(_painter);
+
+		assertEquals(RED + "(oval 100,100,10,10)Drawing text: label at x:10 y:10(oval 300,300,10,10)",
+				_painter.toString());
+		assertEquals(0, _queue.size());
+	}
+
+	/**
+	 * Checks that painting a frame through a RenderQueue draws the same
+	 * primitives as painting it directly.
+	 */
+	@Test
+	public void testFrameIsPaintedCompletely() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		CarrierShape carrier = new CarrierShape(100, 100, 0, 0, 200, 200);
+		model.add(carrier, model.root());
+		model.add(new DynamicShape(10, 10, 0, 0, 20, 20, Color.RED), carrier);
+		model.add(new OvalShape(50, 50, 0, 0, 20, 20, "label"), carrier);
+		model.add(new HexagonShape(100, 100, 0, 0, 40, 40), carrier);
+		FrameSnapshotBuffer frames = model.frames();
+		model.clock();
+		FrameSnapshot frame = frames.acquire();
+
+		MockPainter direct = new MockPainter();
+		frame.paint(direct);
+		frame.paint(_queue);
+		_queue.flush(_painter);
+
+		assertEquals(primitives(direct.toString()), primitives(_painter.toString()));
+	}
+
+	/*
+	 * Returns the primitives drawn in a MockPainter log, ignoring colour
+	 * changes, in sorted order.
+	 */
+	private static List<String> primitives(String log) {
+		List<String> primitives = new ArrayList<String>();
+		for(String entry : log.replaceAll("Set color to RGB: \\[.*?\\]", "").split("(?=\\()|(?=Drawing)")) {
+			if(!entry.isEmpty()) {
+				primitives.add(entry);
+			}
+		}
+		Collections.sort(primitives);
+		return primitives;
+	}
+}
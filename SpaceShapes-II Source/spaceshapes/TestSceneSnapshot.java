@@ -0,0 +1,147 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Class to test that a SceneSnapshot saves and loads the whole composition
+ * of a ShapeModel exactly.
+ */
+public class TestSceneSnapshot {
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	/**
+	 * Checks that a nested composition that has been moving is loaded with
+	 * every shape, the clock and the settings as saved, and then moves on
+	 * exactly as the saved model does.
+	 */
+	@Test
+	public void testRoundTripContinues() throws IOException {
+		ShapeModel model = new ShapeModel(new Dimension(500, 400));
+		TestShapeModel.populate(model, new Random(3));
+		model.setSiblingCollisions(true);
+		model.setCellSize(40);
+		for(int i = 0; i < 37; i++) {
+			model.clock(0.6);
+		}
+
+		File file = _folder.newFile("scene.snapshot");
+		SceneSnapshot.save(model, file);
+		ShapeModel loaded = SceneSnapshot.load(file);
+
+		assertEquals(TestShapeModel.describe(model.root()), TestShapeModel.describe(loaded.root()));
+		assertEquals(500, loaded.root().width());
+		assertEquals(400, loaded.root().height());
+		assertEquals(model.ticks(), loaded.ticks());
+		assertEquals(model.time(), loaded.time(), 0);
+		assertEquals(true, loaded.siblingCollisions());
+		assertEquals(40, loaded.cellSize());
+		checkAbsolutePositions(model.root(), loaded.root());
+
+		for(int i = 0; i < 50; i++) {
+			model.clock(0.6);
+			loaded.clock(0.6);
+		}
+		assertEquals(TestShapeModel.describe(model.root()), TestShapeModel.describe(loaded.root()));
+	}
+
+	/**
+	 * Checks that text, colours and images survive, and that an image shown
+	 * by several shapes is saved once.
+	 */
+	@Test
+	public void testTextColoursAndImages() throws IOException {
+		BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, 0xFF123456);
+		image.setRGB(2, 1, 0x80FFFFFF);
+		ShapeModel model = new ShapeModel(new Dimension(200, 200));
+		model.add(new ImageRectangleShape(1, 2, image), model.root());
+		model.add(new ImageRectangleShape(-1, 3, image), model.root());
+		model.add(new DynamicShape(50, 50, 3, 4, 20, 20, "Dynamic", Color.ORANGE), model.root());
+		model.add(new OvalShape(100, 100, -2, 1, 40, 30, "été"), model.root());
+		model.add(new OvalShape(100, 10, -2, 1, 40, 30, "été"), model.root());
+		model.add(new HexagonShape(10, 100, -2, 1, 40, 30), model.root());
+		model.clock();
+
+		File file = _folder.newFile("scene.snapshot");
+		SceneSnapshot.save(model, file);
+		CarrierShape root = SceneSnapshot.load(file).root();
+
+		assertEquals(TestShapeModel.describe(model.root()), TestShapeModel.describe(root));
+		Image loaded = ((ImageRectangleShape)root.shapeAt(0)).image();
+		assertSame(loaded, ((ImageRectangleShape)root.shapeAt(1)).image());
+		BufferedImage pixels = (BufferedImage)loaded;
+		assertEquals(0xFF123456, pixels.getRGB(0, 0));
+		assertEquals(0x80FFFFFF, pixels.getRGB(2, 1));
+		assertEquals(Color.ORANGE, ((DynamicShape)root.shapeAt(2)).color());
+		assertEquals("Dynamic", root.shapeAt(2).getText());
+		assertEquals("été", root.shapeAt(3).getText());
+		assertEquals(OvalShape.class, root.shapeAt(4).getClass());
+		assertEquals(null, root.shapeAt(5).getText());
+		assertEquals(HexagonShape.class, root.shapeAt(5).getClass());
+	}
+
+	/**
+	 * Checks that files that are not snapshots, or are truncated, are
+	 * rejected.
+	 */
+	@Test
+	public void testRejectsDamagedFiles() throws IOException {
+		File other = _folder.newFile("other.snapshot");
+		Files.write(other.toPath(), new byte[100]);
+		assertRejected(other);
+
+		ShapeModel model = new ShapeModel(new Dimension(100, 100));
+		TestShapeModel.populate(model, new Random(5));
+		File truncated = _folder.newFile("truncated.snapshot");
+		SceneSnapshot.save(model, truncated);
+		RandomAccessFile file = new RandomAccessFile(truncated, "rw");
+		try {
+			file.setLength(file.length() - 1);
+		} finally {
+			file.close();
+		}
+		assertRejected(truncated);
+	}
+
+	private static void assertRejected(File file) {
+		try {
+			SceneSnapshot.load(file);
+			throw new AssertionError(file + " was loaded");
+		} catch(IOException e) {
+			// Expected.
+		}
+	}
+
+	/*
+	 * Checks that the world positions of the shapes in two compositions of
+	 * the same shape match.
+	 */
+	private static void checkAbsolutePositions(Shape expected, Shape actual) {
+		assertEquals(expected.absoluteX(), actual.absoluteX());
+		assertEquals(expected.absoluteY(), actual.absoluteY());
+		assertEquals(expected.depth(), actual.depth());
+		if(expected instanceof CarrierShape) {
+			CarrierShape carrier = (CarrierShape)expected;
+			for(int i = 0; i < carrier.shapeCount(); i++) {
+				checkAbsolutePositions(carrier.shapeAt(i), ((CarrierShape)actual).shapeAt(i));
+			}
+		}
+	}
+}
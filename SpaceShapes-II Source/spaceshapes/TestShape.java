@@ -120,4 +120,52 @@ public class TestShape {
 						"(rectangle 112,35,30,30)",
 				_painter.toString());
 	}
+
+	/**
+	 * Test to move a shape by fractional time steps, and to ensure that its
+	 * position is kept to sub-pixel precision while x() and y() give the
+	 * whole pixels.
+	 */
+	@Test
+	public void testFractionalTimeStepMove() {
+		RectangleShape shape = new RectangleShape(100, 20, 3, 5);
+		shape.move(500, 500, 0.5);
+		assertEquals(101, shape.x());
+		assertEquals(22, shape.y());
+		assertEquals(101.5, shape.exactX(), 0);
+		assertEquals(22.5, shape.exactY(), 0);
+
+		shape.move(500, 500, 0.5);
+		shape.doPaint(_painter);
+		assertEquals("(rectangle 103,25,25,35)", _painter.toString());
+	}
+
+	/**
+	 * Test to ensure that one long time step covers the distance of as many
+	 * whole ticks, and still bounces off the boundary.
+	 */
+	@Test
+	public void testLongTimeStepMove() {
+		RectangleShape stepped = new RectangleShape(100, 20, 12, 15);
+		RectangleShape caughtUp = new RectangleShape(100, 20, 12, 15);
+		for(int i = 0; i < 4; i++) {
+			stepped.move(500, 500);
+		}
+		caughtUp.move(500, 500, 4);
+		assertEquals(stepped.x(), caughtUp.x());
+		assertEquals(stepped.y(), caughtUp.y());
+
+		caughtUp.move(200, 500, 10);
+		assertEquals(175, caughtUp.x());
+		assertEquals(-12, caughtUp.deltaX());
+		assertEquals(0.0, caughtUp.exactX() - caughtUp.x(), 0);
+	}
+
+	/**
+	 * Test to ensure that invalid time steps are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTimeStep() {
+		new RectangleShape(100, 20, 12, 15).move(500, 500, -1);
+	}
 }
@@ -0,0 +1,164 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a ShapeFactory creates shapes of the classes registered
+ * with it, and only those.
+ */
+public class TestShapeFactory {
+
+	private ShapeFactory _factory;
+
+	/**
+	 * Creates a ShapeFactory for the built in 7-argument Shape classes.
+	 */
+	@Before
+	public void setUpFactory() {
+		List<Class<? extends Shape>> classes = Arrays.<Class<? extends Shape>>asList(
+				CarrierShape.class, DynamicShape.class, OvalShape.class, RectangleShape.class);
+		_factory = new ShapeFactory(classes);
+	}
+
+	/**
+	 * Checks that abstract classes and classes without a 7-argument
+	 * constructor are not registered.
+	 */
+	@Test
+	public void testRegister() {
+		assertEquals(4, _factory.types().size());
+		assertFalse(_factory.register(Shape.class));
+		assertFalse(_factory.register(ImageRectangleShape.class));
+		assertFalse(_factory.supports(ImageRectangleShape.class));
+		assertTrue(_factory.register(HexagonShape.class));
+		assertTrue(_factory.register(HexagonShape.class));
+		assertEquals(HexagonShape.class, _factory.types().get(4));
+		assertEquals(5, _factory.types().size());
+	}
+
+	/**
+	 * Checks that classes are resolved by their full and simple names.
+	 */
+	@Test
+	public void testResolve() {
+		assertSame(OvalShape.class, _factory.resolve("OvalShape"));
+		assertSame(OvalShape.class, _factory.resolve("spaceshapes.OvalShape"));
+		assertNull(_factory.resolve("HexagonShape"));
+	}
+
+	/**
+	 * Checks that a simple name shared by two registered classes no longer
+	 * resolves, while their full names still do.
+	 */
+	@Test
+	public void testSimpleNameCollision() {
+		assertTrue(_factory.register(Elsewhere.OvalShape.class));
+		assertNull(_factory.resolve("OvalShape"));
+		assertSame(OvalShape.class, _factory.resolve("spaceshapes.OvalShape"));
+		assertSame(Elsewhere.OvalShape.class, _factory.resolve(Elsewhere.OvalShape.class.getName()));
+		try {
+			_factory.create("OvalShape", 0, 0, 1, 1, 10, 10, null);
+			fail("Created a shape by an ambiguous name");
+		} catch(IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks that shapes are created with their arguments, and with a colour
+	 * by classes that take one.
+	 */
+	@Test
+	public void testCreate() {
+		Shape oval = _factory.create(OvalShape.class, 1, 2, 3, 4, 50, 60, "Oval");
+		assertEquals(OvalShape.class, oval.getClass());
+		assertEquals(1, oval.x());
+		assertEquals(2, oval.y());
+		assertEquals(3, oval.deltaX());
+		assertEquals(4, oval.deltaY());
+		assertEquals(50, oval.width());
+		assertEquals(60, oval.height());
+		assertEquals("Oval", oval.getText());
+
+		assertEquals(CarrierShape.class, _factory.create("CarrierShape", 0, 0, 1, 1, 10, 10, null).getClass());
+
+		assertTrue(_factory.takesColour(DynamicShape.class));
+		assertFalse(_factory.takesColour(OvalShape.class));
+		Shape dynamic = _factory.create(DynamicShape.class, 0, 0, 1, 1, 10, 10, null, Color.PINK);
+		assertEquals(Color.PINK, ((DynamicShape)dynamic).color());
+	}
+
+	/**
+	 * Checks that a batch creates one shape per index into its arrays.
+	 */
+	@Test
+	public void testCreateBatch() {
+		int[] x = {0, 10, 20};
+		int[] ones = {1, 1, 1};
+		Shape[] shapes = _factory.createBatch(RectangleShape.class, x, x, ones, ones, ones, ones,
+				new String[] {"a", "b", "c"});
+		assertEquals(3, shapes.length);
+		assertEquals(20, shapes[2].y());
+		assertEquals("b", shapes[1].getText());
+
+		shapes = _factory.createBatch(RectangleShape.class, x, x, ones, ones, ones, ones, null);
+		assertNull(shapes[0].getText());
+
+		try {
+			_factory.createBatch(RectangleShape.class, x, x, ones, ones, ones, new int[2], null);
+			fail("Created a batch from arrays of different lengths");
+		} catch(IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks that unregistered classes, and colours for classes that do not
+	 * take one, are refused.
+	 */
+	@Test
+	public void testRefusesWhatItCannotCreate() {
+		try {
+			_factory.create(HexagonShape.class, 0, 0, 1, 1, 10, 10, null);
+			fail("Created an unregistered class");
+		} catch(IllegalArgumentException e) {
+			// Expected.
+		}
+		try {
+			_factory.create("Hexagon", 0, 0, 1, 1, 10, 10, null);
+			fail("Created an unknown class");
+		} catch(IllegalArgumentException e) {
+			// Expected.
+		}
+		try {
+			_factory.create(OvalShape.class, 0, 0, 1, 1, 10, 10, null, Color.RED);
+			fail("Created an OvalShape with a colour");
+		} catch(IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/*
+	 * Holder of a Shape class whose simple name is that of
+	 * spaceshapes.OvalShape.
+	 */
+	public static class Elsewhere {
+		public static class OvalShape extends spaceshapes.OvalShape {
+			public OvalShape(int x, int y, int deltaX, int deltaY, int width, int height, String text) {
+				super(x, y, deltaX, deltaY, width, height, text);
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Class to test that a ShapeJournalReplayer rebuilds the ShapeModels recorded
+ * by a ShapeJournal exactly, at any tick.
+ */
+public class TestShapeJournal {
+
+	private static final int TICKS = 300;
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	/**
+	 * Checks that seeking to any tick of a session with structural changes,
+	 * fractional time steps and sibling collisions reproduces the state of
+	 * every shape at that tick.
+	 */
+	@Test
+	public void testSeekReproducesEveryTick() throws IOException {
+		File file = _folder.newFile("session.journal");
+		Map<Long, String> expected = record(file, 25);
+
+		ShapeJournalReplayer replayer = new ShapeJournalReplayer(file);
+		try {
+			assertEquals(TICKS / 25 + 1, replayer.keyframes());
+			assertEquals(0, replayer.firstTick());
+			assertEquals(TICKS, replayer.lastTick());
+			assertEquals(new Dimension(400, 300), replayer.bounds());
+
+			for(Map.Entry<Long, String> tick : expected.entrySet()) {
+				ShapeModel model = replayer.seek(tick.getKey());
+				assertEquals("Tick " + tick.getKey(), tick.getValue(), TestShapeModel.describe(model.root()));
+				assertEquals(tick.getKey().longValue(), model.ticks());
+			}
+		} finally {
+			replayer.close();
+		}
+	}
+
+	/**
+	 * Checks that a model restored from a keyframe carries on exactly as the
+	 * recorded model did.
+	 */
+	@Test
+	public void testReplayedModelContinues() throws IOException {
+		File file = _folder.newFile("session.journal");
+		Map<Long, String> expected = record(file, 100);
+
+		ShapeJournalReplayer replayer = new ShapeJournalReplayer(file);
+		try {
+			ShapeModel model = replayer.seek(TICKS - 10);
+			for(int i = 0; i < 10; i++) {
+				model.clock(0.75);
+			}
+			assertEquals(expected.get((long)TICKS), TestShapeModel.describe(model.root()));
+		} finally {
+			replayer.close();
+		}
+	}
+
+	/**
+	 * Checks that shapes that cannot be constructed from the journalled
+	 * arguments are replayed as RectangleShapes, that DynamicShapes keep
+	 * their colour and that text survives.
+	 */
+	@Test
+	public void testShapeClassesAndText() throws IOException {
+		File file = _folder.newFile("shapes.journal");
+		ShapeModel model = new ShapeModel(new Dimension(200, 200));
+		ShapeJournal journal = new ShapeJournal(file);
+		model.setJournal(journal);
+		model.add(new ImageRectangleShape(1, 2, new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB)), model.root());
+		model.add(new DynamicShape(50, 50, 3, 4, 20, 20, "Dynamic", Color.ORANGE), model.root());
+		model.add(new HexagonShape(100, 100, -2, 1, 40, 30, "été"), model.root());
+		model.clock();
+		journal.close();
+
+		ShapeJournalReplayer replayer = new ShapeJournalReplayer(file);
+		try {
+			ShapeModel replayed = replayer.seek(1);
+			assertEquals(TestShapeModel.describe(model.root()), TestShapeModel.describe(replayed.root()));
+			CarrierShape root = replayed.root();
+			assertEquals(RectangleShape.class, root.shapeAt(0).getClass());
+			assertEquals(Color.ORANGE, ((DynamicShape)root.shapeAt(1)).color());
+			assertEquals("Dynamic", root.shapeAt(1).getText());
+			assertEquals("été", root.shapeAt(2).getText());
+		} finally {
+			replayer.close();
+		}
+	}
+
+	/**
+	 * Checks that each class name is written once however many shapes and
+	 * keyframes use it.
+	 */
+	@Test
+	public void testClassNamesWrittenOnce() throws IOException {
+		File file = _folder.newFile("session.journal");
+		record(file, 25);
+		// Decoded byte for byte.
+		String bytes = new String(Files.readAllBytes(file.toPath()), "ISO-8859-1");
+		for(Class<?> shapeClass : new Class<?>[] {CarrierShape.class, OvalShape.class, RectangleShape.class}) {
+			String name = shapeClass.getName();
+			assertEquals(name, bytes.indexOf(name), bytes.lastIndexOf(name));
+			assertTrue(name, bytes.indexOf(name) >= 0);
+		}
+	}
+
+	/**
+	 * Checks that a file that is not a journal is rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testRejectsOtherFiles() throws IOException {
+		File file = _folder.newFile("other.journal");
+		Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		new ShapeJournalReplayer(file).close();
+	}
+
+	/*
+	 * Records a random session of TICKS ticks into a journal file, returning
+	 * a description of the model after each tick.
+	 */
+	private static Map<Long, String> record(File file, int keyframeInterval) throws IOException {
+		Random random = new Random(11);
+		ShapeModel model = new ShapeModel(new Dimension(400, 300));
+		List<CarrierShape> carriers = new ArrayList<CarrierShape>();
+		carriers.add(model.root());
+		for(int i = 0; i < 40; i++) {
+			TestShapeModel.addRandomShape(model, carriers, random);
+		}
+
+		ShapeJournal journal = new ShapeJournal(file, keyframeInterval);
+		model.setJournal(journal);
+		model.setSiblingCollisions(true);
+		model.setCellSize(48);
+
+		Map<Long, String> descriptions = new HashMap<Long, String>();
+		descriptions.put(0L, TestShapeModel.describe(model.root()));
+		for(int tick = 1; tick <= TICKS; tick++) {
+			// The last ticks are left to testReplayedModelContinues().
+			boolean changing = tick <= TICKS - 10;
+			if(changing && random.nextInt(5) == 0) {
+				TestShapeModel.addRandomShape(model, carriers, random);
+			}
+			if(changing && random.nextInt(7) == 0) {
+				CarrierShape parent = carriers.get(random.nextInt(carriers.size()));
+				if(parent.shapeCount() > 0) {
+					Shape shape = parent.shapeAt(random.nextInt(parent.shapeCount()));
+					if(!(shape instanceof CarrierShape)) {
+						model.remove(shape);
+					}
+				}
+			}
+			model.clock(!changing ? 0.75 : 0.5 + random.nextInt(100) / 100.0);
+			descriptions.put((long)tick, TestShapeModel.describe(model.root()));
+		}
+		journal.close();
+		assertTrue(journal.keyframes() > 1);
+		return descriptions;
+	}
+}
@@ -0,0 +1,288 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the clock modes of class ShapeModel. Every mode must move
+ * the shapes exactly as ClockMode.Sequential does.
+ */
+public class TestShapeModel {
+
+	private ShapeModel _sequential;
+	private ShapeModel _other;
+
+	/**
+	 * Creates two ShapeModels populated with identical, randomly generated
+	 * compositions that include nested CarrierShapes.
+	 */
+	@Before
+	public void setUpModels() {
+		_sequential = new ShapeModel(new Dimension(500, 500));
+		_other = new ShapeModel(new Dimension(500, 500));
+
+		populate(_sequential, new Random(42));
+		populate(_other, new Random(42));
+	}
+
+	/**
+	 * Checks that a packed model moves its shapes exactly as a sequential
+	 * model does, including bounces and the last border hit.
+	 */
+	@Test
+	public void testPackedClockMatchesSequential() {
+		_other.setClockMode(ShapeModel.ClockMode.Packed);
+
+		for(int i = 0; i < 500; i++) {
+			_sequential.clock();
+			_other.clock();
+		}
+		assertEquals(describe(_sequential.root()), describe(_other.root()));
+	}
+
+	/**
+	 * Checks that shapes added and removed between clock() calls are picked
+	 * up by a packed model, and that leaving packed mode retains the state.
+	 */
+	@Test
+	public void testPackedClockWithStructuralChanges() {
+		_other.setClockMode(ShapeModel.ClockMode.Packed);
+
+		for(int i = 0; i < 100; i++) {
+			_sequential.clock();
+			_other.clock();
+		}
+
+		_sequential.remove(_sequential.root().shapeAt(0));
+		_other.remove(_other.root().shapeAt(0));
+		_sequential.add(new OvalShape(10, 10, 3, -4, 20, 20), _sequential.root());
+		_other.add(new OvalShape(10, 10, 3, -4, 20, 20), _other.root());
+
+		for(int i = 0; i < 100; i++) {
+			_sequential.clock();
+			_other.clock();
+		}
+		_other.setClockMode(ShapeModel.ClockMode.Sequential);
+
+		for(int i = 0; i < 100; i++) {
+			_sequential.clock();
+			_other.clock();
+		}
+		assertEquals(describe(_sequential.root()), describe(_other.root()));
+	}
+
+	/**
+	 * Checks that a parallel model moves its shapes exactly as a sequential
+	 * model does. A small threshold forces child lists to be split into
+	 * ranges as well as subtrees being moved by separate tasks.
+	 */
+	@Test
+	public void testParallelClockMatchesSequential() {
+		_other.setClockMode(ShapeModel.ClockMode.Parallel);
+		_other.setSequentialThreshold(3);
+
+		for(int i = 0; i < 500; i++) {
+			_sequential.clock();
+			_other.clock();
+		}
+		assertEquals(describe(_sequential.root()), describe(_other.root()));
+	}
+
+	/**
+	 * Checks that a packed shape paints at its packed position and that a
+	 * direct move() call on a packed shape bounces as Shape.move() does.
+	 */
+	@Test
+	public void testPackedShapeAccessors() {
+		ShapeModel model = new ShapeModel(new Dimension(135, 10000));
+		RectangleShape shape = new RectangleShape(100, 20, 12, 15);
+		model.add(shape, model.root());
+		model.setClockMode(ShapeModel.ClockMode.Packed);
+
+		model.clock();
+		assertEquals(110, shape.x());
+		assertEquals(35, shape.y());
+		assertEquals(-12, shape.deltaX());
+		assertTrue(shape.lastHitRight());
+
+		shape.move(135, 10000);
+		MockPainter painter = new MockPainter();
+		shape.doPaint(painter);
+		assertEquals("(rectangle 98,50,25,35)", painter.toString());
+	}
+
+	/**
+	 * Checks that the changes made during a batch are fired as a single
+	 * ShapesChanged event once the outermost batch is committed.
+	 */
+	@Test
+	public void testBatchedEvents() {
+		final List<ShapeModelEvent> events = new ArrayList<ShapeModelEvent>();
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.addShapeModelListener(new ShapeModelListener() {
+			public void update(ShapeModelEvent event) {
+				events.add(event);
+			}
+		});
+
+		Shape first = new RectangleShape();
+		Shape second = new OvalShape();
+
+		model.beginBatch();
+		model.addAll(Arrays.asList(first, second), model.root());
+		model.remove(first);
+		assertTrue(events.isEmpty());
+		model.commitBatch();
+
+		assertEquals(1, events.size());
+		ShapeModelEvent event = events.get(0);
+		assertEquals(ShapeModelEvent.EventType.ShapesChanged, event.eventType());
+
+		List<ShapeModelEvent> changes = event.changes();
+		assertEquals(3, changes.size());
+		assertEquals(ShapeModelEvent.EventType.ShapeAdded, changes.get(0).eventType());
+		assertEquals(0, changes.get(0).index());
+		assertEquals(ShapeModelEvent.EventType.ShapeAdded, changes.get(1).eventType());
+		assertEquals(1, changes.get(1).index());
+		assertEquals(ShapeModelEvent.EventType.ShapeRemoved, changes.get(2).eventType());
+		assertEquals(0, changes.get(2).index());
+	}
+
+	/**
+	 * Checks that, whichever ClockMode is used, each Shape's cached world
+	 * position is its position offset by those of all its ancestors.
+	 */
+	@Test
+	public void testAbsolutePositionsInEveryMode() {
+		for(ShapeModel.ClockMode mode : ShapeModel.ClockMode.values()) {
+			ShapeModel model = new ShapeModel(new Dimension(500, 500));
+			populate(model, new Random(7));
+			model.setClockMode(mode);
+			model.setSequentialThreshold(3);
+
+			for(int i = 0; i < 50; i++) {
+				model.clock();
+				checkAbsolutePositions(model.root(), 0, 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * Checks that, with fractional and varying time steps, every ClockMode
+	 * moves the shapes exactly as ClockMode.Sequential does, and that a time
+	 * step of 1 moves them as clock() does.
+	 */
+	@Test
+	public void testTimeStepsInEveryMode() {
+		double[] steps = {0.25, 1.5, 0.1, 3, 1};
+		for(ShapeModel.ClockMode mode : ShapeModel.ClockMode.values()) {
+			ShapeModel sequential = new ShapeModel(new Dimension(500, 500));
+			ShapeModel other = new ShapeModel(new Dimension(500, 500));
+			populate(sequential, new Random(3));
+			populate(other, new Random(3));
+			other.setClockMode(mode);
+			other.setSequentialThreshold(3);
+
+			for(int i = 0; i < 200; i++) {
+				sequential.clock(steps[i % steps.length]);
+				other.clock(steps[i % steps.length]);
+			}
+			assertEquals(describe(sequential.root()), describe(other.root()));
+			assertEquals(234.0, other.time(), 0.01);
+		}
+
+		_other.setClockMode(ShapeModel.ClockMode.Packed);
+		for(int i = 0; i < 100; i++) {
+			_sequential.clock();
+			_other.clock(1.0);
+		}
+		assertEquals(describe(_sequential.root()), describe(_other.root()));
+	}
+
+	/*
+	 * Checks the cached world position and depth of every shape in a
+	 * composition against those worked out from its ancestors.
+	 */
+	private static void checkAbsolutePositions(Shape shape, int originX, int originY, int depth) {
+		assertEquals(originX + shape.x(), shape.absoluteX());
+		assertEquals(originY + shape.y(), shape.absoluteY());
+		assertEquals(depth, shape.depth());
+
+		if(shape instanceof CarrierShape) {
+			CarrierShape carrier = (CarrierShape)shape;
+			for(int i = 0; i < carrier.shapeCount(); i++) {
+				checkAbsolutePositions(carrier.shapeAt(i), shape.absoluteX(), shape.absoluteY(), depth + 1);
+			}
+		}
+	}
+
+	/*
+	 * Adds a random composition of 200 shapes, including nested
+	 * CarrierShapes, to the specified model.
+	 */
+	static void populate(ShapeModel model, Random random) {
+		List<CarrierShape> carriers = new ArrayList<CarrierShape>();
+		carriers.add(model.root());
+
+		for(int i = 0; i < 200; i++) {
+			addRandomShape(model, carriers, random);
+		}
+	}
+
+	/*
+	 * Adds a shape of a random class, size and velocity to a random one of
+	 * the specified CarrierShapes of a model. A new CarrierShape is added to
+	 * carriers.
+	 */
+	static void addRandomShape(ShapeModel model, List<CarrierShape> carriers, Random random) {
+		CarrierShape parent = carriers.get(random.nextInt(carriers.size()));
+		int width = 5 + random.nextInt(Math.max(1, parent.width() / 3));
+		int height = 5 + random.nextInt(Math.max(1, parent.height() / 3));
+		int deltaX = random.nextInt(21) - 10;
+		int deltaY = random.nextInt(21) - 10;
+		int kind = random.nextInt(4);
+
+		Shape shape;
+		if(kind == 0 && width > 20 && height > 20) {
+			CarrierShape carrier = new CarrierShape(0, 0, deltaX, deltaY, width, height);
+			carriers.add(carrier);
+			shape = carrier;
+		} else if(kind <= 1) {
+			shape = new OvalShape(0, 0, deltaX, deltaY, width, height);
+		} else if(kind == 2) {
+			shape = new DynamicShape(0, 0, deltaX, deltaY, width, height, new Color(random.nextInt()));
+		} else {
+			shape = new RectangleShape(0, 0, deltaX, deltaY, width, height, "R" + random.nextInt(10));
+		}
+		model.add(shape, parent);
+	}
+
+	/*
+	 * Returns a description of the state of every shape in a composition.
+	 */
+	static String describe(Shape shape) {
+		StringBuilder description = new StringBuilder();
+		description.append("[" + shape.exactX() + "," + shape.exactY() + "," + shape.deltaX() + ","
+				+ shape.deltaY() + "," + shape.width() + "," + shape.height() + ","
+				+ shape.lastBorderHit());
+
+		if(shape instanceof CarrierShape) {
+			CarrierShape carrier = (CarrierShape)shape;
+			for(int i = 0; i < carrier.shapeCount(); i++) {
+				description.append(describe(carrier.shapeAt(i)));
+			}
+		}
+		description.append("]");
+		return description.toString();
+	}
+}
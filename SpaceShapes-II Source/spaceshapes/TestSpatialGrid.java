@@ -0,0 +1,136 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Dimension;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the hit testing and sibling collision support that
+ * ShapeModel builds on SpatialGrid.
+ */
+public class TestSpatialGrid {
+
+	private ShapeModel _model;
+	private CarrierShape _carrier;
+	private Shape _inner;
+	private Shape _outer;
+
+	/**
+	 * Creates a ShapeModel with the following composition:
+	 *   root (500x500)
+	 *     |
+	 *     --- CarrierShape (carrier) at 100,100, 200x200
+	 *     |     |
+	 *     |     --- RectangleShape (inner) at 10,10 (world 110,110), 20x20
+	 *     |
+	 *     --- RectangleShape (outer) at 400,400, 30x30
+	 */
+	@Before
+	public void setUpModel() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_model.setCellSize(16);
+		_carrier = new CarrierShape(100, 100, 0, 0, 200, 200);
+		_inner = new RectangleShape(10, 10, 0, 0, 20, 20);
+		_outer = new RectangleShape(400, 400, 0, 0, 30, 30);
+
+		_model.add(_carrier, _model.root());
+		_model.add(_inner, _carrier);
+		_model.add(_outer, _model.root());
+	}
+
+	/**
+	 * Checks that shapeAt() returns the deepest Shape at a point, the
+	 * CarrierShape where none of its children is at the point, and null where
+	 * there is no Shape.
+	 */
+	@Test
+	public void testShapeAt() {
+		assertSame(_inner, _model.shapeAt(115, 115));
+		assertSame(_carrier, _model.shapeAt(250, 250));
+		assertSame(_outer, _model.shapeAt(429, 429));
+		assertNull(_model.shapeAt(430, 430));
+		assertNull(_model.shapeAt(50, 50));
+	}
+
+	/**
+	 * Checks that shapeAt() picks the topmost of two overlapping Shapes.
+	 */
+	@Test
+	public void testShapeAtPicksTopmost() {
+		Shape top = new RectangleShape(410, 410, 0, 0, 30, 30);
+		_model.add(top, _model.root());
+
+		assertSame(top, _model.shapeAt(420, 420));
+		assertSame(_outer, _model.shapeAt(405, 405));
+	}
+
+	/**
+	 * Checks that shapesIn() reports Shapes at all depths, in painting order.
+	 */
+	@Test
+	public void testShapesIn() {
+		List<Shape> shapes = _model.shapesIn(0, 0, 500, 500);
+		assertEquals(3, shapes.size());
+		assertSame(_carrier, shapes.get(0));
+		assertSame(_inner, shapes.get(1));
+		assertSame(_outer, shapes.get(2));
+
+		shapes = _model.shapesIn(200, 200, 250, 250);
+		assertEquals(2, shapes.size());
+		assertSame(_carrier, shapes.get(0));
+		assertSame(_outer, shapes.get(1));
+	}
+
+	/**
+	 * Checks that the index follows Shapes as they move.
+	 */
+	@Test
+	public void testIndexFollowsMovement() {
+		Shape mover = new RectangleShape(0, 0, 50, 0, 10, 10);
+		_model.add(mover, _model.root());
+		assertSame(mover, _model.shapeAt(5, 5));
+
+		_model.clock();
+		assertNull(_model.shapeAt(5, 5));
+		assertSame(mover, _model.shapeAt(55, 5));
+	}
+
+	/**
+	 * Checks that overlapping siblings approaching each other exchange their
+	 * velocities, whichever ClockMode is used.
+	 */
+	@Test
+	public void testSiblingCollisions() {
+		for(ShapeModel.ClockMode mode : ShapeModel.ClockMode.values()) {
+			ShapeModel model = new ShapeModel(new Dimension(500, 500));
+			model.setClockMode(mode);
+			model.setSiblingCollisions(true);
+
+			Shape left = new RectangleShape(100, 100, 5, 1, 20, 20);
+			Shape right = new RectangleShape(126, 100, -3, 1, 20, 20);
+			Shape apart = new RectangleShape(300, 300, 2, 2, 20, 20);
+			model.add(left, model.root());
+			model.add(right, model.root());
+			model.add(apart, model.root());
+
+			// After one tick left spans 105-125 and right 123-143.
+			model.clock();
+			assertEquals(1, model.collisions());
+			model.setClockMode(ShapeModel.ClockMode.Sequential);
+			assertEquals(-3, left.deltaX());
+			assertEquals(5, right.deltaX());
+			assertEquals(1, left.deltaY());
+			assertEquals(2, apart.deltaX());
+
+			List<Shape> overlapping = model.overlapping(left);
+			assertEquals(1, overlapping.size());
+			assertSame(right, overlapping.get(0));
+		}
+	}
+}
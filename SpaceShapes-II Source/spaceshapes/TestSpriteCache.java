@@ -0,0 +1,159 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a SpriteCache stamps the images painted by the Shapes it
+ * caches, within its memory budget.
+ */
+public class TestSpriteCache {
+
+	private static final int SIZE = 200;
+
+	/**
+	 * Checks that ovals and hexagons drawn from sprites, with their text,
+	 * look exactly as when painted, and that each appearance is rasterised
+	 * once.
+	 */
+	@Test
+	public void testSpritesArePixelIdentical() {
+		SpriteCache sprites = new SpriteCache();
+		Shape[] shapes = {
+				new OvalShape(13, 17, 0, 0, 61, 33, "Oval"),
+				new HexagonShape(90, 40, 0, 0, 75, 50, "Hexagon"),
+				new HexagonShape(20, 120, 0, 0, 30, 44),
+				new OvalShape(120, 130, 0, 0, 61, 33)};
+
+		BufferedImage painted = paint(shapes, null);
+		BufferedImage stamped = paint(shapes, sprites);
+
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				assertEquals("Pixel " + x + "," + y, painted.getRGB(x, y), stamped.getRGB(x, y));
+			}
+		}
+		// The two 61x33 ovals share a sprite, and every Shape is painted twice.
+		assertEquals(3, sprites.misses());
+		assertEquals(5, sprites.hits());
+		assertEquals(3, sprites.size());
+	}
+
+	/**
+	 * Checks that the painter's colour and the Shape's size are part of the
+	 * key of a sprite.
+	 */
+	@Test
+	public void testColourAndSizeArePartOfTheKey() {
+		SpriteCache sprites = new SpriteCache();
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		GraphicsPainter painter = new GraphicsPainter(g);
+		OvalShape oval = new OvalShape(0, 0, 0, 0, 20, 20);
+
+		sprites.draw(oval, painter);
+		painter.setColor(Color.RED);
+		sprites.draw(oval, painter);
+		sprites.draw(new OvalShape(50, 50, 0, 0, 20, 20), painter);
+		sprites.draw(new OvalShape(50, 50, 0, 0, 20, 21), painter);
+		g.dispose();
+
+		assertEquals(3, sprites.misses());
+		assertEquals(1, sprites.hits());
+	}
+
+	/**
+	 * Checks that the least recently used sprites are evicted to keep within
+	 * the budget, and that a sprite larger than the budget is not cached.
+	 */
+	@Test
+	public void testBudgetIsRespected() {
+		// Room for two 10x10 sprites, each 11x11 pixels of 4 bytes.
+		SpriteCache sprites = new SpriteCache(2 * 11 * 11 * 4);
+		MockPainter painter = new MockPainter();
+		Shape first = new OvalShape(0, 0, 0, 0, 10, 10);
+		Shape second = new HexagonShape(0, 0, 0, 0, 10, 10);
+
+		sprites.draw(first, painter);
+		sprites.draw(second, painter);
+		sprites.draw(first, painter);
+		// Evicts second, the least recently used.
+		sprites.draw(new OvalShape(0, 0, 0, 0, 9, 10), painter);
+		assertEquals(2, sprites.size());
+		assertEquals(1, sprites.evictions());
+		assertEquals(true, sprites.bytes() <= sprites.budget());
+
+		sprites.draw(first, painter);
+		assertEquals(2, sprites.hits());
+
+		assertFalse(sprites.draw(new OvalShape(0, 0, 0, 0, 50, 50), painter));
+		assertEquals(2, sprites.size());
+	}
+
+	/**
+	 * Checks that Shapes without a fixed figure, and Shapes that opt out, are
+	 * painted rather than drawn from sprites.
+	 */
+	@Test
+	public void testShapesMayBeLeftOut() {
+		SpriteCache sprites = new SpriteCache();
+		MockPainter painter = new MockPainter();
+		OvalShape oval = new OvalShape(0, 0, 0, 0, 20, 20);
+		oval.setSpriteCached(false);
+
+		assertFalse(sprites.draw(oval, painter));
+		assertFalse(sprites.draw(new RectangleShape(0, 0, 0, 0, 20, 20), painter));
+		assertFalse(sprites.draw(new CarrierShape(0, 0, 0, 0, 20, 20), painter));
+		assertEquals(0, sprites.size());
+	}
+
+	/**
+	 * Checks that a ShapeModel with a SpriteCache records ovals and hexagons
+	 * into its frames as images, and other Shapes as primitives.
+	 */
+	@Test
+	public void testShapeModelRecordsSprites() {
+		ShapeModel model = new ShapeModel(new Dimension(SIZE, SIZE));
+		model.add(new OvalShape(10, 10, 1, 1, 20, 20), model.root());
+		model.add(new HexagonShape(50, 50, 1, 1, 40, 20), model.root());
+		model.add(new RectangleShape(100, 100, 1, 1, 20, 20), model.root());
+		model.setSpriteCache(new SpriteCache());
+
+		FrameSnapshotBuffer frames = model.frames();
+		model.clock();
+		FrameSnapshot frame = frames.acquire();
+
+		// The root's outline, then the three children.
+		assertEquals(4, frame.size());
+		assertEquals(FrameSnapshot.IMAGE, frame.type(1));
+		assertEquals(11, frame.x(1));
+		assertEquals(21, frame.width(1));
+		assertEquals(FrameSnapshot.IMAGE, frame.type(2));
+		assertEquals(FrameSnapshot.RECTANGLE, frame.type(3));
+	}
+
+	/*
+	 * Paints Shapes on a black image with a GraphicsPainter using the
+	 * specified SpriteCache, which may be null.
+	 */
+	private static BufferedImage paint(Shape[] shapes, SpriteCache sprites) {
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		GraphicsPainter painter = new GraphicsPainter(g);
+		painter.setSpriteCache(sprites);
+		for(int i = 0; i < 2; i++) {
+			for(Shape shape : shapes) {
+				shape.doPaint(painter);
+			}
+		}
+		g.dispose();
+		return image;
+	}
+}
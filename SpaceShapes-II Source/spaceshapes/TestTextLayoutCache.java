@@ -0,0 +1,124 @@
+package spaceshapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a TextLayoutCache measures text as FontMetrics does,
+ * evicts its least recently used entries and counts its lookups.
+ */
+public class TestTextLayoutCache {
+
+	private BufferedImage _image;
+	private Graphics2D _g;
+	private FontMetrics _metrics;
+
+	/**
+	 * Creates a Graphics2D, drawing into an image, to measure text with.
+	 */
+	@Before
+	public void setUpGraphics() {
+		_image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+		_g = _image.createGraphics();
+		_metrics = _g.getFontMetrics();
+	}
+
+	@After
+	public void disposeGraphics() {
+		_g.dispose();
+	}
+
+	/**
+	 * Checks that an entry holds the measurements given by FontMetrics.
+	 */
+	@Test
+	public void testEntryMeasuresText() {
+		TextLayoutCache.Entry entry = new TextLayoutCache(4).get("Carrier 7", _metrics);
+
+		assertEquals(_metrics.stringWidth("Carrier 7"), entry.width());
+		assertEquals(_metrics.getAscent(), entry.ascent());
+		assertEquals(_metrics.getDescent(), entry.descent());
+		assertEquals(9, entry.glyphs().getNumGlyphs());
+	}
+
+	/**
+	 * Checks that repeated lookups of a text are answered from the cache, and
+	 * that the least recently used entry is evicted when the cache is full.
+	 */
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() {
+		TextLayoutCache cache = new TextLayoutCache(2);
+		TextLayoutCache.Entry a = cache.get("a", _metrics);
+		TextLayoutCache.Entry b = cache.get("b", _metrics);
+		assertSame(a, cache.get("a", _metrics));
+
+		// "b" is now the least recently used.
+		cache.get("c", _metrics);
+		assertSame(a, cache.get("a", _metrics));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictions());
+
+		TextLayoutCache.Entry b2 = cache.get("b", _metrics);
+		assertEquals(b.width(), b2.width());
+		assertEquals(2, cache.hits());
+		assertEquals(4, cache.misses());
+		assertEquals(2, cache.evictions());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.hits());
+	}
+
+	/**
+	 * Checks that the same text in another font is a separate entry.
+	 */
+	@Test
+	public void testFontIsPartOfTheKey() {
+		TextLayoutCache cache = new TextLayoutCache(4);
+		TextLayoutCache.Entry plain = cache.get("Hexagon", _metrics);
+		FontMetrics larger = _g.getFontMetrics(_metrics.getFont().deriveFont(30f));
+		TextLayoutCache.Entry large = cache.get("Hexagon", larger);
+
+		assertEquals(2, cache.misses());
+		assertEquals(larger.stringWidth("Hexagon"), large.width());
+		assertEquals(true, large.width() > plain.width());
+	}
+
+	/**
+	 * Checks that drawCentredText, which draws cached glyphs, paints exactly
+	 * what drawString paints at the same position.
+	 */
+	@Test
+	public void testCachedTextIsPixelIdentical() {
+		String text = "Shape 42";
+		GraphicsPainter painter = new GraphicsPainter(_g);
+		_g.setColor(Color.WHITE);
+		for(int i = 0; i < 2; i++) {
+			painter.drawCentredText(10, 20, 120, 40, text);
+		}
+
+		BufferedImage expected = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+		g.setColor(Color.WHITE);
+		int ascent = _metrics.getAscent();
+		int descent = _metrics.getDescent();
+		int y = 20 + 40 / 2 + Math.abs(ascent - descent) / 2;
+		g.drawString(text, 10 + 120 / 2 - _metrics.stringWidth(text) / 2, y);
+		g.dispose();
+
+		for(int y1 = 0; y1 < 100; y1++) {
+			for(int x1 = 0; x1 < 200; x1++) {
+				assertEquals("Pixel " + x1 + "," + y1, expected.getRGB(x1, y1), _image.getRGB(x1, y1));
+			}
+		}
+	}
+}
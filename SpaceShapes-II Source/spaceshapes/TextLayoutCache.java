@@ -0,0 +1,225 @@
+package spaceshapes;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the measurements and glyphs of text drawn by
+ * GraphicsPainter.drawCentredText(). Labels are drawn every frame but rarely
+ * change, so measuring them and laying out their glyphs once per (text,
+ * font, rendering context) saves repeating that work on every paint. When
+ * full, the least recently used entry is evicted.
+ *
+ * A TextLayoutCache may be used by several threads at once.
+ */
+public class TextLayoutCache {
+
+	/**
+	 * Default number of entries held by a TextLayoutCache.
+	 */
+	public static final int DEFAULT_CAPACITY = 512;
+
+	// Cache shared by all GraphicsPainters.
+	private static final TextLayoutCache SHARED = new TextLayoutCache(DEFAULT_CAPACITY);
+
+	/**
+	 * Measurements and, once drawn, glyphs of a text in one font.
+	 */
+	public static final class Entry {
+		private final String _text;
+		private final Font _font;
+		private final FontRenderContext _context;
+
+		private final int _width;
+		private final int _ascent;
+		private final int _descent;
+
+		// Laid out on first use; guarded by this.
+		private GlyphVector _glyphs;
+
+		private Entry(String text, FontMetrics metrics) {
+			_text = text;
+			_font = metrics.getFont();
+			_context = metrics.getFontRenderContext();
+			_width = metrics.stringWidth(text);
+			_ascent = metrics.getAscent();
+			_descent = metrics.getDescent();
+		}
+
+		/**
+		 * Returns the advance width of the text, as FontMetrics.stringWidth().
+		 */
+		public int width() {
+			return _width;
+		}
+
+		/**
+		 * Returns the ascent of the font.
+		 */
+		public int ascent() {
+			return _ascent;
+		}
+
+		/**
+		 * Returns the descent of the font.
+		 */
+		public int descent() {
+			return _descent;
+		}
+
+		/**
+		 * Returns the text laid out as glyphs, laying it out on first use.
+		 * Callers drawing the GlyphVector should synchronize on this Entry,
+		 * as GlyphVectors are not safe for use by several threads at once.
+		 */
+		public synchronized GlyphVector glyphs() {
+			if(_glyphs == null) {
+				_glyphs = _font.createGlyphVector(_context, _text);
+			}
+			return _glyphs;
+		}
+	}
+
+	/*
+	 * Key of an Entry: a text in a font, measured in a rendering context.
+	 */
+	private static final class Key {
+		private final String _text;
+		private final Font _font;
+		private final FontRenderContext _context;
+
+		Key(String text, Font font, FontRenderContext context) {
+			_text = text;
+			_font = font;
+			_context = context;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key)other;
+			return _text.equals(key._text) && _font.equals(key._font) && _context.equals(key._context);
+		}
+
+		@Override
+		public int hashCode() {
+			return (_text.hashCode() * 31 + _font.hashCode()) * 31 + _context.hashCode();
+		}
+	}
+
+	// Entries in least to most recently used order; guarded by this.
+	private final LinkedHashMap<Key, Entry> _entries;
+
+	private final int _capacity;
+
+	private long _hits;
+
+	private long _misses;
+
+	private long _evictions;
+
+	/**
+	 * Returns the TextLayoutCache used by GraphicsPainters.
+	 */
+	public static TextLayoutCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates an empty TextLayoutCache holding at most capacity entries.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public TextLayoutCache(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		_capacity = capacity;
+		_entries = newMap();
+	}
+
+	/*
+	 * Creates the access-ordered map holding the entries, which evicts its
+	 * least recently used entry once it holds more than _capacity.
+	 */
+	@SuppressWarnings("serial")
+	private LinkedHashMap<Key, TextLayoutCache.Entry> newMap() {
+		return new LinkedHashMap<Key, TextLayoutCache.Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, TextLayoutCache.Entry> eldest) {
+				if(size() > _capacity) {
+					_evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the Entry for a text in the font, and the rendering context, of
+	 * the specified FontMetrics, measuring the text if it is not cached.
+	 */
+	public synchronized Entry get(String text, FontMetrics metrics) {
+		Key key = new Key(text, metrics.getFont(), metrics.getFontRenderContext());
+		Entry entry = _entries.get(key);
+		if(entry != null) {
+			_hits++;
+			return entry;
+		}
+		_misses++;
+		entry = new Entry(text, metrics);
+		_entries.put(key, entry);
+		return entry;
+	}
+
+	/**
+	 * Returns the number of get() calls answered from the cache.
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Returns the number of get() calls that had to measure their text.
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for others.
+	 */
+	public synchronized long evictions() {
+		return _evictions;
+	}
+
+	/**
+	 * Returns the number of entries held.
+	 */
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Returns the largest number of entries held.
+	 */
+	public int capacity() {
+		return _capacity;
+	}
+
+	/**
+	 * Discards every entry and resets the counters.
+	 */
+	public synchronized void clear() {
+		_entries.clear();
+		_hits = 0;
+		_misses = 0;
+		_evictions = 0;
+	}
+}
@@ -0,0 +1,252 @@
+package spaceshapes.export;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import spaceshapes.FrameSnapshot;
+import spaceshapes.ShapeModel;
+import spaceshapes.ShapeModelEvent;
+import spaceshapes.ShapeModelListener;
+import spaceshapes.views.OffscreenRenderer;
+
+/**
+ * Records the frames of a ShapeModel to a FrameSink, e.g. a PNG sequence or
+ * a raw video stream. Each frame is rendered on the calling thread into an
+ * image taken from a fixed pool, then handed to a worker thread that writes
+ * it to the FrameSink while the caller carries on. Once every image in the
+ * pool is waiting to be written, export() blocks until a worker returns
+ * one, so a simulation that outpaces the FrameSink is slowed down to its
+ * speed rather than accumulating frames.
+ *
+ * A FrameExporter can be registered as a ShapeModelListener, in which case
+ * it exports the composition after each clock() call. It renders the live
+ * Shapes, so it must be notified synchronously (the default), not through
+ * a ListenerQueue.
+ *
+ * The first exception thrown by the FrameSink stops the export and is
+ * rethrown by the next export() or close() call.
+ */
+public class FrameExporter implements ShapeModelListener, Closeable {
+
+	// Renderers, each owning one image, not in use by a worker.
+	private final BlockingQueue<OffscreenRenderer> _pool;
+
+	private final int _poolSize;
+
+	private final FrameSink _sink;
+
+	private final ExecutorService _workers;
+
+	// Index of the next frame to export.
+	private long _frames;
+
+	// First exception thrown by the FrameSink.
+	private volatile IOException _error;
+
+	private boolean _closed;
+
+	/**
+	 * Creates a FrameExporter with one worker per processor and two pooled
+	 * images per worker.
+	 */
+	public FrameExporter(int width, int height, FrameSink sink) {
+		this(width, height, sink, Runtime.getRuntime().availableProcessors(),
+				2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a FrameExporter that renders frames of the specified size.
+	 * @param workers number of threads writing frames to the FrameSink.
+	 * @param poolSize number of images, i.e. the largest number of frames
+	 *        rendered but not yet written.
+	 * @throws IllegalArgumentException if workers or poolSize is less than 1.
+	 */
+	public FrameExporter(int width, int height, FrameSink sink, int workers, int poolSize) {
+		if(workers < 1 || poolSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_sink = sink;
+		_poolSize = poolSize;
+		_pool = new ArrayBlockingQueue<OffscreenRenderer>(poolSize);
+		for(int i = 0; i < poolSize; i++) {
+			_pool.add(new OffscreenRenderer(width, height));
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		_workers = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "FrameExporter worker " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Exports a FrameSnapshot, such as one acquired from a ShapeModel's
+	 * FrameSnapshotBuffer. The FrameSnapshot is rendered before this method
+	 * returns, so it may be recycled afterwards.
+	 * @throws IOException if the FrameSink has failed.
+	 */
+	public void export(FrameSnapshot frame) throws IOException {
+		OffscreenRenderer renderer = take();
+		renderer.render(frame);
+		submit(renderer);
+	}
+
+	/**
+	 * Exports the current state of a ShapeModel's composition.
+	 * @throws IOException if the FrameSink has failed.
+	 */
+	public void export(ShapeModel model) throws IOException {
+		OffscreenRenderer renderer = take();
+		renderer.render(model);
+		submit(renderer);
+	}
+
+	/**
+	 * Exports the composition of the ShapeModel that has just been clocked.
+	 * Other changes are not exported; neither are frames once the FrameSink
+	 * has failed, which close() reports.
+	 */
+	public void update(ShapeModelEvent event) {
+		if(event.eventType() == ShapeModelEvent.EventType.ShapeMoved && _error == null) {
+			try {
+				export(event.source());
+			} catch(IOException e) {
+				// Kept in _error and rethrown by close().
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of frames exported so far, including those still
+	 * being written.
+	 */
+	public long frames() {
+		return _frames;
+	}
+
+	/**
+	 * Returns the number of frames rendered but not yet written.
+	 */
+	public int pending() {
+		return _poolSize - _pool.size();
+	}
+
+	/**
+	 * Waits for all exported frames to be written, then stops the workers
+	 * and closes the FrameSink.
+	 * @throws IOException if the FrameSink failed at any point.
+	 */
+	public void close() throws IOException {
+		if(_closed) {
+			return;
+		}
+		_closed = true;
+		_workers.shutdown();
+
+		boolean interrupted = false;
+		while(true) {
+			try {
+				if(_workers.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for(OffscreenRenderer renderer : _pool) {
+			renderer.dispose();
+		}
+
+		try {
+			_sink.close();
+		} catch(IOException e) {
+			if(_error == null) {
+				_error = e;
+			}
+		}
+		if(_error != null) {
+			throw _error;
+		}
+	}
+
+	/*
+	 * Takes a renderer from the pool, waiting for a worker to return one if
+	 * necessary.
+	 */
+	private OffscreenRenderer take() throws IOException {
+		if(_closed) {
+			throw new IllegalStateException("FrameExporter closed");
+		}
+		checkError();
+
+		boolean interrupted = false;
+		OffscreenRenderer renderer = null;
+		while(renderer == null) {
+			try {
+				renderer = _pool.take();
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return renderer;
+	}
+
+	/*
+	 * Hands the image of a renderer to a worker, which writes it to the
+	 * FrameSink and returns the renderer to the pool.
+	 */
+	private void submit(final OffscreenRenderer renderer) {
+		final long index = _frames++;
+		_workers.execute(new Runnable() {
+			public void run() {
+				try {
+					if(_error == null) {
+						_sink.write(index, renderer.image());
+					}
+				} catch(IOException e) {
+					fail(e);
+				} catch(RuntimeException e) {
+					fail(new IOException(e));
+				} finally {
+					_pool.add(renderer);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Records the first exception thrown by the FrameSink.
+	 */
+	private synchronized void fail(IOException e) {
+		if(_error == null) {
+			_error = e;
+		}
+	}
+
+	/*
+	 * Rethrows the first exception thrown by the FrameSink, if any.
+	 */
+	private void checkError() throws IOException {
+		IOException error = _error;
+		if(error != null) {
+			throw error;
+		}
+	}
+}
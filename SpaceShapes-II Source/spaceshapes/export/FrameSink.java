@@ -0,0 +1,21 @@
+package spaceshapes.export;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Interface to be implemented by classes that store the frames exported by
+ * a FrameExporter. A FrameExporter calls write() from its worker threads,
+ * so a FrameSink must accept concurrent write() calls for different frames.
+ * Frames are numbered from 0 and handed to the workers in order; a
+ * FrameSink that needs them in order must put them back in order itself.
+ */
+public interface FrameSink extends Closeable {
+	/**
+	 * Writes a frame. The image belongs to the FrameExporter's pool and is
+	 * reused once write() returns, so it must not be kept.
+	 * @param index position of the frame in the exported sequence.
+	 */
+	void write(long index, BufferedImage image) throws IOException;
+}
@@ -0,0 +1,54 @@
+package spaceshapes.export;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * FrameSink that writes each frame to its own PNG file, named after a
+ * prefix and the frame's index, e.g. frame-000042.png. Frames are encoded
+ * independently, so any number of workers can write them at once.
+ */
+public class PngSequenceSink implements FrameSink {
+
+	private final File _directory;
+
+	private final String _prefix;
+
+	/**
+	 * Creates a PngSequenceSink that writes files named prefix-NNNNNN.png
+	 * into a directory, creating the directory if necessary.
+	 * @throws IOException if the directory cannot be created.
+	 */
+	public PngSequenceSink(File directory, String prefix) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		_directory = directory;
+		_prefix = prefix;
+	}
+
+	/**
+	 * Returns the file a frame is written to.
+	 */
+	public File file(long index) {
+		return new File(_directory, String.format("%s-%06d.png", _prefix, index));
+	}
+
+	/**
+	 * Encodes a frame as a PNG file.
+	 */
+	public void write(long index, BufferedImage image) throws IOException {
+		if(!ImageIO.write(image, "png", file(index))) {
+			throw new IOException("No PNG writer for image type " + image.getType());
+		}
+	}
+
+	/**
+	 * Does nothing: each file is closed as it is written.
+	 */
+	public void close() {
+	}
+}
@@ -0,0 +1,128 @@
+package spaceshapes.export;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * FrameSink that writes frames to an OutputStream as raw 24-bit RGB pixels,
+ * row by row with no header or padding, as expected by video encoders'
+ * raw input formats. For example, the output of a 500x500 animation at 40
+ * frames per second can be piped into
+ *
+ *   ffmpeg -f rawvideo -pixel_format rgb24 -video_size 500x500
+ *          -framerate 40 -i - out.mp4
+ *
+ * Workers convert frames to bytes in parallel, but each waits for the
+ * frames before its own to be written before writing, so the stream holds
+ * the frames in order. This relies on frames being numbered from 0 without
+ * gaps, as a FrameExporter numbers them.
+ */
+public class RawRgbSink implements FrameSink {
+
+	private final OutputStream _out;
+
+	// Index of the next frame to write to _out, guarded by this.
+	private long _next;
+
+	// Set once a write fails, so that workers waiting for it give up.
+	private boolean _failed;
+
+	// Per-worker buffers, reused from frame to frame.
+	private final ThreadLocal<int[]> _pixels = new ThreadLocal<int[]>();
+
+	private final ThreadLocal<byte[]> _bytes = new ThreadLocal<byte[]>();
+
+	/**
+	 * Creates a RawRgbSink that writes to the specified stream. The stream
+	 * is closed when the RawRgbSink is.
+	 */
+	public RawRgbSink(OutputStream out) {
+		_out = out;
+	}
+
+	/**
+	 * Converts a frame to RGB bytes, then writes them once all earlier
+	 * frames have been written.
+	 */
+	public void write(long index, BufferedImage image) throws IOException {
+		byte[] bytes;
+		try {
+			bytes = toRgb(image);
+		} catch(RuntimeException e) {
+			// Later frames must not wait for this one.
+			synchronized(this) {
+				_failed = true;
+				notifyAll();
+			}
+			throw e;
+		}
+
+		synchronized(this) {
+			boolean interrupted = false;
+			while(_next != index && !_failed) {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if(_failed) {
+				throw new IOException("Frame " + index + " not written: an earlier frame failed");
+			}
+
+			try {
+				_out.write(bytes);
+				_next++;
+			} catch(IOException e) {
+				_failed = true;
+				throw e;
+			} finally {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of frames written so far.
+	 */
+	public synchronized long framesWritten() {
+		return _next;
+	}
+
+	/*
+	 * Converts an image to RGB bytes, in a buffer owned by the calling
+	 * thread.
+	 */
+	private byte[] toRgb(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = _pixels.get();
+		if(pixels == null || pixels.length != width * height) {
+			pixels = new int[width * height];
+			_pixels.set(pixels);
+			_bytes.set(new byte[width * height * 3]);
+		}
+		byte[] bytes = _bytes.get();
+
+		image.getRGB(0, 0, width, height, pixels, 0, width);
+		for(int i = 0, b = 0; i < pixels.length; i++) {
+			int rgb = pixels[i];
+			bytes[b++] = (byte)(rgb >> 16);
+			bytes[b++] = (byte)(rgb >> 8);
+			bytes[b++] = (byte)rgb;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Flushes and closes the stream.
+	 */
+	public void close() throws IOException {
+		_out.flush();
+		_out.close();
+	}
+}
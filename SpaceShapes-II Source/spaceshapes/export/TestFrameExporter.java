@@ -0,0 +1,127 @@
+package spaceshapes.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import spaceshapes.DynamicShape;
+import spaceshapes.OvalShape;
+import spaceshapes.ShapeModel;
+import spaceshapes.views.OffscreenRenderer;
+
+/**
+ * Class to test that a FrameExporter writes every frame, in order, through
+ * its worker threads.
+ */
+public class TestFrameExporter {
+
+	private static final int FRAMES = 20;
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	private ShapeModel _model;
+
+	/**
+	 * Creates a 40x30 ShapeModel holding two moving Shapes.
+	 */
+	@Before
+	public void setUpModel() {
+		_model = new ShapeModel(new Dimension(40, 30));
+		_model.add(new DynamicShape(0, 0, 3, 2, 10, 10, Color.RED), _model.root());
+		_model.add(new OvalShape(20, 10, -2, 1, 8, 8), _model.root());
+	}
+
+	/**
+	 * Checks that a raw RGB stream written by several workers holds every
+	 * frame in order, as rendered one at a time.
+	 */
+	@Test
+	public void testRawStreamIsInOrder() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrameExporter exporter = new FrameExporter(40, 30, new RawRgbSink(out), 4, 3);
+		_model.addShapeModelListener(exporter);
+
+		OffscreenRenderer renderer = new OffscreenRenderer(40, 30);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for(int i = 0; i < FRAMES; i++) {
+			_model.clock();
+			BufferedImage image = renderer.render(_model);
+			for(int y = 0; y < 30; y++) {
+				for(int x = 0; x < 40; x++) {
+					int rgb = image.getRGB(x, y);
+					expected.write(rgb >> 16);
+					expected.write(rgb >> 8);
+					expected.write(rgb);
+				}
+			}
+			assertTrue(exporter.pending() <= 3);
+		}
+		exporter.close();
+
+		assertEquals(FRAMES, exporter.frames());
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	/**
+	 * Checks that a PNG sequence holds one readable file per frame.
+	 */
+	@Test
+	public void testPngSequence() throws IOException {
+		PngSequenceSink sink = new PngSequenceSink(new File(_folder.getRoot(), "frames"), "frame");
+		FrameExporter exporter = new FrameExporter(40, 30, sink, 2, 2);
+		for(int i = 0; i < 5; i++) {
+			_model.clock();
+			exporter.export(_model);
+		}
+		exporter.close();
+
+		for(int i = 0; i < 5; i++) {
+			BufferedImage image = ImageIO.read(sink.file(i));
+			assertEquals(40, image.getWidth());
+			assertEquals(30, image.getHeight());
+		}
+		assertEquals(5, sink.file(0).getParentFile().list().length);
+	}
+
+	/**
+	 * Checks that an exception thrown by the FrameSink is reported by
+	 * close().
+	 */
+	@Test
+	public void testSinkFailureIsReported() {
+		FrameExporter exporter = new FrameExporter(40, 30, new FrameSink() {
+			public void write(long index, BufferedImage image) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			public void close() {
+			}
+		}, 1, 1);
+
+		try {
+			for(int i = 0; i < FRAMES; i++) {
+				exporter.export(_model);
+			}
+			exporter.close();
+			fail();
+		} catch(IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+	}
+}
@@ -4,6 +4,7 @@ import spaceshapes.DynamicShape;
 import spaceshapes.ImageRectangleShape;
 import spaceshapes.CarrierShape;
 import spaceshapes.Shape;
+import spaceshapes.ShapeFactory;
 import spaceshapes.ShapeModel;
 import spaceshapes.forms.util.FormComponent;
 import spaceshapes.forms.util.FormHandler;
@@ -45,6 +46,22 @@ public class FormResolver {
 	 *        the newly created Shape object.
 	 */
 	public static FormHandler getFormHandler(Class<? extends Shape> shapeClass, ShapeModel model, CarrierShape parent) {
+		ShapeFactory factory = new ShapeFactory();
+		factory.register(shapeClass);
+		return getFormHandler(shapeClass, model, parent, factory);
+	}
+	
+	/**
+	 * Returns a FormHandler implementation for creating an instance of a 
+	 * specified Shape subclass, as getFormHandler(Class, ShapeModel,
+	 * CarrierShape) does, except that shapes are created through a
+	 * ShapeFactory whose constructor lookups are shared between handlers.
+	 * 
+	 * @param factory the ShapeFactory with which to instantiate shapeClass,
+	 *        which should be registered with it.
+	 */
+	public static FormHandler getFormHandler(Class<? extends Shape> shapeClass, ShapeModel model,
+			CarrierShape parent, ShapeFactory factory) {
 		FormHandler handler = null;
 		
 		if(shapeClass == DynamicShape.class) {
@@ -52,7 +69,7 @@ public class FormResolver {
 		} else if(shapeClass == ImageRectangleShape.class) {
 			handler = new ImageShapeFormHandler(model, parent);
 		} else {
-			handler = new ShapeFormHandler(shapeClass, model, parent);
+			handler = new ShapeFormHandler(shapeClass, model, parent, factory);
 		}
 		
 		return handler;
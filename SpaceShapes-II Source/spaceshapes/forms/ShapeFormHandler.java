@@ -1,10 +1,8 @@
 package spaceshapes.forms;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-
 import spaceshapes.CarrierShape;
 import spaceshapes.Shape;
+import spaceshapes.ShapeFactory;
 import spaceshapes.ShapeModel;
 import spaceshapes.forms.util.Form;
 import spaceshapes.forms.util.FormHandler;
@@ -20,9 +18,11 @@ public class ShapeFormHandler implements FormHandler {
 	private Class<? extends Shape> _classToInstantiate;
 	private ShapeModel _model;
 	private CarrierShape _parentOfNewShape;
+	private ShapeFactory _factory;
 
 	/**
-	 * Creates a ShapeFormHandler.
+	 * Creates a ShapeFormHandler that uses a ShapeFactory of its own, able to
+	 * create only the specified Shape subclass.
 	 * 
 	 * @param cls the Shape subclass to instantiate.
 	 *
@@ -35,9 +35,32 @@ public class ShapeFormHandler implements FormHandler {
 	public ShapeFormHandler(Class<? extends Shape> cls,
 			ShapeModel model,
 			CarrierShape parent) {
+		this(cls, model, parent, new ShapeFactory());
+		_factory.register(cls);
+	}
+
+	/**
+	 * Creates a ShapeFormHandler.
+	 * 
+	 * @param cls the Shape subclass to instantiate.
+	 *
+	 * @param model the ShapeModel to which the handler should add a newly 
+	 *        constructed Shape instance. 
+	 * 
+	 * @param parent the CarrierShape object that will serve as the parent for
+	 *        a new Shape object.
+	 * 
+	 * @param factory the ShapeFactory with which to instantiate cls, which
+	 *        should be registered with it.
+	 */
+	public ShapeFormHandler(Class<? extends Shape> cls,
+			ShapeModel model,
+			CarrierShape parent,
+			ShapeFactory factory) {
 		_classToInstantiate = cls;
 		_model = model;
 		_parentOfNewShape = parent;
+		_factory = factory;
 	}
 	
 	/**
@@ -52,13 +75,6 @@ public class ShapeFormHandler implements FormHandler {
 	@Override
 	public void processForm(Form form) {
 		try {
-			// Attempt to find a 7-argument constructor for the Shape subclass.
-			Constructor<? extends Shape> cons = _classToInstantiate.getConstructor(
-					Integer.TYPE, Integer.TYPE,
-					Integer.TYPE, Integer.TYPE,
-					Integer.TYPE, Integer.TYPE,
-					String.class);
-	
 			int x = 0;
 			int y = 0;
 			int deltaX = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_X);
@@ -67,32 +83,14 @@ public class ShapeFormHandler implements FormHandler {
 			int height = form.getFieldValue(Integer.class, ShapeFormElement.HEIGHT);
 			String text = form.getFieldValue(String.class, ShapeFormElement.TEXT);
 			
-			// Instantiate shape class, calling the 7-argument constructor.
-			Shape newShape = (Shape)cons.newInstance(x, y, deltaX, deltaY, width, height, text);
+			// Instantiate shape class through its 7-argument constructor.
+			Shape newShape = _factory.create(_classToInstantiate, x, y, deltaX, deltaY, width, height, text);
 			
 			_model.add(newShape, _parentOfNewShape);
 			
-		} catch(NoSuchMethodException e) {
-			// Thrown if a constructor with the specified arguments is not 
-			// defined by the class.
-			System.err.println(e);
-		} catch(SecurityException e) {
-			// Thrown if a security manager is set and the running program is
-			// not permitted to load classes at run-time.
-			System.err.println(e);
-		} catch(InstantiationException e) {
-			// Thrown if the loaded class cannot be instantiated, e.g. the
-			// class might be abstract.
-			System.err.println(e);
-		} catch(IllegalAccessException e) {
-			// Thrown if the class' constructor is hidden, e.g. private.
-			System.err.println(e);
 		} catch(IllegalArgumentException e) {
-			// Thrown if the actual arguments are incompatible with the formal
-			// arguments.
-			System.err.println(e);
-		} catch(InvocationTargetException e) {
-			// Thrown if the constructor itself throws an exception.
+			// Thrown if the class has no public 7-argument constructor, so is
+			// not registered with the factory, or by the constructor itself.
 			System.err.println(e);
 		} 
 	}
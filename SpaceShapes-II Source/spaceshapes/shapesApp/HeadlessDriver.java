@@ -0,0 +1,135 @@
+package spaceshapes.shapesApp;
+
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+import spaceshapes.FrameSnapshot;
+import spaceshapes.FrameSnapshotBuffer;
+import spaceshapes.SceneSnapshot;
+import spaceshapes.ShapeModel;
+import spaceshapes.export.FrameExporter;
+import spaceshapes.export.FrameSink;
+import spaceshapes.export.PngSequenceSink;
+import spaceshapes.export.RawRgbSink;
+import spaceshapes.views.OffscreenRenderer;
+
+/**
+ * Main program that runs the SpaceShape animation without a GUI. A
+ * HeadlessDriver populates a ShapeModel as the SpaceShape application does,
+ * clocks it a given number of times and renders each published frame with an
+ * OffscreenRenderer, then reports the time taken. No window is opened, so the
+ * program runs with java.awt.headless=true, e.g. on a server.
+ *
+ * Usage: HeadlessDriver [-scene file | -import file] [-png directory | -raw file]
+ *                       [ticks [output.png]]
+ *
+ * With -scene, the composition is loaded from a file saved by SceneSnapshot
+ * rather than populated as the SpaceShape application does. With -import, it
+ * is read by a ShapeImporter from a CSV (.csv) or JSON lines file.
+ * With -png or -raw, every frame is also exported through a FrameExporter,
+ * as a PNG sequence or as a raw RGB stream; a raw file of - writes the
+ * stream to standard output, e.g. to pipe it into a video encoder. If an
+ * output file is given, the last frame rendered is written to it as a PNG
+ * image. Timings are reported on standard error.
+ */
+public class HeadlessDriver {
+	private static final int DEFAULT_TICKS = 1000;
+
+	// Ticks run before timing, to let the JIT compiler settle.
+	private static final int WARM_UP_TICKS = 100;
+
+	public static void main(String[] args) throws IOException {
+		// Must be set before any AWT class initialises the toolkit.
+		if(System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+		File scene = null;
+		File imported = null;
+		int next = 0;
+		if(args.length > 1 && args[0].equals("-scene")) {
+			scene = new File(args[1]);
+			next = 2;
+		} else if(args.length > 1 && args[0].equals("-import")) {
+			imported = new File(args[1]);
+			next = 2;
+		}
+		FrameSink sink = null;
+		if(args.length > next + 1 && args[next].equals("-png")) {
+			sink = new PngSequenceSink(new File(args[next + 1]), "frame");
+			next += 2;
+		} else if(args.length > next + 1 && args[next].equals("-raw")) {
+			OutputStream out = args[next + 1].equals("-") ? System.out : new FileOutputStream(args[next + 1]);
+			if(out == System.out) {
+				// Keep anything else printed out of the stream.
+				System.setOut(System.err);
+			}
+			sink = new RawRgbSink(new BufferedOutputStream(out));
+			next += 2;
+		}
+		int ticks = args.length > next ? Integer.parseInt(args[next]) : DEFAULT_TICKS;
+		File output = args.length > next + 1 ? new File(args[next + 1]) : null;
+
+		ShapeModel model;
+		Dimension bounds;
+		if(scene != null) {
+			model = SceneSnapshot.load(scene);
+			bounds = new Dimension(model.root().width(), model.root().height());
+		} else {
+			bounds = ShapeConfig.instance().getAnimationBounds();
+			model = new ShapeModel(bounds);
+			if(imported != null) {
+				ShapeImporter importer = new ShapeImporter(model);
+				importer.importFile(imported);
+				System.err.println(importer.added() + " shapes imported, " + importer.rejected() + " rejected");
+			} else {
+				SpaceShape.populateModel(model);
+			}
+		}
+
+		FrameSnapshotBuffer frames = model.frames();
+		OffscreenRenderer renderer = new OffscreenRenderer(bounds.width, bounds.height, true);
+		FrameExporter exporter = sink == null ? null : new FrameExporter(bounds.width, bounds.height, sink);
+
+		for(int i = 0; i < WARM_UP_TICKS; i++) {
+			model.clock();
+			renderer.render(frames.acquire());
+		}
+
+		long clockTime = 0;
+		long renderTime = 0;
+		for(int i = 0; i < ticks; i++) {
+			long start = System.nanoTime();
+			model.clock();
+			long clocked = System.nanoTime();
+			FrameSnapshot frame = frames.acquire();
+			renderer.render(frame);
+			if(exporter != null) {
+				exporter.export(frame);
+			}
+			long rendered = System.nanoTime();
+
+			clockTime += clocked - start;
+			renderTime += rendered - clocked;
+		}
+
+		if(exporter != null) {
+			exporter.close();
+		}
+
+		System.err.printf("%d frames: clock %.1f us/frame, render and export %.1f us/frame, %.0f frames/s%n",
+				ticks, clockTime / 1000.0 / Math.max(ticks, 1), renderTime / 1000.0 / Math.max(ticks, 1),
+				ticks * 1e9 / Math.max(clockTime + renderTime, 1));
+
+		if(output != null) {
+			ImageIO.write(renderer.image(), "png", output);
+			System.err.println("Last frame written to " + output);
+		}
+		renderer.dispose();
+	}
+}
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Properties;
 
 import spaceshapes.Shape;
+import spaceshapes.ShapeFactory;
 
 
 /**
@@ -46,6 +47,7 @@ public class ShapeConfig {
 	private Dimension _bounds;
 	private String[] _shapeClassNames;
 	private List<Class<? extends Shape>> _shapeClasses;
+	private ShapeFactory _shapeFactory;
 	
 	// Singleton instance.
 	private static ShapeConfig instance;
@@ -171,6 +173,18 @@ public class ShapeConfig {
 		return Collections.unmodifiableList(_shapeClasses);
 	}
 	
+	/**
+	 * Returns a ShapeFactory that creates instances of the Shape classes
+	 * returned by getShapeClasses(). The factory is built on the first call,
+	 * resolving each class's constructors once, and shared thereafter.
+	 */
+	public synchronized ShapeFactory getShapeFactory() {
+		if(_shapeFactory == null) {
+			_shapeFactory = new ShapeFactory(getShapeClasses());
+		}
+		return _shapeFactory;
+	}
+	
 	/*
 	 * Implementation method to read/validate bound properties.
 	 */
@@ -0,0 +1,585 @@
+package spaceshapes.shapesApp;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeFactory;
+import spaceshapes.ShapeModel;
+
+/**
+ * Imports shapes into a ShapeModel from line-delimited files, as written by
+ * tools that generate scenes. Each line is a record describing one shape by
+ * the fields:
+ * <ul>
+ * <li>type: the name of the Shape subclass, in full or without its package;</li>
+ * <li>x, y, deltaX, deltaY, width and height, integers that default to 0;</li>
+ * <li>text, which may be absent;</li>
+ * <li>colour, for classes with a constructor that also takes a Color, in
+ * any form Color.decode() accepts, e.g. #FF8000;</li>
+ * <li>id, by which later records may name the shape as their parent; it
+ * defaults to the number of the record, counting from 1;</li>
+ * <li>parent, the id of an earlier CarrierShape record, or absent to add the
+ * shape to the root.</li>
+ * </ul>
+ * In Format.Csv the first line is a header naming the field in each column;
+ * an unquoted empty value is absent, and values holding commas or quotes are
+ * quoted, with quotes doubled. In Format.JsonLines each line is a flat JSON
+ * object whose members are the fields, e.g.
+ * {"type": "OvalShape", "x": 10, "y": 20, "width": 30, "height": 15}.
+ * Blank lines are skipped, as are unknown columns and members.
+ *
+ * The file is read a line at a time and shapes are added to the model in
+ * batches between ShapeModel.beginBatch() and commitBatch(), so listeners are
+ * notified once per batch. Only the ids of CarrierShapes are remembered, so
+ * memory use does not depend on the size of the file. Shapes are created by
+ * a ShapeFactory, by default that of the ShapeConfig.
+ *
+ * A shape the model will not add, e.g. because it does not fit its parent,
+ * is counted as rejected, along with its descendants. A malformed record
+ * stops the import with an IOException naming its line; the shapes of the
+ * records before it remain in the model.
+ *
+ * An importer changes the model from the thread that calls it, so in the
+ * SpaceShape application it should be called from the event dispatch thread.
+ */
+public class ShapeImporter {
+
+	/**
+	 * Default number of shapes added to the model per batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Formats a ShapeImporter reads: comma-separated values with a header
+	 * line, or one JSON object per line.
+	 */
+	public enum Format {Csv, JsonLines};
+
+	/**
+	 * Interface to be implemented by classes that follow the progress of an
+	 * import. progress() is called after each batch is added, and once more
+	 * when the import ends.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param records the number of records read so far.
+		 * @param added the number of shapes added to the model so far.
+		 * @param bytesRead the number of bytes read from the input so far.
+		 */
+		void progress(long records, long added, long bytesRead);
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// === Fields of a record, as indices into the array of values.
+	private static final String[] FIELD_NAMES = {"id", "type", "x", "y", "deltaX", "deltaY",
+			"width", "height", "text", "colour", "parent"};
+
+	private static final int ID = 0;
+	private static final int TYPE = 1;
+	private static final int X = 2;
+	private static final int Y = 3;
+	private static final int DELTA_X = 4;
+	private static final int DELTA_Y = 5;
+	private static final int WIDTH = 6;
+	private static final int HEIGHT = 7;
+	private static final int TEXT = 8;
+	private static final int COLOUR = 9;
+	private static final int PARENT = 10;
+	// ===
+
+	private final ShapeModel _model;
+
+	private final ShapeFactory _factory;
+
+	private int _batchSize = DEFAULT_BATCH_SIZE;
+
+	private ProgressListener _listener;
+
+	// === State of the import in progress.
+	private final Map<String, CarrierShape> _carriers = new HashMap<String, CarrierShape>();
+
+	private final List<Shape> _batch = new ArrayList<Shape>();
+
+	private final List<CarrierShape> _batchParents = new ArrayList<CarrierShape>();
+
+	private CountingInputStream _input;
+
+	private long _records;
+
+	private long _added;
+
+	private long _rejected;
+	// ===
+
+	/**
+	 * Creates a ShapeImporter that adds shapes to a model, creating them
+	 * from the Shape subclasses named in the ShapeConfig.
+	 */
+	public ShapeImporter(ShapeModel model) {
+		this(model, ShapeConfig.instance().getShapeFactory());
+	}
+
+	/**
+	 * Creates a ShapeImporter that adds shapes to a model, creating them
+	 * from the specified Shape subclasses. Classes without a public
+	 * constructor taking (x, y, deltaX, deltaY, width, height, text) cannot
+	 * be imported and are ignored.
+	 */
+	public ShapeImporter(ShapeModel model, List<Class<? extends Shape>> shapeClasses) {
+		this(model, new ShapeFactory(shapeClasses));
+	}
+
+	/**
+	 * Creates a ShapeImporter that adds shapes to a model, creating them
+	 * from the classes registered with a ShapeFactory.
+	 */
+	public ShapeImporter(ShapeModel model, ShapeFactory factory) {
+		_model = model;
+		_factory = factory;
+	}
+
+	/**
+	 * Sets the number of shapes added to the model per batch.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public void setBatchSize(int batchSize) {
+		if(batchSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the ProgressListener told of the progress of each import, or null
+	 * for none.
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		_listener = listener;
+	}
+
+	/**
+	 * Imports the shapes described by a file: in Format.Csv if its name ends
+	 * with .csv, in Format.JsonLines otherwise.
+	 * @return the number of shapes added to the model.
+	 * @throws IOException if the file cannot be read or holds a malformed
+	 *         record.
+	 */
+	public long importFile(File file) throws IOException {
+		Format format = file.getName().toLowerCase().endsWith(".csv") ? Format.Csv : Format.JsonLines;
+		InputStream in = new FileInputStream(file);
+		try {
+			return importFrom(in, format);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Imports the shapes described by a stream of UTF-8 text in the
+	 * specified format. The stream is read to its end but not closed.
+	 * @return the number of shapes added to the model.
+	 * @throws IOException if the stream cannot be read or holds a malformed
+	 *         record.
+	 */
+	public long importFrom(InputStream in, Format format) throws IOException {
+		_carriers.clear();
+		_records = 0;
+		_added = 0;
+		_rejected = 0;
+		_input = new CountingInputStream(in);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(_input, UTF_8));
+
+		int[] columns = null;
+		String[] values = new String[FIELD_NAMES.length];
+		int lineNumber = 0;
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				if(line.trim().isEmpty()) {
+					continue;
+				}
+				Arrays.fill(values, null);
+				if(format == Format.JsonLines) {
+					parseJson(line, values);
+				} else if(columns == null) {
+					columns = parseHeader(parseCsv(line));
+					continue;
+				} else {
+					List<String> row = parseCsv(line);
+					if(row.size() != columns.length) {
+						throw new IllegalArgumentException(row.size() + " values for "
+								+ columns.length + " columns");
+					}
+					for(int i = 0; i < columns.length; i++) {
+						if(columns[i] >= 0) {
+							values[columns[i]] = row.get(i);
+						}
+					}
+				}
+				_records++;
+				addRecord(values);
+			}
+		} catch(IllegalArgumentException e) {
+			// Includes NumberFormatException.
+			throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+		} finally {
+			flush();
+			_carriers.clear();
+			_input = null;
+		}
+		return _added;
+	}
+
+	/**
+	 * Returns the number of records read by the last import.
+	 */
+	public long records() {
+		return _records;
+	}
+
+	/**
+	 * Returns the number of shapes added to the model by the last import.
+	 */
+	public long added() {
+		return _added;
+	}
+
+	/**
+	 * Returns the number of shapes the model did not add in the last import.
+	 */
+	public long rejected() {
+		return _rejected;
+	}
+
+	/*
+	 * Creates the shape described by a record and queues it to be added.
+	 */
+	private void addRecord(String[] values) {
+		String type = values[TYPE];
+		Class<? extends Shape> shapeClass = type == null ? null : _factory.resolve(type.trim());
+		if(shapeClass == null) {
+			throw new IllegalArgumentException("Unknown shape type " + type);
+		}
+
+		CarrierShape parent = _model.root();
+		if(values[PARENT] != null && !values[PARENT].trim().isEmpty()) {
+			parent = _carriers.get(values[PARENT].trim());
+			if(parent == null) {
+				throw new IllegalArgumentException("No CarrierShape with id " + values[PARENT].trim());
+			}
+		}
+
+		int x = intValue(values[X]);
+		int y = intValue(values[Y]);
+		int deltaX = intValue(values[DELTA_X]);
+		int deltaY = intValue(values[DELTA_Y]);
+		int width = intValue(values[WIDTH]);
+		int height = intValue(values[HEIGHT]);
+		String text = values[TEXT];
+		Shape shape;
+		try {
+			if(values[COLOUR] != null && _factory.takesColour(shapeClass)) {
+				Color colour = Color.decode(values[COLOUR].trim());
+				shape = _factory.create(shapeClass, x, y, deltaX, deltaY, width, height, text, colour);
+			} else {
+				shape = _factory.create(shapeClass, x, y, deltaX, deltaY, width, height, text);
+			}
+		} catch(RuntimeException e) {
+			// Thrown by the constructor.
+			throw new IllegalArgumentException("Cannot create " + type + ": " + e, e);
+		}
+
+		if(shape instanceof CarrierShape) {
+			String id = values[ID] == null ? Long.toString(_records) : values[ID].trim();
+			_carriers.put(id, (CarrierShape)shape);
+		}
+		_batch.add(shape);
+		_batchParents.add(parent);
+		if(_batch.size() >= _batchSize) {
+			flush();
+		}
+	}
+
+	/*
+	 * Adds the queued shapes to the model as one batch and reports progress.
+	 */
+	private void flush() {
+		if(!_batch.isEmpty()) {
+			_model.beginBatch();
+			try {
+				for(int i = 0; i < _batch.size(); i++) {
+					CarrierShape parent = _batchParents.get(i);
+					// A parent that was rejected is not in the model.
+					boolean attached = parent == _model.root() || parent.parent() != null;
+					if(attached && _model.add(_batch.get(i), parent)) {
+						_added++;
+					} else {
+						_rejected++;
+					}
+				}
+			} finally {
+				_batch.clear();
+				_batchParents.clear();
+				_model.commitBatch();
+			}
+		}
+		if(_listener != null && _input != null) {
+			_listener.progress(_records, _added, _input._count);
+		}
+	}
+
+	private static int intValue(String value) {
+		return value == null ? 0 : Integer.parseInt(value.trim());
+	}
+
+	/*
+	 * Returns, for each column named in a CSV header, the index of its field,
+	 * or -1 for an unknown column.
+	 */
+	private static int[] parseHeader(List<String> names) {
+		int[] columns = new int[names.size()];
+		for(int i = 0; i < columns.length; i++) {
+			columns[i] = field(names.get(i));
+		}
+		return columns;
+	}
+
+	private static int field(String name) {
+		if(name == null) {
+			return -1;
+		}
+		name = name.trim();
+		if(name.equals("color")) {
+			return COLOUR;
+		}
+		return Arrays.asList(FIELD_NAMES).indexOf(name);
+	}
+
+	/*
+	 * Splits a line of comma-separated values. An unquoted empty value is
+	 * returned as null.
+	 */
+	static List<String> parseCsv(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		int i = 0;
+		while(true) {
+			boolean quoted = i < line.length() && line.charAt(i) == '"';
+			value.setLength(0);
+			if(quoted) {
+				i++;
+				while(true) {
+					if(i >= line.length()) {
+						throw new IllegalArgumentException("Unterminated quoted value");
+					}
+					char c = line.charAt(i++);
+					if(c == '"') {
+						if(i < line.length() && line.charAt(i) == '"') {
+							value.append('"');
+							i++;
+						} else {
+							break;
+						}
+					} else {
+						value.append(c);
+					}
+				}
+				if(i < line.length() && line.charAt(i) != ',') {
+					throw new IllegalArgumentException("Unexpected character after quoted value");
+				}
+			} else {
+				while(i < line.length() && line.charAt(i) != ',') {
+					value.append(line.charAt(i++));
+				}
+			}
+			values.add(quoted || value.length() > 0 ? value.toString() : null);
+			if(i >= line.length()) {
+				return values;
+			}
+			// Skip the comma.
+			i++;
+		}
+	}
+
+	/*
+	 * Parses a flat JSON object, storing the value of each known member, as
+	 * text, into values. JSON null leaves a field absent.
+	 */
+	static void parseJson(String line, String[] values) {
+		JsonReader json = new JsonReader(line);
+		json.expect('{');
+		if(json.peek() == '}') {
+			json.expect('}');
+		} else {
+			do {
+				String name = json.string();
+				json.expect(':');
+				String value = json.value();
+				int field = field(name);
+				if(field >= 0) {
+					values[field] = value;
+				}
+			} while(json.next(',', '}'));
+		}
+		if(json.peek() != JsonReader.END) {
+			throw new IllegalArgumentException("Unexpected text after JSON object");
+		}
+	}
+
+	/*
+	 * Reads the tokens of a single line of JSON.
+	 */
+	private static class JsonReader {
+		static final char END = '\uFFFF';
+
+		private final String _text;
+
+		private int _position;
+
+		JsonReader(String text) {
+			_text = text;
+		}
+
+		/*
+		 * Returns the next character other than whitespace, without consuming
+		 * it, or END.
+		 */
+		char peek() {
+			while(_position < _text.length() && Character.isWhitespace(_text.charAt(_position))) {
+				_position++;
+			}
+			return _position < _text.length() ? _text.charAt(_position) : END;
+		}
+
+		void expect(char c) {
+			if(peek() != c) {
+				throw new IllegalArgumentException("Expected '" + c + "' at column " + (_position + 1));
+			}
+			_position++;
+		}
+
+		/*
+		 * Consumes either more or end, returning true for more.
+		 */
+		boolean next(char more, char end) {
+			char c = peek();
+			if(c != more && c != end) {
+				throw new IllegalArgumentException("Expected '" + more + "' or '" + end
+						+ "' at column " + (_position + 1));
+			}
+			_position++;
+			return c == more;
+		}
+
+		/*
+		 * Reads a string, number, boolean or null and returns it as text, or
+		 * null for null.
+		 */
+		String value() {
+			char c = peek();
+			if(c == '"') {
+				return string();
+			}
+			int start = _position;
+			while(_position < _text.length() && "-+.eE0123456789truefalsn".indexOf(_text.charAt(_position)) >= 0) {
+				_position++;
+			}
+			String token = _text.substring(start, _position);
+			if(token.isEmpty()) {
+				throw new IllegalArgumentException("Expected a value at column " + (start + 1));
+			}
+			return token.equals("null") ? null : token;
+		}
+
+		String string() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while(true) {
+				if(_position >= _text.length()) {
+					throw new IllegalArgumentException("Unterminated string");
+				}
+				char c = _text.charAt(_position++);
+				if(c == '"') {
+					return value.toString();
+				}
+				if(c != '\\') {
+					value.append(c);
+					continue;
+				}
+				if(_position >= _text.length()) {
+					throw new IllegalArgumentException("Unterminated string");
+				}
+				char escaped = _text.charAt(_position++);
+				switch(escaped) {
+				case 'b': value.append('\b'); break;
+				case 'f': value.append('\f'); break;
+				case 'n': value.append('\n'); break;
+				case 'r': value.append('\r'); break;
+				case 't': value.append('\t'); break;
+				case 'u':
+					if(_position + 4 > _text.length()) {
+						throw new IllegalArgumentException("Unterminated string");
+					}
+					value.append((char)Integer.parseInt(_text.substring(_position, _position + 4), 16));
+					_position += 4;
+					break;
+				default:
+					// Covers \", \\ and \/.
+					value.append(escaped);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Counts the bytes read through it, for progress reports.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long _count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0) {
+				_count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if(read > 0) {
+				_count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			_count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -7,6 +7,8 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
 import javax.swing.BorderFactory;
@@ -35,6 +37,7 @@ import spaceshapes.OvalShape;
 import spaceshapes.RectangleShape;
 import spaceshapes.Shape;
 import spaceshapes.ShapeModel;
+import spaceshapes.SpriteCache;
 import spaceshapes.forms.FormResolver;
 import spaceshapes.forms.util.Form;
 import spaceshapes.forms.util.FormComponent;
@@ -63,6 +66,9 @@ import spaceshapes.views.Task2;
 public class SpaceShape extends JPanel {
 	private static final int DELAY = 25;
 
+	// Longest stretch of time caught up by one clock() call, in ticks.
+	private static final double MAX_CATCH_UP_TICKS = 10;
+
 	// Underlying model for the application.
 	private ShapeModel _model;
 	
@@ -95,14 +101,19 @@ public class SpaceShape extends JPanel {
 		// Instantiate model and populate it with an initial set of shapes.
 		ShapeConfig config = ShapeConfig.instance();
 		_model = new ShapeModel(config.getAnimationBounds());
-		populateModel();
+		populateModel(_model);
+
+		// Record ovals and hexagons into frames as cached images.
+		_model.setSpriteCache(new SpriteCache());
 		
 		_comboBoxModel = new ShapeClassComboBoxModel();
 		
 		// Instantiate GUI objects and construct GUI.
 		buildGUI();
 		
-		// Register views with models.
+		// Register views with models. Shapes the animation view cannot show
+		// are culled from the frames the model records for it.
+		_model.setLevelOfDetail(_animationView.levelOfDetail());
 		_model.addShapeModelListener(_animationView);
 		_model.addShapeModelListener(_tableModelAdapter);
 		_model.addShapeModelListener(_treeModelAdapter);
@@ -115,8 +126,17 @@ public class SpaceShape extends JPanel {
 		
 		// Start animation.
 		Timer timer = new Timer(DELAY, new ActionListener() {
+			// Time of the previous tick, 0 before the first
+			private long _lastTick;
+
 			public void actionPerformed(ActionEvent e) {
-				_model.clock();
+				// Move the shapes by the time actually elapsed, in ticks of
+				// DELAY, so that their speed does not depend on how punctually
+				// the Timer fires
+				long now = System.nanoTime();
+				double dt = _lastTick == 0 ? 1 : (now - _lastTick) / (DELAY * 1e6);
+				_lastTick = now;
+				_model.clock(Math.min(dt, MAX_CATCH_UP_TICKS));
 			}
 		} );
 		timer.start();
@@ -142,25 +162,25 @@ public class SpaceShape extends JPanel {
 	}
 	
 	/*
-	 * Adds shapes to the model.
+	 * Adds the initial set of shapes to a model. Also used by HeadlessDriver.
 	 */
-	private void populateModel() {
-		CarrierShape root = _model.root();
+	static void populateModel(ShapeModel model) {
+		CarrierShape root = model.root();
 		
-		_model.add(new RectangleShape(440, 0, 10, 10, 4, 2), root);
-		//_model.add(new RectangleShape(0, 0, 5, 7), root);
-		_model.add(new HexagonShape(20, 20, 4, 4, 200, 20, "Space-Shape"), root);
-		//_model.add(new RectangleShape(0, 0, 2, 2, 10, 10), root);
-		_model.add(new DynamicShape(0, 0, 2, 3, 180, 130, "Changes Color", Color.CYAN), root);
-		_model.add(new OvalShape(50,110,2,2), root);
+		model.add(new RectangleShape(440, 0, 10, 10, 4, 2), root);
+		//model.add(new RectangleShape(0, 0, 5, 7), root);
+		model.add(new HexagonShape(20, 20, 4, 4, 200, 20, "Space-Shape"), root);
+		//model.add(new RectangleShape(0, 0, 2, 2, 10, 10), root);
+		model.add(new DynamicShape(0, 0, 2, 3, 180, 130, "Changes Color", Color.CYAN), root);
+		model.add(new OvalShape(50,110,2,2), root);
 		
 
 		CarrierShape child = new CarrierShape(10, 10, 2, 2, 100, 100);
-		_model.add(new RectangleShape(10, 10, 10, 10, 4, 2), child);
-		_model.add(new DynamicShape(0, 0, 2, 3, 50, 80, Color.RED), child);
-		_model.add(new OvalShape(10,10,2,2, 60, 60), child);
-		_model.add(child, root);
-		_model.add(new DynamicShape(0,0,0,20,35,25), root);
+		model.add(new RectangleShape(10, 10, 10, 10, 4, 2), child);
+		model.add(new DynamicShape(0, 0, 2, 3, 50, 80, Color.RED), child);
+		model.add(new OvalShape(10,10,2,2, 60, 60), child);
+		model.add(child, root);
+		model.add(new DynamicShape(0,0,0,20,35,25), root);
 	}
 	
 	/*
@@ -181,7 +201,8 @@ public class SpaceShape extends JPanel {
 				@SuppressWarnings("unchecked")
 				Class<? extends Shape> cls = (Class<? extends Shape>)_comboBoxModel.getSelectedItem();
 				FormComponent form = FormResolver.getForm(cls);
-				FormHandler handler = FormResolver.getFormHandler(cls, _model, (CarrierShape)_shapeSelected);
+				FormHandler handler = FormResolver.getFormHandler(cls, _model, (CarrierShape)_shapeSelected,
+						ShapeConfig.instance().getShapeFactory());
 				form.setFormHandler(handler);
 				form.prepare();
 				
@@ -209,6 +230,25 @@ public class SpaceShape extends JPanel {
 			}
 		});
 		
+		/*
+		 * Event handling code to be executed whenever the user clicks within
+		 * the animation view. The shape under the mouse pointer, found using
+		 * the model's spatial index, is selected in the JTree view; clicking
+		 * where there is no shape selects the root.
+		 */
+		_animationView.addMouseListener(new MouseAdapter() {
+			public void mousePressed(MouseEvent e) {
+				Shape shape = _model.shapeAt(e.getX(), e.getY());
+				if(shape == null) {
+					shape = _model.root();
+				}
+
+				TreePath path = new TreePath(shape.path().toArray());
+				_treeView.setSelectionPath(path);
+				_treeView.scrollPathToVisible(path);
+			}
+		});
+		
 		/*
 		 * Event handling code to be executed whenever the user selects a node
 		 * within the JTree view. The event handler records which shape is
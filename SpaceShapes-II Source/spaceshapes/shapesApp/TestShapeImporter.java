@@ -0,0 +1,211 @@
+package spaceshapes.shapesApp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.DynamicShape;
+import spaceshapes.GraphicsPainter;
+import spaceshapes.OvalShape;
+import spaceshapes.RectangleShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeModel;
+import spaceshapes.ShapeModelEvent;
+import spaceshapes.ShapeModelListener;
+
+/**
+ * Class to test that a ShapeImporter streams shapes from CSV and JSON lines
+ * into a ShapeModel in batches.
+ */
+public class TestShapeImporter {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ShapeModel _model;
+	private ShapeImporter _importer;
+	private List<ShapeModelEvent> _events;
+
+	/**
+	 * Creates an empty 500x500 ShapeModel, whose events are recorded, and a
+	 * ShapeImporter for the built in Shape classes.
+	 */
+	@Before
+	public void setUpImporter() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_events = new ArrayList<ShapeModelEvent>();
+		_model.addShapeModelListener(new ShapeModelListener() {
+			public void update(ShapeModelEvent event) {
+				_events.add(event);
+			}
+		});
+		List<Class<? extends Shape>> classes = new ArrayList<Class<? extends Shape>>();
+		classes.addAll(Arrays.asList(CarrierShape.class, DynamicShape.class, OvalShape.class,
+				RectangleShape.class));
+		_importer = new ShapeImporter(_model, classes);
+	}
+
+	/**
+	 * Checks that CSV records, with columns in any order, quoted values and
+	 * parent ids, build a nested composition.
+	 */
+	@Test
+	public void testCsvBuildsNestedComposition() throws IOException {
+		String csv = "type,id,x,y,deltaX,deltaY,width,height,text,colour,parent,notes\n"
+				+ "CarrierShape,outer,10,20,1,2,200,100,,,,ignored\n"
+				+ "\n"
+				+ "OvalShape,,5,6,3,4,20,10,\"Hello, \"\"world\"\"\",,outer,\n"
+				+ "spaceshapes.DynamicShape,,1,1,1,1,10,10,,#FF8000,outer,\n"
+				+ "RectangleShape,,300,300,0,0,10,10,\"\",,,\n";
+
+		assertEquals(4, _importer.importFrom(stream(csv), ShapeImporter.Format.Csv));
+
+		CarrierShape root = _model.root();
+		assertEquals(2, root.shapeCount());
+		CarrierShape outer = (CarrierShape)root.shapeAt(0);
+		assertEquals(10, outer.x());
+		assertEquals(200, outer.width());
+		assertEquals(2, outer.shapeCount());
+		Shape oval = outer.shapeAt(0);
+		assertEquals(OvalShape.class, oval.getClass());
+		assertEquals("Hello, \"world\"", oval.getText());
+		assertEquals(4, oval.deltaY());
+		assertEquals(DynamicShape.class, outer.shapeAt(1).getClass());
+		assertEquals("", root.shapeAt(1).getText());
+		assertEquals(null, outer.getText());
+		assertEquals(4, _importer.records());
+		assertEquals(0, _importer.rejected());
+	}
+
+	/**
+	 * Checks that JSON lines, with escapes, nulls and default ids, are
+	 * imported.
+	 */
+	@Test
+	public void testJsonLines() throws IOException {
+		String json = "{\"type\": \"CarrierShape\", \"x\": 0, \"y\": 0, \"width\": 300, \"height\": 300}\n"
+				+ "  {\"type\":\"OvalShape\",\"parent\":\"1\",\"width\":40,\"height\":30,"
+				+ "\"text\":\"Tab\\there \\u00e9t\\u00e9 \\\"q\\\"\",\"deltaX\":-3}\n"
+				+ "{\"type\":\"RectangleShape\",\"text\":null,\"width\":5,\"height\":5,\"extra\":true}\n";
+
+		assertEquals(3, _importer.importFrom(stream(json), ShapeImporter.Format.JsonLines));
+
+		CarrierShape carrier = (CarrierShape)_model.root().shapeAt(0);
+		Shape oval = carrier.shapeAt(0);
+		assertEquals("Tab\there été \"q\"", oval.getText());
+		assertEquals(-3, oval.deltaX());
+		assertEquals(null, _model.root().shapeAt(1).getText());
+	}
+
+	/**
+	 * Checks that shapes are added in batches, each notified as one event,
+	 * and that progress is reported after each batch.
+	 */
+	@Test
+	public void testBatchesAndProgress() throws IOException {
+		StringBuilder csv = new StringBuilder("type,x,y,width,height\n");
+		for(int i = 0; i < 25; i++) {
+			csv.append("RectangleShape," + i + "," + i + ",10,10\n");
+		}
+		final List<long[]> reports = new ArrayList<long[]>();
+		_importer.setBatchSize(10);
+		_importer.setProgressListener(new ShapeImporter.ProgressListener() {
+			public void progress(long records, long added, long bytesRead) {
+				reports.add(new long[] {records, added, bytesRead});
+			}
+		});
+
+		assertEquals(25, _importer.importFrom(stream(csv.toString()), ShapeImporter.Format.Csv));
+
+		assertEquals(3, _events.size());
+		assertEquals(ShapeModelEvent.EventType.ShapesChanged, _events.get(0).eventType());
+		assertEquals(10, _events.get(0).changes().size());
+		assertEquals(5, _events.get(2).changes().size());
+		assertEquals(3, reports.size());
+		assertEquals(10, reports.get(0)[1]);
+		assertEquals(25, reports.get(2)[0]);
+		assertEquals(25, reports.get(2)[1]);
+		assertEquals(csv.length(), reports.get(2)[2]);
+	}
+
+	/**
+	 * Checks that a shape that does not fit its parent is rejected along
+	 * with its descendants.
+	 */
+	@Test
+	public void testRejectedShapesTakeTheirChildren() throws IOException {
+		String csv = "id,type,x,width,height,parent\n"
+				+ "big,CarrierShape,0,900,100,\n"
+				+ ",RectangleShape,0,10,10,big\n"
+				+ ",RectangleShape,0,10,10,\n";
+
+		assertEquals(1, _importer.importFrom(stream(csv), ShapeImporter.Format.Csv));
+		assertEquals(2, _importer.rejected());
+		assertEquals(1, _model.root().shapeCount());
+	}
+
+	/**
+	 * Checks that a malformed record stops the import with its line number,
+	 * leaving the shapes before it in the model.
+	 */
+	@Test
+	public void testMalformedRecordsStopTheImport() throws IOException {
+		String csv = "type,width,height\n"
+				+ "OvalShape,10,10\n"
+				+ "OvalShape,ten,10\n"
+				+ "OvalShape,10,10\n";
+		assertFails(csv, ShapeImporter.Format.Csv, "Line 3");
+		assertEquals(1, _model.root().shapeCount());
+
+		assertFails("type,width\nHexagon,10\n", ShapeImporter.Format.Csv, "Unknown shape type");
+		assertFails("type,parent\nOvalShape,7\n", ShapeImporter.Format.Csv, "No CarrierShape");
+		assertFails("type,width\nOvalShape,10,3\n", ShapeImporter.Format.Csv, "columns");
+		assertFails("{\"type\": \"OvalShape\"", ShapeImporter.Format.JsonLines, "Line 1");
+		assertFails("{\"type\": [1]}", ShapeImporter.Format.JsonLines, "Line 1");
+	}
+
+	/**
+	 * Checks that a colour is passed to classes that take one.
+	 */
+	@Test
+	public void testColour() throws IOException {
+		_importer.importFrom(stream("{\"type\":\"DynamicShape\",\"y\":5,\"width\":20,\"height\":20,"
+				+ "\"deltaX\":-5,\"colour\":\"#00FF00\"}\n"), ShapeImporter.Format.JsonLines);
+		Shape shape = _model.root().shapeAt(0);
+		// The shape is filled with its colour once it hits the left wall.
+		_model.clock();
+		BufferedImage image = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		shape.doPaint(new GraphicsPainter(g));
+		g.dispose();
+		assertEquals(Color.GREEN.getRGB(), image.getRGB(10, 15));
+	}
+
+	private void assertFails(String text, ShapeImporter.Format format, String message) {
+		try {
+			_importer.importFrom(stream(text), format);
+			fail("Imported " + text);
+		} catch(IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private static InputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(UTF_8));
+	}
+}
@@ -2,13 +2,21 @@ package spaceshapes.views;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import spaceshapes.FrameSnapshot;
+import spaceshapes.FrameSnapshotBuffer;
 import spaceshapes.GraphicsPainter;
-import spaceshapes.CarrierShape;
+import spaceshapes.LevelOfDetail;
 import spaceshapes.Painter;
+import spaceshapes.RenderQueue;
 import spaceshapes.ShapeModelEvent;
 import spaceshapes.ShapeModelListener;
 
@@ -17,54 +25,287 @@ import spaceshapes.ShapeModelListener;
  * the ShapeModelListener interface, hence an AnimationViewer instance is
  * notified via a ShapeModelEvent whenever the model has changed. A registered
  * AnimationViewer responds to a ShapeModelEvent by adding any new shape to the
- * animation, removing a deleted shape from the animation, or updating the 
+ * animation, removing a deleted shape from the animation, or updating the
  * positions of shapes that have moved.
- * 
+ *
+ * An AnimationView never paints the live shapes. It paints the most recent
+ * FrameSnapshot published by the ShapeModel, so painting neither observes
+ * a composition that is being changed nor holds up the ShapeModel.
+ *
+ * Rather than repainting the whole view for every frame, an AnimationView
+ * compares each new frame with the one it replaces and repaints only the
+ * old and new bounds of the primitives that differ. If the frames differ in
+ * structure, or the areas to repaint cover more than a configurable
+ * fraction of the view, the whole view is repainted.
+ *
  * @author Ian Warren
  *
  */
 public class AnimationView extends JPanel implements ShapeModelListener {
 
-	// Reference to root CarrierShape.
-	private CarrierShape _root;
-	
+	/**
+	 * Default fraction of the view's area above which the whole view is
+	 * repainted rather than its dirty rectangles.
+	 */
+	public static final double DEFAULT_MAX_DIRTY_COVERAGE = 0.5;
+
+	// Distance beyond the visible area within which shapes are not culled,
+	// so that shapes moving or scrolled into view are already recorded.
+	private static final int VIEWPORT_MARGIN = 64;
+
+	// Buffer through which the ShapeModel publishes frames.
+	private volatile FrameSnapshotBuffer _frames;
+
+	// === State below is only accessed on the Event Dispatch thread.
+
+	// Frame being displayed, acquired from _frames.
+	private FrameSnapshot _frame;
+
+	// Areas that differ between the displayed frame and its predecessor.
+	private DirtyRegion _dirtyRegion;
+
+	/*
+	 * Bounds (x, y, width, height) and appearance of each primitive of the
+	 * displayed frame, kept because the FrameSnapshot itself is recycled
+	 * once a newer frame is acquired.
+	 */
+	private int _primitiveCount = -1;
+
+	private int[] _bounds = new int[64 * 4];
+
+	private int[] _types = new int[64];
+
+	private Color[] _colours = new Color[64];
+
+	private String[] _texts = new String[64];
+
+	private Image[] _images = new Image[64];
+
+	// Queue through which the displayed frame is painted.
+	private final RenderQueue _renderQueue = new RenderQueue();
+	// ===
+
+	// Rules the ShapeModel may apply to the frames it records for this view.
+	private final LevelOfDetail _levelOfDetail = new LevelOfDetail();
+
+	// Whether a call to processFrame() is pending on the Event Dispatch
+	// thread.
+	private volatile boolean _processPending;
+
+	// Task that processes the latest frame on the Event Dispatch thread.
+	private final Runnable _processTask = new Runnable() {
+		public void run() {
+			_processPending = false;
+			processFrame();
+		}
+	};
+
 	/**
 	 * Creates an AnimationView object with specified bounds.
 	 */
 	public AnimationView(Dimension bounds) {
 		setBackground(Color.BLACK);
-		_root = null;
-		
+		_frames = null;
+		_dirtyRegion = new DirtyRegion(bounds.width, bounds.height, DEFAULT_MAX_DIRTY_COVERAGE);
+
 		setSize(bounds.width, bounds.height);
 	}
-	
+
+	/**
+	 * Sets the fraction of this view's area above which the whole view is
+	 * repainted rather than only the parts that have changed. A value of 0
+	 * always repaints the whole view.
+	 * @throws IllegalArgumentException if maxCoverage is not between 0 and 1.
+	 */
+	public void setMaxDirtyCoverage(double maxCoverage) {
+		_dirtyRegion.setMaxCoverage(maxCoverage);
+	}
+
+	/**
+	 * Returns the fraction of this view's area above which the whole view is
+	 * repainted.
+	 */
+	public double maxDirtyCoverage() {
+		return _dirtyRegion.maxCoverage();
+	}
+
+	/**
+	 * Returns the LevelOfDetail whose clip this view keeps to the part of it
+	 * that is visible, e.g. when in a JScrollPane. Passed to
+	 * ShapeModel.setLevelOfDetail(), it culls the shapes this view cannot
+	 * show from the frames the ShapeModel records.
+	 */
+	public LevelOfDetail levelOfDetail() {
+		return _levelOfDetail;
+	}
+
 	/**
 	 * Implements custom painting to display the animation.
 	 */
 	public void paintComponent(Graphics g) {
 		// Call inherited implementation to handle background painting.
 		super.paintComponent(g);
-		
-		
+
+		// Keep the shapes recorded to those that may be visible.
+		Rectangle visible = getVisibleRect();
+		visible.grow(VIEWPORT_MARGIN, VIEWPORT_MARGIN);
+		_levelOfDetail.setClip(visible);
+
+
 		// Create a GraphicsPainter to paint the Swing component.
 		Painter painter = new GraphicsPainter(g);
-		
+
 		/*
-		 * Paint the shapes, starting with the root and recursively work
-		 * through the composition structure.
+		 * Paint the frame most recently processed. The frame already holds
+		 * the whole composition structure, flattened into world coordinates.
+		 * Its primitives are queued so they can be drawn grouped by colour.
 		 */
-		if(_root != null) {
-			_root.doPaint(painter);
+		if(_frame != null) {
+			_renderQueue.setFontMetrics(g.getFontMetrics());
+			_frame.paint(_renderQueue);
+			_renderQueue.flush(painter);
 		}
 	}
-	
+
 	/**
 	 * Updates this AnimationView so that it is consistent with the ShapeModel
-	 * that made the update() call.
+	 * that made the update() call. A ShapesChanged event, however many
+	 * changes it combines, results in a single repaint of the areas that have
+	 * changed.
 	 */
 	public void update(ShapeModelEvent event) {
-		_root = event.source().root();
-		repaint();
+		_frames = event.source().frames();
+
+		if(SwingUtilities.isEventDispatchThread()) {
+			processFrame();
+		} else if(!_processPending) {
+			_processPending = true;
+			SwingUtilities.invokeLater(_processTask);
+		}
 	}
-	
+
+	/*
+	 * Acquires the latest frame, works out which parts of the view it
+	 * changes and requests that they be repainted.
+	 */
+	private void processFrame() {
+		FrameSnapshotBuffer frames = _frames;
+		if(frames == null) {
+			return;
+		}
+		FrameSnapshot frame = frames.acquire();
+		if(frame == _frame) {
+			return;
+		}
+		_frame = frame;
+
+		_dirtyRegion.clear();
+		FontMetrics metrics = getFontMetrics(getFont());
+		int size = frame.size();
+
+		if(size != _primitiveCount) {
+			// Shapes have been added or removed.
+			_dirtyRegion.markAll();
+			ensureCapacity(size);
+		}
+		for(int i = 0; i < size; i++) {
+			int type = frame.type(i);
+			int x = frame.x(i);
+			int y = frame.y(i);
+			int width = frame.width(i);
+			int height = frame.height(i);
+
+			// Convert to the bounds of the pixels the primitive touches.
+			switch(type) {
+			case FrameSnapshot.RECTANGLE:
+			case FrameSnapshot.OVAL:
+			case FrameSnapshot.POLYGON:
+			case FrameSnapshot.SOLID_POLYGON:
+				// Outlines are drawn one pixel wider and higher.
+				width++;
+				height++;
+				break;
+			case FrameSnapshot.LINE:
+				int x2 = width;
+				int y2 = height;
+				x = Math.min(x, x2);
+				y = Math.min(y, y2);
+				width = Math.abs(x2 - frame.x(i)) + 1;
+				height = Math.abs(y2 - frame.y(i)) + 1;
+				break;
+			case FrameSnapshot.TEXT:
+				// The extent of the text as GraphicsPainter centres it.
+				Rectangle text = GraphicsPainter.centredTextBounds(metrics, x, y, width, height, frame.text(i));
+				x = text.x;
+				y = text.y;
+				width = text.width;
+				height = text.height;
+				break;
+			}
+
+			if(!_dirtyRegion.isFull()) {
+				int b = i * 4;
+				boolean moved = _bounds[b] != x || _bounds[b + 1] != y
+						|| _bounds[b + 2] != width || _bounds[b + 3] != height;
+				boolean changed = _types[i] != type || !_colours[i].equals(frame.colour(i))
+						|| !equal(_texts[i], frame.text(i)) || _images[i] != frame.image(i);
+
+				if(moved || changed) {
+					_dirtyRegion.add(_bounds[b], _bounds[b + 1], _bounds[b + 2], _bounds[b + 3]);
+					_dirtyRegion.add(x, y, width, height);
+				}
+			}
+
+			record(i, type, x, y, width, height, frame.colour(i), frame.text(i), frame.image(i));
+		}
+		_primitiveCount = size;
+
+		if(_dirtyRegion.isFull()) {
+			repaint();
+		} else {
+			for(Rectangle rectangle : _dirtyRegion.rectangles()) {
+				repaint(rectangle);
+			}
+		}
+	}
+
+	/*
+	 * Records the bounds and appearance of a primitive of the displayed
+	 * frame.
+	 */
+	private void record(int index, int type, int x, int y, int width, int height,
+			Color colour, String text, Image image) {
+		int b = index * 4;
+		_bounds[b] = x;
+		_bounds[b + 1] = y;
+		_bounds[b + 2] = width;
+		_bounds[b + 3] = height;
+		_types[index] = type;
+		_colours[index] = colour;
+		_texts[index] = text;
+		_images[index] = image;
+	}
+
+	/*
+	 * Grows the arrays recording the displayed frame to hold at least size
+	 * primitives.
+	 */
+	private void ensureCapacity(int size) {
+		if(_types.length < size) {
+			int capacity = Math.max(size, _types.length * 2);
+			_bounds = Arrays.copyOf(_bounds, capacity * 4);
+			_types = Arrays.copyOf(_types, capacity);
+			_colours = Arrays.copyOf(_colours, capacity);
+			_texts = Arrays.copyOf(_texts, capacity);
+			_images = Arrays.copyOf(_images, capacity);
+		}
+	}
+
+	/*
+	 * Compares two possibly null Strings.
+	 */
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 }
@@ -0,0 +1,162 @@
+package spaceshapes.views;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the areas of a component that need repainting. Rectangles are
+ * added as they are found and merged where they overlap, so the component
+ * is asked to repaint each pixel at most once. If the merged rectangles
+ * cover more than a given fraction of the component's area, repainting the
+ * whole component is cheaper than repainting the rectangles one by one.
+ */
+public class DirtyRegion {
+
+	private final int _width;
+
+	private final int _height;
+
+	private double _maxCoverage;
+
+	// Disjoint dirty rectangles, clipped to the component.
+	private final List<Rectangle> _rectangles = new ArrayList<Rectangle>();
+
+	// Set once the whole component is dirty.
+	private boolean _full;
+
+	/**
+	 * Creates an empty DirtyRegion for a component of the specified size.
+	 * @param maxCoverage fraction of the component's area above which the
+	 *        whole component is treated as dirty.
+	 */
+	public DirtyRegion(int width, int height, double maxCoverage) {
+		_width = width;
+		_height = height;
+		setMaxCoverage(maxCoverage);
+	}
+
+	/**
+	 * Sets the fraction of the component's area above which the whole
+	 * component is treated as dirty.
+	 * @throws IllegalArgumentException if maxCoverage is not between 0 and 1.
+	 */
+	public void setMaxCoverage(double maxCoverage) {
+		if(maxCoverage < 0 || maxCoverage > 1) {
+			throw new IllegalArgumentException();
+		}
+		_maxCoverage = maxCoverage;
+	}
+
+	/**
+	 * Returns the fraction of the component's area above which the whole
+	 * component is treated as dirty.
+	 */
+	public double maxCoverage() {
+		return _maxCoverage;
+	}
+
+	/**
+	 * Marks the specified rectangle as dirty, merging it with any dirty
+	 * rectangles it overlaps or touches.
+	 */
+	public void add(int x, int y, int width, int height) {
+		if(_full) {
+			return;
+		}
+		Rectangle added = new Rectangle(x, y, width, height).intersection(
+				new Rectangle(0, 0, _width, _height));
+		if(added.isEmpty()) {
+			return;
+		}
+
+		// Absorb overlapping rectangles until the added one overlaps none;
+		// each merge can make it reach rectangles it previously missed.
+		boolean merged = true;
+		while(merged) {
+			merged = false;
+			for(int i = 0; i < _rectangles.size(); i++) {
+				Rectangle rectangle = _rectangles.get(i);
+				if(touches(added, rectangle)) {
+					added = added.union(rectangle);
+					_rectangles.remove(i);
+					merged = true;
+					break;
+				}
+			}
+		}
+		_rectangles.add(added);
+
+		if(coverage() > _maxCoverage) {
+			markAll();
+		}
+	}
+
+	/**
+	 * Marks the whole component as dirty.
+	 */
+	public void markAll() {
+		_full = true;
+		_rectangles.clear();
+	}
+
+	/**
+	 * Returns true if the whole component should be repainted.
+	 */
+	public boolean isFull() {
+		return _full;
+	}
+
+	/**
+	 * Returns true if nothing needs repainting.
+	 */
+	public boolean isEmpty() {
+		return !_full && _rectangles.isEmpty();
+	}
+
+	/**
+	 * Returns the disjoint dirty rectangles, or the component's bounds if
+	 * the whole component is dirty.
+	 */
+	public List<Rectangle> rectangles() {
+		List<Rectangle> rectangles = new ArrayList<Rectangle>();
+		if(_full) {
+			rectangles.add(new Rectangle(0, 0, _width, _height));
+		} else {
+			for(Rectangle rectangle : _rectangles) {
+				rectangles.add(new Rectangle(rectangle));
+			}
+		}
+		return rectangles;
+	}
+
+	/**
+	 * Returns the fraction of the component's area that is dirty.
+	 */
+	public double coverage() {
+		if(_full) {
+			return 1;
+		}
+		long area = 0;
+		for(Rectangle rectangle : _rectangles) {
+			area += (long)rectangle.width * rectangle.height;
+		}
+		return (double)area / ((long)_width * _height);
+	}
+
+	/**
+	 * Empties this DirtyRegion.
+	 */
+	public void clear() {
+		_full = false;
+		_rectangles.clear();
+	}
+
+	/*
+	 * Returns true if two rectangles overlap or share an edge.
+	 */
+	private static boolean touches(Rectangle a, Rectangle b) {
+		return a.x <= b.x + b.width && b.x <= a.x + a.width
+				&& a.y <= b.y + b.height && b.y <= a.y + a.height;
+	}
+}
@@ -0,0 +1,120 @@
+package spaceshapes.views;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import spaceshapes.FrameSnapshot;
+import spaceshapes.GraphicsPainter;
+import spaceshapes.RenderQueue;
+import spaceshapes.ShapeModel;
+
+/**
+ * Renders frames of a ShapeModel into a BufferedImage rather than a Swing
+ * component, so that frames can be produced without a display, e.g. with
+ * java.awt.headless=true. An OffscreenRenderer allocates its image, and the
+ * Graphics2D that draws into it, once: each render() call repaints the same
+ * image, which is only valid until the next call.
+ *
+ * A frame is rendered exactly as an AnimationView paints it: the background
+ * is cleared and the primitives are drawn through a RenderQueue.
+ *
+ * An OffscreenRenderer is not thread-safe.
+ */
+public class OffscreenRenderer {
+
+	// Image that frames are rendered into.
+	private final BufferedImage _image;
+
+	// Graphics drawing into _image, and the Painter wrapping it.
+	private final Graphics2D _graphics;
+
+	private final GraphicsPainter _painter;
+
+	// Queue through which frames are painted.
+	private final RenderQueue _renderQueue;
+
+	/**
+	 * Creates an OffscreenRenderer that renders into an opaque image of the
+	 * specified size.
+	 */
+	public OffscreenRenderer(int width, int height) {
+		this(width, height, false);
+	}
+
+	/**
+	 * Creates an OffscreenRenderer that renders into an image of the
+	 * specified size.
+	 * @param premultiplied true for an image of type TYPE_INT_ARGB_PRE, whose
+	 *        premultiplied pixels can be copied onto other images and the
+	 *        screen without conversion, false for one of type TYPE_INT_RGB.
+	 */
+	public OffscreenRenderer(int width, int height, boolean premultiplied) {
+		_image = new BufferedImage(width, height,
+				premultiplied ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+		_graphics = _image.createGraphics();
+		_graphics.setBackground(Color.BLACK);
+		_painter = new GraphicsPainter(_graphics);
+		_renderQueue = new RenderQueue(_graphics.getFontMetrics());
+	}
+
+	/**
+	 * Sets the colour the image is cleared to before each frame is rendered.
+	 * The default is black, as for an AnimationView.
+	 */
+	public void setBackground(Color colour) {
+		_graphics.setBackground(colour);
+	}
+
+	/**
+	 * Returns the colour the image is cleared to.
+	 */
+	public Color background() {
+		return _graphics.getBackground();
+	}
+
+	/**
+	 * Renders a FrameSnapshot, such as one acquired from a ShapeModel's
+	 * FrameSnapshotBuffer, and returns the image holding it.
+	 */
+	public BufferedImage render(FrameSnapshot frame) {
+		clear();
+		frame.paint(_renderQueue);
+		_renderQueue.flush(_painter);
+		return _image;
+	}
+
+	/**
+	 * Renders the current state of a ShapeModel's composition and returns
+	 * the image holding it. Unlike render(FrameSnapshot), this paints the
+	 * live Shapes, so the ShapeModel must not be changed concurrently.
+	 */
+	public BufferedImage render(ShapeModel model) {
+		clear();
+		model.root().doPaint(_renderQueue);
+		_renderQueue.flush(_painter);
+		return _image;
+	}
+
+	/**
+	 * Returns the image frames are rendered into.
+	 */
+	public BufferedImage image() {
+		return _image;
+	}
+
+	/**
+	 * Releases the Graphics2D drawing into the image. This OffscreenRenderer
+	 * cannot render once disposed.
+	 */
+	public void dispose() {
+		_graphics.dispose();
+	}
+
+	/*
+	 * Clears the whole image to the background colour.
+	 */
+	private void clear() {
+		_graphics.clearRect(0, 0, _image.getWidth(), _image.getHeight());
+	}
+}
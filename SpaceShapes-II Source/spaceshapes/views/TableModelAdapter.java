@@ -157,6 +157,16 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 				// removed shape.
 				fireTableDataChanged();
 			} 
+		} else if(eventType == ShapeModelEvent.EventType.ShapesChanged) {
+			// Processing a compound event. Notify the view at most once, if
+			// any of the combined changes affects this TableModel.
+			for(ShapeModelEvent change : event.changes()) {
+				if(change.eventType() == ShapeModelEvent.EventType.ShapeMoved 
+						|| change.parent() == _adaptee) {
+					fireTableDataChanged();
+					break;
+				}
+			}
 		} else {
 			// Processing a ShapeMoved event.
 			fireTableDataChanged();
@@ -1,12 +1,17 @@
 package spaceshapes.views;
 
 
+import spaceshapes.CarrierShape;
 import spaceshapes.ShapeModel;
 import spaceshapes.ShapeModelEvent;
 import spaceshapes.ShapeModelListener;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreePath;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Task2 extends Task1 implements ShapeModelListener {
 
@@ -16,6 +21,13 @@ public class Task2 extends Task1 implements ShapeModelListener {
 
     @Override
     public void update(ShapeModelEvent event) {
+        // A compound event is translated in a single pass
+        if(event.eventType().equals(ShapeModelEvent.EventType.ShapesChanged))
+        {
+            updateAll(event);
+            return;
+        }
+
         // Create the children object array containing the shape
         // that has been removed or added
         Object[] children = new Object[1];
@@ -58,4 +70,96 @@ public class Task2 extends Task1 implements ShapeModelListener {
         }
 
     }
+
+    /**
+     * Translates a ShapesChanged event into one TreeModelEvent per affected
+     * parent. A parent that only had shapes added gets a single insert event
+     * listing all of them; a parent that also had shapes removed gets a
+     * structure changed event instead
+     */
+    private void updateAll(ShapeModelEvent event)
+    {
+        Object[] source = new Object[1];
+        source[0] = event.source();
+
+        // Group the additions and removals by parent, keeping the order in
+        // which the parents were first changed
+        Map<CarrierShape, List<ShapeModelEvent>> changesByParent = new LinkedHashMap<>();
+
+        for(ShapeModelEvent change : event.changes())
+        {
+            if(change.eventType().equals(ShapeModelEvent.EventType.ShapeMoved))
+            {
+                continue;
+            }
+
+            List<ShapeModelEvent> changes = changesByParent.get(change.parent());
+            if(changes == null)
+            {
+                changes = new ArrayList<>();
+                changesByParent.put(change.parent(), changes);
+            }
+            changes.add(change);
+        }
+
+        for(Map.Entry<CarrierShape, List<ShapeModelEvent>> entry : changesByParent.entrySet())
+        {
+            // A parent detached later in the batch is no longer in the tree;
+            // the event for the ancestor it was removed from covers it
+            if(!isAttached(entry.getKey()))
+            {
+                continue;
+            }
+
+            TreePath treePath = new TreePath(entry.getKey().path().toArray());
+            List<ShapeModelEvent> changes = entry.getValue();
+
+            boolean onlyAdded = true;
+            for(ShapeModelEvent change : changes)
+            {
+                onlyAdded &= change.eventType().equals(ShapeModelEvent.EventType.ShapeAdded);
+            }
+
+            if(onlyAdded)
+            {
+                // Shapes are always added at the end of their parent, so the
+                // indices are already in ascending order
+                int[] childIndices = new int[changes.size()];
+                Object[] children = new Object[changes.size()];
+                for(int i = 0; i < changes.size(); i++)
+                {
+                    childIndices[i] = changes.get(i).index();
+                    children[i] = changes.get(i).operand();
+                }
+
+                TreeModelEvent treeModelEvent = new TreeModelEvent(source,treePath,childIndices,children);
+                for(TreeModelListener listener : listeners)
+                {
+                    listener.treeNodesInserted(treeModelEvent);
+                }
+            }
+            else
+            {
+                TreeModelEvent treeModelEvent = new TreeModelEvent(source,treePath);
+                for(TreeModelListener listener : listeners)
+                {
+                    listener.treeStructureChanged(treeModelEvent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given CarrierShape is the root of the model or a
+     * descendant of it
+     */
+    private boolean isAttached(CarrierShape carrier)
+    {
+        CarrierShape top = carrier;
+        while(top.parent() != null)
+        {
+            top = top.parent();
+        }
+        return top == _shapeModel.root();
+    }
 }
@@ -0,0 +1,91 @@
+package spaceshapes.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the merging and coverage fallback of class DirtyRegion.
+ */
+public class TestDirtyRegion {
+
+	private DirtyRegion _region;
+
+	/**
+	 * Creates an empty DirtyRegion for a 100x100 component that falls back
+	 * to a full repaint above 50% coverage.
+	 */
+	@Before
+	public void setUpRegion() {
+		_region = new DirtyRegion(100, 100, 0.5);
+	}
+
+	/**
+	 * Checks that separate rectangles are kept apart.
+	 */
+	@Test
+	public void testDisjointRectangles() {
+		_region.add(0, 0, 10, 10);
+		_region.add(50, 50, 10, 10);
+
+		List<Rectangle> rectangles = _region.rectangles();
+		assertEquals(2, rectangles.size());
+		assertTrue(rectangles.contains(new Rectangle(0, 0, 10, 10)));
+		assertTrue(rectangles.contains(new Rectangle(50, 50, 10, 10)));
+		assertFalse(_region.isFull());
+	}
+
+	/**
+	 * Checks that overlapping rectangles are merged, including a rectangle
+	 * that only overlaps another once the two before it have been merged.
+	 */
+	@Test
+	public void testOverlappingRectanglesAreMerged() {
+		_region.add(0, 0, 10, 10);
+		_region.add(20, 0, 10, 10);
+		_region.add(5, 0, 20, 5);
+
+		List<Rectangle> rectangles = _region.rectangles();
+		assertEquals(1, rectangles.size());
+		assertEquals(new Rectangle(0, 0, 30, 10), rectangles.get(0));
+	}
+
+	/**
+	 * Checks that rectangles are clipped to the component.
+	 */
+	@Test
+	public void testRectanglesAreClipped() {
+		_region.add(-5, 95, 10, 10);
+		_region.add(200, 200, 10, 10);
+
+		List<Rectangle> rectangles = _region.rectangles();
+		assertEquals(1, rectangles.size());
+		assertEquals(new Rectangle(0, 95, 5, 5), rectangles.get(0));
+	}
+
+	/**
+	 * Checks that the whole component becomes dirty once the dirty area
+	 * exceeds the maximum coverage.
+	 */
+	@Test
+	public void testCoverageFallback() {
+		_region.add(0, 0, 100, 50);
+		assertFalse(_region.isFull());
+
+		_region.add(0, 60, 10, 10);
+		assertTrue(_region.isFull());
+
+		List<Rectangle> rectangles = _region.rectangles();
+		assertEquals(1, rectangles.size());
+		assertEquals(new Rectangle(0, 0, 100, 100), rectangles.get(0));
+
+		_region.clear();
+		assertTrue(_region.isEmpty());
+	}
+}
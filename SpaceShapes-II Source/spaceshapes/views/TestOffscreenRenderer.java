@@ -0,0 +1,94 @@
+package spaceshapes.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spaceshapes.DynamicShape;
+import spaceshapes.FrameSnapshotBuffer;
+import spaceshapes.ShapeModel;
+
+/**
+ * Class to test that an OffscreenRenderer renders frames into a reused
+ * BufferedImage without a display.
+ */
+public class TestOffscreenRenderer {
+
+	private static final int OUTLINE = new Color(212, 212, 212).getRGB();
+
+	private ShapeModel _model;
+	private FrameSnapshotBuffer _frames;
+
+	/**
+	 * Creates a ShapeModel holding a DynamicShape that turns solid red once
+	 * it bounces off the right wall.
+	 */
+	@Before
+	public void setUpModel() {
+		_model = new ShapeModel(new Dimension(100, 100));
+		_model.add(new DynamicShape(60, 10, 10, 0, 20, 20, Color.RED), _model.root());
+		_frames = _model.frames();
+	}
+
+	/**
+	 * Checks that frames are rendered into the same image, which is cleared
+	 * before each frame.
+	 */
+	@Test
+	public void testFramesAreRenderedIntoOneImage() {
+		for(boolean premultiplied : new boolean[] {false, true}) {
+			setUpModel();
+			OffscreenRenderer renderer = new OffscreenRenderer(100, 100, premultiplied);
+			assertEquals(premultiplied ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB,
+					renderer.image().getType());
+
+			// Outlined at 70,10.
+			_model.clock();
+			BufferedImage image = renderer.render(_frames.acquire());
+			assertSame(renderer.image(), image);
+			assertEquals(OUTLINE, image.getRGB(70, 10));
+			assertEquals(Color.BLACK.getRGB(), image.getRGB(85, 15));
+
+			// Bounced off the right wall: solid red at 80,10.
+			_model.clock();
+			assertSame(image, renderer.render(_frames.acquire()));
+			assertEquals(Color.RED.getRGB(), image.getRGB(85, 15));
+
+			// Moving left again, the old position is cleared.
+			_model.clock();
+			_model.clock();
+			renderer.render(_frames.acquire());
+			assertEquals(Color.BLACK.getRGB(), image.getRGB(85, 15));
+			renderer.dispose();
+		}
+	}
+
+	/**
+	 * Checks that rendering the live composition gives the same image as
+	 * rendering its published frame.
+	 */
+	@Test
+	public void testLiveCompositionMatchesFrame() {
+		OffscreenRenderer fromFrame = new OffscreenRenderer(100, 100);
+		OffscreenRenderer fromModel = new OffscreenRenderer(100, 100);
+		fromFrame.setBackground(Color.BLUE);
+		fromModel.setBackground(Color.BLUE);
+
+		_model.clock();
+		BufferedImage expected = fromFrame.render(_frames.acquire());
+		BufferedImage actual = fromModel.render(_model);
+
+		for(int y = 0; y < 100; y++) {
+			for(int x = 0; x < 100; x++) {
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+		assertEquals(Color.BLUE.getRGB(), actual.getRGB(50, 50));
+	}
+}
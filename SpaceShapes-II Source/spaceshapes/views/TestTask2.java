@@ -1,6 +1,7 @@
 package spaceshapes.views;
 
 import java.awt.Dimension;
+import java.util.Arrays;
 
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
@@ -184,4 +185,99 @@ public class TestTask2 {
 		_model.add( _newShape, _emptyNest );
 		assertTrue( _listenerMethodCalled );
 	}
+
+	/**
+	 * Checks that adding several shapes in a batch results in a single
+	 * TreeModelEvent that lists all of the inserted nodes.
+	 */	
+	@Test
+	public void test_shapesAddedInBatch() {
+		final Shape secondShape = new RectangleShape( 0, 0, 1, 1, 20, 20 );
+
+		_adapter.addTreeModelListener( new TreeModelListener() {
+
+			public void treeNodesChanged( TreeModelEvent e ) {
+				// Wrong TreeModelListener method called.
+				fail();
+			}
+
+			public void treeNodesInserted( TreeModelEvent e ) {
+				// Only one event is expected.
+				assertTrue( !_listenerMethodCalled );
+				_listenerMethodCalled = true;
+				
+				/* Unpack event. */
+				int[] indices = e.getChildIndices();
+				Object[] children = e.getChildren();
+				Object[] path = e.getPath();
+				
+				assertEquals( 2, indices.length );
+				assertEquals( 0, indices[ 0 ] );
+				assertEquals( 1, indices[ 1 ] );
+				
+				assertEquals( 2, children.length );
+				assertSame( _newShape, children[ 0 ] );
+				assertSame( secondShape, children[ 1 ] );
+ 
+				assertEquals( 2, path.length );
+				assertSame( _root, path[ 0 ] );
+				assertSame( _emptyNest, path[ 1 ] );
+			}
+
+			public void treeNodesRemoved( TreeModelEvent e ) {
+				// Wrong TreeModelListener method called.
+				fail();
+			}
+
+			public void treeStructureChanged( TreeModelEvent e ) {
+				// Wrong TreeModelListener method called.
+				fail();
+			}
+		} );
+		
+		_model.addAll( Arrays.asList( _newShape, secondShape ), _emptyNest );
+		assertTrue( _listenerMethodCalled );
+	}
+
+	/**
+	 * Checks that a CarrierShape given children and then removed in the same
+	 * batch produces only a structure changed event for its former parent,
+	 * and no event for nodes that are no longer in the tree.
+	 */
+	@Test
+	public void test_parentDetachedInBatch() {
+		_adapter.addTreeModelListener( new TreeModelListener() {
+
+			public void treeNodesChanged( TreeModelEvent e ) {
+				// Wrong TreeModelListener method called.
+				fail();
+			}
+
+			public void treeNodesInserted( TreeModelEvent e ) {
+				// The inserted node's parent is no longer in the tree.
+				fail();
+			}
+
+			public void treeNodesRemoved( TreeModelEvent e ) {
+				// Wrong TreeModelListener method called.
+				fail();
+			}
+
+			public void treeStructureChanged( TreeModelEvent e ) {
+				// Only one event is expected.
+				assertTrue( !_listenerMethodCalled );
+				_listenerMethodCalled = true;
+
+				Object[] path = e.getPath();
+				assertEquals( 1, path.length );
+				assertSame( _root, path[ 0 ] );
+			}
+		} );
+
+		_model.beginBatch();
+		_model.add( _newShape, _emptyNest );
+		_model.remove( _emptyNest );
+		_model.commitBatch();
+		assertTrue( _listenerMethodCalled );
+	}
 }
@@ -0,0 +1,106 @@
+package spaceshapes.views;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.DynamicShape;
+import spaceshapes.FrameSnapshot;
+import spaceshapes.FrameSnapshotBuffer;
+import spaceshapes.GraphicsPainter;
+import spaceshapes.HexagonShape;
+import spaceshapes.OvalShape;
+import spaceshapes.RectangleShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeModel;
+
+/**
+ * Class to test that a TiledRenderer produces exactly the image painted by
+ * a single GraphicsPainter.
+ */
+public class TestTiledRenderer {
+
+	private static final int SIZE = 400;
+
+	/**
+	 * Checks, over several frames of a random composition of every kind of
+	 * Shape, that tiled rendering is pixel-identical to painting the whole
+	 * frame with one GraphicsPainter. Tiles of an odd size make many Shapes
+	 * straddle tile edges.
+	 */
+	@Test
+	public void testTiledRenderingIsPixelIdentical() {
+		ShapeModel model = new ShapeModel(new Dimension(SIZE, SIZE));
+		Random random = new Random(7);
+		CarrierShape carrier = new CarrierShape(50, 50, 3, 2, 200, 200);
+		model.add(carrier, model.root());
+		for(int i = 0; i < 300; i++) {
+			model.add(shape(random, i), i % 3 == 0 ? carrier : model.root());
+		}
+		FrameSnapshotBuffer frames = model.frames();
+
+		TiledRenderer tiled = new TiledRenderer(SIZE, SIZE, 37, false);
+		BufferedImage expected = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+
+		for(int tick = 0; tick < 10; tick++) {
+			model.clock();
+			FrameSnapshot frame = frames.acquire();
+
+			g.setBackground(Color.BLACK);
+			g.clearRect(0, 0, SIZE, SIZE);
+			frame.paint(new GraphicsPainter(g));
+			BufferedImage actual = tiled.render(frame);
+
+			for(int y = 0; y < SIZE; y++) {
+				for(int x = 0; x < SIZE; x++) {
+					assertEquals("Pixel " + x + "," + y + " of frame " + tick,
+							expected.getRGB(x, y), actual.getRGB(x, y));
+				}
+			}
+		}
+		g.dispose();
+	}
+
+	/**
+	 * Checks that the image is divided into whole and partial tiles.
+	 */
+	@Test
+	public void testTileCount() {
+		assertEquals(4, new TiledRenderer(256, 256).tileCount());
+		assertEquals(9, new TiledRenderer(300, 300, 128, true).tileCount());
+	}
+
+	/*
+	 * Creates a Shape of a kind chosen by i, at random within a 200x200 area,
+	 * with some Shapes labelled.
+	 */
+	private static Shape shape(Random random, int i) {
+		int x = random.nextInt(180);
+		int y = random.nextInt(180);
+		int deltaX = random.nextInt(11) - 5;
+		int deltaY = random.nextInt(11) - 5;
+		int width = 2 + random.nextInt(60);
+		int height = 2 + random.nextInt(40);
+		String text = i % 7 == 0 ? "Shape " + i : null;
+
+		switch(i % 4) {
+		case 0:
+			return new RectangleShape(x, y, deltaX, deltaY, width, height, text);
+		case 1:
+			return new OvalShape(x, y, deltaX, deltaY, width, height, text);
+		case 2:
+			return new HexagonShape(x, y, deltaX, deltaY, width, height, text);
+		default:
+			return new DynamicShape(x, y, deltaX, deltaY, width, height,
+					new Color(random.nextInt(0x1000000)));
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package spaceshapes.views;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spaceshapes.FrameSnapshot;
+import spaceshapes.GraphicsPainter;
+
+/**
+ * Renders FrameSnapshots into a BufferedImage using several threads, for
+ * frames too large for one thread to rasterise at the required rate. The
+ * image is divided into square tiles. Each primitive of a frame is first
+ * binned into the tiles its bounds overlap; the tiles are then rasterised
+ * concurrently, each by its own GraphicsPainter painting only the
+ * primitives binned into it, in the frame's order.
+ *
+ * Java2D may rasterise a curve differently within a few pixels of the edge
+ * of a clip, and differently again once translated, so a tile is neither
+ * drawn with a clip on the shared image nor into a small image of its own.
+ * Instead a tile is rasterised into a scratch image the size of the shared
+ * image, clipped to the tile plus a margin, and only the tile is copied into
+ * the shared image. The result is identical to painting the whole frame with
+ * a single GraphicsPainter, at the cost of a scratch image per tile rendered
+ * at once. The scratch images belong to the renderer and are reused from
+ * frame to frame; there are never more than tiles the pool renders at once.
+ *
+ * Like an OffscreenRenderer, a TiledRenderer reuses its image, which is
+ * only valid until the next render() call, and is not thread-safe.
+ */
+public class TiledRenderer {
+
+	/**
+	 * Default width and height of a tile, in pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 128;
+
+	// Width of the margin rasterised around each tile.
+	private static final int MARGIN = 16;
+
+	// Pool shared by all TiledRenderers, created on first use.
+	private static ForkJoinPool _sharedPool;
+
+	private final BufferedImage _image;
+
+	private final int _tileSize;
+
+	private final int _columns;
+
+	private final int _rows;
+
+	private final ForkJoinPool _pool;
+
+	private Color _background = Color.BLACK;
+
+	// Metrics of the font text is drawn in, used to bin text.
+	private final FontMetrics _fontMetrics;
+
+	// Indices of the primitives binned into each tile, and their number.
+	private final int[][] _bins;
+
+	private final int[] _binSizes;
+
+	// Frame being rendered.
+	private FrameSnapshot _frame;
+
+	// Scratch images not in use by a tile being rendered.
+	private final ConcurrentLinkedQueue<BufferedImage> _scratch = new ConcurrentLinkedQueue<BufferedImage>();
+
+	/**
+	 * Creates a TiledRenderer that renders into an opaque image of the
+	 * specified size, using tiles of the default size.
+	 */
+	public TiledRenderer(int width, int height) {
+		this(width, height, DEFAULT_TILE_SIZE, false);
+	}
+
+	/**
+	 * Creates a TiledRenderer that renders into an image of the specified
+	 * size.
+	 * @param tileSize width and height of a tile, in pixels.
+	 * @param premultiplied true for an image of type TYPE_INT_ARGB_PRE, false
+	 *        for one of type TYPE_INT_RGB.
+	 * @throws IllegalArgumentException if tileSize is less than 1.
+	 */
+	public TiledRenderer(int width, int height, int tileSize, boolean premultiplied) {
+		if(tileSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		_image = new BufferedImage(width, height,
+				premultiplied ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+		_tileSize = tileSize;
+		_columns = (width + tileSize - 1) / tileSize;
+		_rows = (height + tileSize - 1) / tileSize;
+		_pool = sharedPool();
+
+		Graphics2D g = _image.createGraphics();
+		_fontMetrics = g.getFontMetrics();
+		g.dispose();
+
+		_bins = new int[_columns * _rows][16];
+		_binSizes = new int[_columns * _rows];
+	}
+
+	/**
+	 * Sets the colour the image is cleared to before each frame is rendered.
+	 */
+	public void setBackground(Color colour) {
+		_background = colour;
+	}
+
+	/**
+	 * Returns the number of tiles the image is divided into.
+	 */
+	public int tileCount() {
+		return _bins.length;
+	}
+
+	/**
+	 * Returns the image frames are rendered into.
+	 */
+	public BufferedImage image() {
+		return _image;
+	}
+
+	/**
+	 * Renders a FrameSnapshot and returns the image holding it. Returns once
+	 * every tile has been rasterised.
+	 */
+	public BufferedImage render(FrameSnapshot frame) {
+		_frame = frame;
+		bin(frame);
+		try {
+			_pool.invoke(new RenderTilesTask(0, _bins.length));
+		} finally {
+			_frame = null;
+		}
+		return _image;
+	}
+
+	/*
+	 * Bins the primitives of a frame into the tiles their bounds overlap.
+	 */
+	private void bin(FrameSnapshot frame) {
+		Arrays.fill(_binSizes, 0);
+		int width = _image.getWidth();
+		int height = _image.getHeight();
+
+		for(int i = 0; i < frame.size(); i++) {
+			int x = frame.x(i);
+			int y = frame.y(i);
+			int right = x + frame.width(i);
+			int bottom = y + frame.height(i);
+
+			switch(frame.type(i)) {
+			case FrameSnapshot.LINE:
+				right = Math.max(x, frame.width(i));
+				bottom = Math.max(y, frame.height(i));
+				x = Math.min(x, frame.width(i));
+				y = Math.min(y, frame.height(i));
+				break;
+			case FrameSnapshot.TEXT:
+				Rectangle text = GraphicsPainter.centredTextBounds(_fontMetrics,
+						x, y, frame.width(i), frame.height(i), frame.text(i));
+				// Glyphs may overhang their advance and ascent, e.g. in
+				// italic fonts.
+				int overhang = _fontMetrics.getHeight();
+				x = text.x - overhang;
+				y = text.y - overhang;
+				right = text.x + text.width + overhang;
+				bottom = text.y + text.height + overhang;
+				break;
+			}
+
+			// Outlines extend one pixel to the right of and below their
+			// bounds; allow a further pixel all round for rounding.
+			int left = Math.min(x, right) - 1;
+			int top = Math.min(y, bottom) - 1;
+			right = Math.max(x, right) + 2;
+			bottom = Math.max(y, bottom) + 2;
+			if(right < 0 || bottom < 0 || left >= width || top >= height) {
+				continue;
+			}
+
+			int c0 = Math.max(left, 0) / _tileSize;
+			int c1 = Math.min(right, width - 1) / _tileSize;
+			int r0 = Math.max(top, 0) / _tileSize;
+			int r1 = Math.min(bottom, height - 1) / _tileSize;
+			for(int r = r0; r <= r1; r++) {
+				for(int c = c0; c <= c1; c++) {
+					add(r * _columns + c, i);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Appends a primitive's index to a tile's bin.
+	 */
+	private void add(int tile, int index) {
+		int[] bin = _bins[tile];
+		if(_binSizes[tile] == bin.length) {
+			bin = _bins[tile] = Arrays.copyOf(bin, bin.length * 2);
+		}
+		bin[_binSizes[tile]++] = index;
+	}
+
+	/*
+	 * Paints the primitives binned into a tile into a scratch image not in
+	 * use by another tile, then copies the tile into the shared image.
+	 * Pixels of the margin are left as they are drawn; they are never copied.
+	 */
+	private void renderTile(int tile) {
+		int x = (tile % _columns) * _tileSize;
+		int y = (tile / _columns) * _tileSize;
+		int width = Math.min(_tileSize, _image.getWidth() - x);
+		int height = Math.min(_tileSize, _image.getHeight() - y);
+
+		BufferedImage scratch = _scratch.poll();
+		if(scratch == null) {
+			scratch = new BufferedImage(_image.getWidth(), _image.getHeight(), _image.getType());
+		}
+		try {
+			Graphics2D g = scratch.createGraphics();
+			try {
+				g.setClip(x - MARGIN, y - MARGIN, width + 2 * MARGIN, height + 2 * MARGIN);
+				g.setBackground(_background);
+				g.clearRect(x, y, width, height);
+				_frame.paint(new GraphicsPainter(g), _bins[tile], _binSizes[tile]);
+			} finally {
+				g.dispose();
+			}
+			_image.getRaster().setRect(scratch.getRaster().createChild(x, y, width, height, x, y, null));
+		} finally {
+			_scratch.offer(scratch);
+		}
+	}
+
+	private static synchronized ForkJoinPool sharedPool() {
+		if(_sharedPool == null) {
+			_sharedPool = new ForkJoinPool();
+		}
+		return _sharedPool;
+	}
+
+	/*
+	 * Task that renders a range of tiles, splitting it until each task
+	 * renders one tile.
+	 */
+	@SuppressWarnings("serial")
+	private class RenderTilesTask extends RecursiveAction {
+		private int _from;
+		private int _to;
+
+		RenderTilesTask(int from, int to) {
+			_from = from;
+			_to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(_to - _from > 1) {
+				int middle = (_from + _to) >>> 1;
+				invokeAll(new RenderTilesTask(_from, middle), new RenderTilesTask(middle, _to));
+			} else if(_to > _from) {
+				renderTile(_from);
+			}
+		}
+	}
+}
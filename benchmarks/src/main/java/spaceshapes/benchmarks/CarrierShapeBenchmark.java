@@ -0,0 +1,80 @@
+package spaceshapes.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeModel;
+
+/**
+ * Measures adding, removing and locating children of a CarrierShape holding
+ * childCount children. Children are added and removed through the
+ * ShapeModel, as the application does; no listeners are registered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarrierShapeBenchmark {
+
+	@Param({"100", "10000"})
+	public int childCount;
+
+	private ShapeModel _model;
+
+	private CarrierShape _carrier;
+
+	private Shape _extra;
+
+	@Setup
+	public void setUp() {
+		_model = Compositions.build(childCount, 1, 42);
+		_carrier = _model.root();
+		_extra = Compositions.leaf(new Random(7), _carrier);
+	}
+
+	/**
+	 * Adds a child at the end of the CarrierShape and removes it again.
+	 */
+	@Benchmark
+	public void addRemoveLast() {
+		_model.add(_extra, _carrier);
+		_model.remove(_extra);
+	}
+
+	/**
+	 * Removes the first child and adds it back at the end, the worst case for
+	 * removal.
+	 */
+	@Benchmark
+	public void removeFirstAddLast() {
+		Shape first = _carrier.shapeAt(0);
+		_model.remove(first);
+		_model.add(first, _carrier);
+	}
+
+	@Benchmark
+	public int indexOfMiddle() {
+		return _carrier.indexOf(_carrier.shapeAt(childCount / 2));
+	}
+
+	@Benchmark
+	public boolean containsLast() {
+		return _carrier.contains(_carrier.shapeAt(childCount - 1));
+	}
+}
@@ -0,0 +1,58 @@
+package spaceshapes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.ShapeModel;
+
+/**
+ * Measures ShapeModel.clock() over compositions of different sizes and
+ * depths, in each ClockMode, with whole and fractional time steps. No
+ * listeners are registered, so the figures are for moving the shapes alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int shapeCount;
+
+	@Param({"1", "3", "5"})
+	public int depth;
+
+	@Param({"Sequential", "Packed", "Parallel"})
+	public ShapeModel.ClockMode clockMode;
+
+	private ShapeModel _model;
+
+	@Setup
+	public void setUp() {
+		_model = Compositions.build(shapeCount, depth, 42);
+		_model.setClockMode(clockMode);
+	}
+
+	@Benchmark
+	public void clock() {
+		_model.clock();
+	}
+
+	@Benchmark
+	public void clockFractional() {
+		_model.clock(0.4);
+	}
+}
@@ -0,0 +1,85 @@
+package spaceshapes.benchmarks;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.RectangleShape;
+import spaceshapes.ShapeModel;
+
+/**
+ * Builds the ShapeModels measured by the benchmarks. Compositions are
+ * generated from a fixed seed, so every run measures the same composition.
+ */
+final class Compositions {
+
+	// Size of the animation area, the largest ShapeConfig allows.
+	static final Dimension BOUNDS = new Dimension(1000, 1000);
+
+	// Number of CarrierShapes nested within each CarrierShape.
+	private static final int FAN_OUT = 4;
+
+	// Width and height of the leaf shapes.
+	private static final int LEAF_SIZE = 8;
+
+	private Compositions() {
+	}
+
+	/**
+	 * Creates a ShapeModel holding leafCount RectangleShapes spread evenly
+	 * over a tree of CarrierShapes depth levels deep. With a depth of 1 all
+	 * leaves are children of the root; each further level nests FAN_OUT
+	 * CarrierShapes, each half the size of its parent, in every CarrierShape
+	 * of the level above.
+	 */
+	static ShapeModel build(int leafCount, int depth, long seed) {
+		Random random = new Random(seed);
+		ShapeModel model = new ShapeModel(BOUNDS);
+
+		List<CarrierShape> level = new ArrayList<CarrierShape>();
+		List<CarrierShape> carriers = new ArrayList<CarrierShape>();
+		level.add(model.root());
+		carriers.add(model.root());
+
+		for(int d = 1; d < depth; d++) {
+			List<CarrierShape> next = new ArrayList<CarrierShape>();
+			for(CarrierShape parent : level) {
+				int size = parent.width() / 2;
+				for(int i = 0; i < FAN_OUT; i++) {
+					CarrierShape carrier = new CarrierShape(
+							random.nextInt(parent.width() - size), random.nextInt(parent.height() - size),
+							velocity(random), velocity(random), size, size);
+					model.add(carrier, parent);
+					next.add(carrier);
+				}
+			}
+			carriers.addAll(next);
+			level = next;
+		}
+
+		for(int i = 0; i < leafCount; i++) {
+			CarrierShape parent = carriers.get(i % carriers.size());
+			model.add(leaf(random, parent), parent);
+		}
+		return model;
+	}
+
+	/**
+	 * Creates a RectangleShape placed at random within parent.
+	 */
+	static RectangleShape leaf(Random random, CarrierShape parent) {
+		return new RectangleShape(
+				random.nextInt(parent.width() - LEAF_SIZE), random.nextInt(parent.height() - LEAF_SIZE),
+				velocity(random), velocity(random), LEAF_SIZE, LEAF_SIZE);
+	}
+
+	/*
+	 * Returns a random non-zero velocity component.
+	 */
+	private static int velocity(Random random) {
+		int velocity = random.nextInt(9) - 4;
+		return velocity == 0 ? 1 : velocity;
+	}
+}
@@ -0,0 +1,58 @@
+package spaceshapes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import spaceshapes.ShapeModel;
+import spaceshapes.ShapeModelEvent;
+import spaceshapes.ShapeModelListener;
+
+/**
+ * Measures firing ShapeModelEvents to listenerCount registered listeners.
+ * ShapeModel.fire() is private, so events are fired by clock() on a
+ * ShapeModel holding no shapes, where moving the empty root is negligible
+ * next to creating and dispatching the event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBenchmark {
+
+	@Param({"0", "1", "10", "100"})
+	public int listenerCount;
+
+	private ShapeModel _model;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		_model = new ShapeModel(Compositions.BOUNDS);
+
+		for(int i = 0; i < listenerCount; i++) {
+			_model.addShapeModelListener(new ShapeModelListener() {
+				public void update(ShapeModelEvent event) {
+					blackhole.consume(event.operand());
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public void fire() {
+		_model.clock();
+	}
+}
@@ -0,0 +1,82 @@
+package spaceshapes.benchmarks;
+
+import java.awt.Color;
+import java.awt.Image;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import spaceshapes.Painter;
+
+/**
+ * Painter that draws nothing, so that benchmarks measure the cost of the
+ * painting code in the Shapes rather than that of a graphics pipeline. The
+ * arguments of every call are passed to a Blackhole so that the JIT compiler
+ * cannot eliminate the work that produced them.
+ */
+class NullPainter implements Painter {
+
+	private final Blackhole _blackhole;
+
+	private Color _colour = Color.BLACK;
+
+	NullPainter(Blackhole blackhole) {
+		_blackhole = blackhole;
+	}
+
+	public void drawRect(int x, int y, int width, int height) {
+		consume(x, y, width, height);
+	}
+
+	public void drawOval(int x, int y, int width, int height) {
+		consume(x, y, width, height);
+	}
+
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		consume(x1, y1, x2, y2);
+	}
+
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		for(int i = 0; i < nPoints; i++) {
+			_blackhole.consume(xPoints[i]);
+			_blackhole.consume(yPoints[i]);
+		}
+	}
+
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		drawPolygon(xPoints, yPoints, nPoints);
+	}
+
+	public void fillRect(int x, int y, int width, int height) {
+		consume(x, y, width, height);
+	}
+
+	public Color getColor() {
+		return _colour;
+	}
+
+	public void setColor(Color color) {
+		_colour = color;
+	}
+
+	public void translate(int x, int y) {
+		_blackhole.consume(x);
+		_blackhole.consume(y);
+	}
+
+	public void drawCentredText(int x, int y, int width, int height, String text) {
+		consume(x, y, width, height);
+		_blackhole.consume(text);
+	}
+
+	public void drawImage(Image img, int x, int y, int width, int height) {
+		consume(x, y, width, height);
+		_blackhole.consume(img);
+	}
+
+	private void consume(int a, int b, int c, int d) {
+		_blackhole.consume(a);
+		_blackhole.consume(b);
+		_blackhole.consume(c);
+		_blackhole.consume(d);
+	}
+}
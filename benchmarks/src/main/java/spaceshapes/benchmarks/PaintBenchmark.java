@@ -0,0 +1,62 @@
+package spaceshapes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import spaceshapes.HexagonShape;
+import spaceshapes.RenderQueue;
+import spaceshapes.ShapeModel;
+
+/**
+ * Measures painting through a NullPainter: a single HexagonShape, which
+ * computes its outline on every paint, and a whole composition of 1000
+ * shapes, painted directly and through a RenderQueue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBenchmark {
+
+	private HexagonShape _hexagon;
+
+	private ShapeModel _model;
+
+	private RenderQueue _queue;
+
+	@Setup
+	public void setUp() {
+		_hexagon = new HexagonShape(20, 20, 4, 4, 200, 20, "Space-Shape");
+		_model = Compositions.build(1000, 3, 42);
+		_queue = new RenderQueue();
+	}
+
+	@Benchmark
+	public void paintHexagon(Blackhole blackhole) {
+		_hexagon.paint(new NullPainter(blackhole));
+	}
+
+	@Benchmark
+	public void paintComposition(Blackhole blackhole) {
+		_model.root().doPaint(new NullPainter(blackhole));
+	}
+
+	@Benchmark
+	public void paintCompositionQueued(Blackhole blackhole) {
+		_model.root().doPaint(_queue);
+		_queue.flush(new NullPainter(blackhole));
+	}
+}
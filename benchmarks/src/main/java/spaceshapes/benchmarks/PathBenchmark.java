@@ -0,0 +1,59 @@
+package spaceshapes.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.CarrierShape;
+import spaceshapes.RectangleShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeModel;
+
+/**
+ * Measures Shape.path() for a Shape nested depth CarrierShapes below the
+ * root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+	@Param({"1", "5", "20"})
+	public int depth;
+
+	private Shape _leaf;
+
+	@Setup
+	public void setUp() {
+		ShapeModel model = new ShapeModel(Compositions.BOUNDS);
+		CarrierShape parent = model.root();
+
+		for(int i = 0; i < depth; i++) {
+			int size = parent.width() - 10;
+			CarrierShape carrier = new CarrierShape(1, 1, 1, 1, size, size);
+			model.add(carrier, parent);
+			parent = carrier;
+		}
+		_leaf = new RectangleShape(1, 1, 1, 1, 5, 5);
+		model.add(_leaf, parent);
+	}
+
+	@Benchmark
+	public List<Shape> path() {
+		return _leaf.path();
+	}
+}
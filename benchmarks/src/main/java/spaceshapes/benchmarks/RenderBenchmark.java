@@ -0,0 +1,68 @@
+package spaceshapes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.FrameSnapshot;
+import spaceshapes.ShapeModel;
+import spaceshapes.views.OffscreenRenderer;
+import spaceshapes.views.TiledRenderer;
+
+/**
+ * Measures rasterising one frame into a BufferedImage, on one thread with
+ * an OffscreenRenderer and on all processors with a TiledRenderer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({"10000", "100000"})
+	public int shapeCount;
+
+	@Param({"64", "128", "256"})
+	public int tileSize;
+
+	private FrameSnapshot _frame;
+
+	private OffscreenRenderer _offscreen;
+
+	private TiledRenderer _tiled;
+
+	@Setup
+	public void setUp() {
+		ShapeModel model = Compositions.build(shapeCount, 3, 42);
+		model.frames();
+		model.clock();
+		_frame = model.frames().acquire();
+
+		int width = Compositions.BOUNDS.width;
+		int height = Compositions.BOUNDS.height;
+		_offscreen = new OffscreenRenderer(width, height);
+		_tiled = new TiledRenderer(width, height, tileSize, false);
+	}
+
+	@Benchmark
+	public Object renderSingleThreaded() {
+		return _offscreen.render(_frame);
+	}
+
+	@Benchmark
+	public Object renderTiled() {
+		return _tiled.render(_frame);
+	}
+}
@@ -0,0 +1,97 @@
+package spaceshapes.benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.OvalShape;
+import spaceshapes.Shape;
+import spaceshapes.ShapeFactory;
+
+/**
+ * Measures creating shapeCount OvalShapes through a cached reflective
+ * Constructor, as shapes were created before ShapeFactory, through
+ * ShapeFactory.create() and through ShapeFactory.createBatch(), against
+ * calling the constructor directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeFactoryBenchmark {
+
+	@Param({"1000"})
+	public int shapeCount;
+
+	private Constructor<? extends Shape> _constructor;
+
+	private ShapeFactory _factory;
+
+	private int[] _x;
+
+	private int[] _delta;
+
+	private int[] _size;
+
+	@Setup
+	public void setUp() throws NoSuchMethodException {
+		_constructor = OvalShape.class.getConstructor(Integer.TYPE, Integer.TYPE, Integer.TYPE,
+				Integer.TYPE, Integer.TYPE, Integer.TYPE, String.class);
+		_factory = new ShapeFactory();
+		_factory.register(OvalShape.class);
+		_x = new int[shapeCount];
+		for(int i = 0; i < shapeCount; i++) {
+			_x[i] = i % 500;
+		}
+		_delta = new int[shapeCount];
+		Arrays.fill(_delta, 3);
+		_size = new int[shapeCount];
+		Arrays.fill(_size, 20);
+	}
+
+	@Benchmark
+	public Shape[] direct() {
+		Shape[] shapes = new Shape[shapeCount];
+		for(int i = 0; i < shapeCount; i++) {
+			shapes[i] = new OvalShape(_x[i], _x[i], 3, 3, 20, 20, null);
+		}
+		return shapes;
+	}
+
+	@Benchmark
+	public Shape[] reflection() throws Exception {
+		Shape[] shapes = new Shape[shapeCount];
+		for(int i = 0; i < shapeCount; i++) {
+			shapes[i] = _constructor.newInstance(_x[i], _x[i], 3, 3, 20, 20, null);
+		}
+		return shapes;
+	}
+
+	@Benchmark
+	public Shape[] factory() {
+		Shape[] shapes = new Shape[shapeCount];
+		for(int i = 0; i < shapeCount; i++) {
+			shapes[i] = _factory.create(OvalShape.class, _x[i], _x[i], 3, 3, 20, 20, null);
+		}
+		return shapes;
+	}
+
+	@Benchmark
+	public Shape[] factoryBatch() {
+		return _factory.createBatch(OvalShape.class, _x, _x, _delta, _delta, _size, _size, null);
+	}
+}
@@ -0,0 +1,64 @@
+package spaceshapes.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spaceshapes.SceneSnapshot;
+import spaceshapes.ShapeModel;
+
+/**
+ * Measures saving a composition with SceneSnapshot.save() and loading it
+ * back with SceneSnapshot.load(), for compositions of up to a million
+ * shapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	public int shapeCount;
+
+	private ShapeModel _model;
+
+	private File _file;
+
+	@Setup
+	public void setUp() throws IOException {
+		_model = Compositions.build(shapeCount, 3, 42);
+		_file = File.createTempFile("scene", ".snapshot");
+		SceneSnapshot.save(_model, _file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		_file.delete();
+	}
+
+	@Benchmark
+	public void save() throws IOException {
+		SceneSnapshot.save(_model, _file);
+	}
+
+	@Benchmark
+	public ShapeModel load() throws IOException {
+		return SceneSnapshot.load(_file);
+	}
+}